@@ -0,0 +1,55 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures {@link JdtCompiler#getResolvedUnit()} on synthetic compilation
+ * units of different sizes. The classpath is indexed once per trial, like
+ * in a run over many files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompilerBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private SyntheticSources.Size size;
+
+    private File directory;
+    private String fileName;
+    private ClasspathIndex classpathIndex;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = File.createTempFile("java2rsf", ".bench");
+        directory.delete();
+        fileName = SyntheticSources.write(directory, "Synthetic", size);
+        classpathIndex = new JdtCompiler(fileName).addClasspath(directory.getPath()).getClasspathIndex();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        classpathIndex.close();
+        SyntheticSources.delete(directory);
+    }
+
+    @Benchmark
+    public CompilationUnitDeclaration getResolvedUnit() throws CompilationException, IOException {
+        return new JdtCompiler(Collections.singletonList(fileName))
+                .setClasspathIndex(classpathIndex)
+                .getResolvedUnit();
+    }
+}
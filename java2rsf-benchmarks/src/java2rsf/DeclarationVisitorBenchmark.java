@@ -0,0 +1,53 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measures the traversal of resolved units by {@link DeclarationVisitor},
+ * without the compiler. The units are resolved once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeclarationVisitorBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "LARGE"})
+    private SyntheticSources.Size size;
+
+    private File directory;
+    private CompilationUnitDeclaration unit;
+
+    @Setup
+    public void setUp() throws CompilationException, IOException {
+        directory = File.createTempFile("java2rsf", ".bench");
+        directory.delete();
+        String fileName = SyntheticSources.write(directory, "Synthetic", size);
+        JdtCompiler jdtCompiler = new JdtCompiler(fileName).addClasspath(directory.getPath());
+        unit = jdtCompiler.getResolvedUnit();
+        jdtCompiler.getClasspathIndex().close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        SyntheticSources.delete(directory);
+    }
+
+    @Benchmark
+    public FactStore traverse() {
+        FactStore facts = new FactStore(Long.MAX_VALUE, null);
+        unit.traverse(new DeclarationVisitor(facts), unit.scope);
+        return facts;
+    }
+}
@@ -0,0 +1,124 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures a whole run over a corpus of source files: indexing the
+ * classpath, resolving each file, extracting its facts and writing the
+ * sorted output. The <code>files</code> counter reports files per second.
+ *
+ * <p>The corpus is the directory in the system property
+ * <code>java2rsf.corpus</code>, its classpath is in
+ * <code>java2rsf.corpus.classpath</code>.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ExtractionBenchmark {
+
+    private final List<String> inputFileNames = new ArrayList<String>();
+    private String corpusName;
+    private String[] classpathNames;
+
+    @Setup
+    public void setUp() {
+        corpusName = System.getProperty("java2rsf.corpus");
+        if (corpusName == null) {
+            throw new IllegalStateException("System property java2rsf.corpus is not set.");
+        }
+        String classpath = System.getProperty("java2rsf.corpus.classpath", "");
+        classpathNames = (classpath.length() == 0) ? new String[0] : classpath.split(File.pathSeparator);
+        addInputFiles(new File(corpusName));
+        if (inputFileNames.isEmpty()) {
+            throw new IllegalStateException("No .java files in " + corpusName);
+        }
+    }
+
+    private void addInputFiles(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                addInputFiles(child);
+            }
+        } else if (file.getName().endsWith(".java")) {
+            inputFileNames.add(file.getPath());
+        }
+    }
+
+    @Benchmark
+    public void extract(FileCounter counter) throws CompilationException, IOException {
+        JdtCompiler templateCompiler = new JdtCompiler(inputFileNames).addClasspath(corpusName);
+        for (String classpathName : classpathNames) {
+            templateCompiler.addClasspath(classpathName);
+        }
+        ClasspathIndex classpathIndex = templateCompiler.getClasspathIndex();
+
+        FactStore facts = new FactStore(Runtime.getRuntime().maxMemory() / 4, null);
+        try {
+            for (String inputFileName : inputFileNames) {
+                CompilationUnitDeclaration unit = new JdtCompiler(inputFileName)
+                        .setClasspathIndex(classpathIndex)
+                        .getResolvedUnit();
+                unit.traverse(new DeclarationVisitor(facts), unit.scope);
+                facts.spillIfOverBudget();
+                counter.files++;
+            }
+            classpathIndex.close();
+            facts.writeTo(new NullWriter());
+        } finally {
+            facts.close();
+        }
+    }
+
+    /**
+     * Counts the extracted files, JMH reports them as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class FileCounter {
+
+        public long files;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            files = 0;
+        }
+    }
+
+    /*
+     * Discards the output.
+     */
+    private static class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void write(String string) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
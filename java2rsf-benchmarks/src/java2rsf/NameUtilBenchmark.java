@@ -0,0 +1,108 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jdt.internal.compiler.ASTVisitor;
+import org.eclipse.jdt.internal.compiler.ast.AllocationExpression;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.MessageSend;
+import org.eclipse.jdt.internal.compiler.ast.SingleNameReference;
+import org.eclipse.jdt.internal.compiler.lookup.BlockScope;
+import org.eclipse.jdt.internal.compiler.lookup.MethodBinding;
+import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the naming of the method and type bindings of a resolved unit,
+ * once with an empty cache per unit and once with a filled cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NameUtilBenchmark {
+
+    private final List<MethodBinding> methodBindings = new ArrayList<MethodBinding>();
+    private final List<TypeBinding> typeBindings = new ArrayList<TypeBinding>();
+    private NameUtil cachedNames;
+
+    @Setup
+    public void setUp() throws CompilationException, IOException {
+        File directory = File.createTempFile("java2rsf", ".bench");
+        directory.delete();
+        try {
+            String fileName = SyntheticSources.write(directory, "Synthetic", SyntheticSources.Size.MEDIUM);
+            JdtCompiler jdtCompiler = new JdtCompiler(fileName).addClasspath(directory.getPath());
+            CompilationUnitDeclaration unit = jdtCompiler.getResolvedUnit();
+            jdtCompiler.getClasspathIndex().close();
+            unit.traverse(new BindingCollector(), unit.scope);
+        } finally {
+            SyntheticSources.delete(directory);
+        }
+
+        cachedNames = new NameUtil();
+        nameAll(cachedNames, null);
+    }
+
+    @Benchmark
+    public void emptyCache(Blackhole blackhole) {
+        nameAll(new NameUtil(), blackhole);
+    }
+
+    @Benchmark
+    public void filledCache(Blackhole blackhole) {
+        nameAll(cachedNames, blackhole);
+    }
+
+    private void nameAll(NameUtil names, Blackhole blackhole) {
+        for (MethodBinding methodBinding : methodBindings) {
+            String name = names.getMethodName(methodBinding);
+            if (blackhole != null) {
+                blackhole.consume(name);
+            }
+        }
+        for (TypeBinding typeBinding : typeBindings) {
+            String name = names.getTypeName(typeBinding);
+            if (blackhole != null) {
+                blackhole.consume(name);
+            }
+        }
+    }
+
+    /*
+     * Collects the bindings of method calls, allocations and local names.
+     */
+    private class BindingCollector extends ASTVisitor {
+
+        @Override
+        public boolean visit(MessageSend messageSend, BlockScope scope) {
+            methodBindings.add(messageSend.binding);
+            typeBindings.add(messageSend.actualReceiverType);
+            return true;
+        }
+
+        @Override
+        public boolean visit(AllocationExpression allocationExpression, BlockScope scope) {
+            methodBindings.add(allocationExpression.binding);
+            typeBindings.add(allocationExpression.resolvedType);
+            return true;
+        }
+
+        @Override
+        public boolean visit(SingleNameReference singleNameReference, BlockScope scope) {
+            if (singleNameReference.resolvedType != null) {
+                typeBindings.add(singleNameReference.resolvedType);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes synthetic Java source files for the benchmarks. Each method of a
+ * generated class reads and writes fields, calls other methods and uses types
+ * of the Java API, so that all visitors have something to do.
+ */
+class SyntheticSources {
+
+    /**
+     * The sizes of the generated compilation units, in methods per class.
+     */
+    enum Size {
+
+        SMALL(10), MEDIUM(100), LARGE(1000);
+        final int methodCount;
+
+        private Size(int methodCount) {
+            this.methodCount = methodCount;
+        }
+    }
+
+    private SyntheticSources() {
+    }
+
+    /*
+     * Writes the class bench.<className> to directory/bench/<className>.java
+     * and returns the file name.
+     */
+    static String write(File directory, String className, Size size) throws IOException {
+        File packageDirectory = new File(directory, "bench");
+        if (!packageDirectory.isDirectory() && !packageDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + packageDirectory);
+        }
+        File file = new File(packageDirectory, className + ".java");
+
+        StringBuilder source = new StringBuilder();
+        source.append("package bench;\n\n");
+        source.append("import java.util.ArrayList;\n");
+        source.append("import java.util.HashMap;\n");
+        source.append("import java.util.List;\n");
+        source.append("import java.util.Map;\n\n");
+        source.append("public class ").append(className).append(" implements Comparable<").append(className).append("> {\n\n");
+        source.append("    private final Map<String, Integer> counts = new HashMap<String, Integer>();\n");
+        source.append("    private final List<String> names = new ArrayList<String>();\n");
+        source.append("    private int total;\n\n");
+        for (int i = 0; i < size.methodCount; i++) {
+            source.append("    public int method").append(i).append("(String name) {\n");
+            source.append("        Integer count = counts.get(name);\n");
+            source.append("        if (count == null) {\n");
+            source.append("            count = Integer.valueOf(").append(i).append(");\n");
+            source.append("            names.add(name);\n");
+            source.append("        }\n");
+            source.append("        counts.put(name, count + 1);\n");
+            source.append("        total += new Entry(name, count).length();\n");
+            if (i > 0) {
+                source.append("        return method").append(i - 1).append("(name.trim()) + total;\n");
+            } else {
+                source.append("        return total;\n");
+            }
+            source.append("    }\n\n");
+        }
+        source.append("    public int compareTo(").append(className).append(" other) {\n");
+        source.append("        return total - other.total;\n");
+        source.append("    }\n\n");
+        source.append("    private static class Entry {\n\n");
+        source.append("        private String name;\n");
+        source.append("        private int count;\n\n");
+        source.append("        Entry(String name, int count) {\n");
+        source.append("            this.name = name;\n");
+        source.append("            this.count = count;\n");
+        source.append("        }\n\n");
+        source.append("        int length() {\n");
+        source.append("            return name.length() + count;\n");
+        source.append("        }\n");
+        source.append("    }\n");
+        source.append("}\n");
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+        return file.getPath();
+    }
+
+    /*
+     * Deletes a directory with all its contents.
+     */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
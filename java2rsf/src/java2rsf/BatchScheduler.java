@@ -0,0 +1,276 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.eclipse.jdt.core.compiler.InvalidInputException;
+import org.eclipse.jdt.internal.compiler.parser.Scanner;
+import org.eclipse.jdt.internal.compiler.parser.TerminalTokens;
+import org.eclipse.jdt.internal.compiler.util.Util;
+
+/**
+ * Splits the input files into batches that are compiled one after the other,
+ * in the order of their dependencies.
+ *
+ * <p>The dependencies are estimated from the tokens of the files, without
+ * parsing them. A file depends on the files that declare the top level types
+ * it names: by simple name in its package or through its imports, or by
+ * qualified name. Files that depend on each other, also through other files,
+ * form a strongly connected component and are always put into the same batch.
+ * The components are packed into batches of a maximum size in topological
+ * order, so a batch only depends on batches before it.</p>
+ *
+ * <p>A dependency that is missed only costs time: the compiler of a batch
+ * then reads the type from its source file, as for a single file.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+final class BatchScheduler {
+
+    private static final String DEFAULT_IMPORT = "java.lang";
+
+    private final String encoding;
+    private final Scanner scanner;
+
+    /*
+     * Reads the files with encoding, and their tokens as of sourceLevel.
+     */
+    BatchScheduler(String encoding, JdtCompiler.SourceLevel sourceLevel) {
+        this.encoding = encoding;
+        this.scanner = new Scanner(false, false, false, sourceLevel.getSourceLevelLong(), null, null, false);
+    }
+
+    /*
+     * Returns the batches of the input files in the order they can be
+     * compiled. A batch has at most maxBatchSize files, unless more files
+     * depend on each other.
+     */
+    List<Batch> schedule(List<String> inputFileNames, int maxBatchSize) throws IOException {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+
+        //all files must be scanned before their references can be resolved
+        List<SourceFile> sourceFiles = new ArrayList<SourceFile>();
+        Map<String, SourceFile> declaringFiles = new HashMap<String, SourceFile>();
+        Reachability graph = new Reachability();
+        for (String inputFileName : inputFileNames) {
+            SourceFile sourceFile = scan(inputFileName);
+            graph.addNode(inputFileName);
+            sourceFiles.add(sourceFile);
+            for (String typeName : sourceFile.declaredTypes) {
+                if (!declaringFiles.containsKey(typeName)) {
+                    declaringFiles.put(typeName, sourceFile);
+                }
+            }
+        }
+        for (SourceFile sourceFile : sourceFiles) {
+            for (SourceFile dependency : sourceFile.getDependencies(declaringFiles)) {
+                if (dependency != sourceFile) {
+                    graph.addEdge(sourceFile.fileName, dependency.fileName);
+                }
+            }
+        }
+
+        //components are numbered after the components they depend on
+        List<Batch> batches = new ArrayList<Batch>();
+        int[] nodeBatches = new int[graph.getNodeCount()];
+        Batch batch = null;
+        for (int component = 0; component < graph.getComponentCount(); component++) {
+            int memberCount = graph.getMemberCount(component);
+            if ((batch == null) || (batch.fileNames.size() + memberCount > maxBatchSize)) {
+                batch = new Batch();
+                batches.add(batch);
+            }
+            for (int i = 0; i < memberCount; i++) {
+                int node = graph.getMember(component, i);
+                batch.fileNames.add(graph.getName(node));
+                nodeBatches[node] = batches.size() - 1;
+            }
+        }
+
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            Batch nodeBatch = batches.get(nodeBatches[node]);
+            for (int i = 0; i < graph.getSuccessorCount(node); i++) {
+                int successorBatch = nodeBatches[graph.getSuccessor(node, i)];
+                if (successorBatch != nodeBatches[node]) {
+                    nodeBatch.dependencies.add(successorBatch);
+                    batches.get(successorBatch).sharedFileNames.add(graph.getName(graph.getSuccessor(node, i)));
+                }
+            }
+        }
+        return batches;
+    }
+
+    /*
+     * Collects the declared types, the imports and the names that a file
+     * mentions. Stops at the first token that cannot be read.
+     */
+    private SourceFile scan(String fileName) throws IOException {
+        SourceFile sourceFile = new SourceFile(fileName);
+        scanner.setSource(Util.getFileCharContent(new File(fileName), encoding));
+
+        int braceDepth = 0;
+        int previousToken = TerminalTokens.TokenNameEOF;
+        //the qualified name that the current identifier continues
+        StringBuilder qualifiedName = new StringBuilder();
+        //the package or import that is read, null outside of them
+        StringBuilder declaration = null;
+        boolean isImport = false;
+        try {
+            for (int token = scanner.getNextToken(); token != TerminalTokens.TokenNameEOF; token = scanner.getNextToken()) {
+                switch (token) {
+                    case TerminalTokens.TokenNamepackage:
+                    case TerminalTokens.TokenNameimport:
+                        if (braceDepth == 0) {
+                            declaration = new StringBuilder();
+                            isImport = (token == TerminalTokens.TokenNameimport);
+                        }
+                        break;
+                    case TerminalTokens.TokenNameIdentifier:
+                        String identifier = new String(scanner.getCurrentIdentifierSource());
+                        if (declaration != null) {
+                            declaration.append(identifier);
+                        } else if ((braceDepth == 0) && isTypeKeyword(previousToken)) {
+                            sourceFile.declaredTypes.add(sourceFile.qualify(identifier));
+                        } else if ((previousToken == TerminalTokens.TokenNameDOT) && (qualifiedName.length() > 0)) {
+                            qualifiedName.append('.').append(identifier);
+                            sourceFile.qualifiedNames.add(qualifiedName.toString());
+                        } else {
+                            qualifiedName.setLength(0);
+                            qualifiedName.append(identifier);
+                            sourceFile.simpleNames.add(identifier);
+                        }
+                        break;
+                    case TerminalTokens.TokenNameDOT:
+                        if (declaration != null) {
+                            declaration.append('.');
+                        }
+                        break;
+                    case TerminalTokens.TokenNameMULTIPLY:
+                        if (declaration != null) {
+                            declaration.append('*');
+                        }
+                        break;
+                    case TerminalTokens.TokenNameSEMICOLON:
+                        if (declaration != null) {
+                            sourceFile.addDeclaration(declaration.toString(), isImport);
+                            declaration = null;
+                        }
+                        break;
+                    case TerminalTokens.TokenNameLBRACE:
+                        braceDepth++;
+                        break;
+                    case TerminalTokens.TokenNameRBRACE:
+                        braceDepth--;
+                        break;
+                    default:
+                        break;
+                }
+                if ((token != TerminalTokens.TokenNameIdentifier) && (token != TerminalTokens.TokenNameDOT)) {
+                    qualifiedName.setLength(0);
+                }
+                previousToken = token;
+            }
+        } catch (InvalidInputException e) {
+            //the compiler reports the error, the file depends on what was found so far
+        }
+        return sourceFile;
+    }
+
+    private static boolean isTypeKeyword(int token) {
+        return (token == TerminalTokens.TokenNameclass) || (token == TerminalTokens.TokenNameinterface)
+                || (token == TerminalTokens.TokenNameenum);
+    }
+
+    /*
+     * Input files that are compiled together, in input order.
+     */
+    static final class Batch {
+
+        final List<String> fileNames = new ArrayList<String>();
+        //indexes of earlier batches that this one depends on
+        final Set<Integer> dependencies = new TreeSet<Integer>();
+        //files that later batches depend on
+        final Set<String> sharedFileNames = new HashSet<String>();
+    }
+
+    /*
+     * The names found in an input file.
+     */
+    private static final class SourceFile {
+
+        private final String fileName;
+        private String packageName = "";
+        //qualified names like "hworld.HelloWorld"
+        private final List<String> declaredTypes = new ArrayList<String>();
+        private final Map<String, String> singleTypeImports = new HashMap<String, String>();
+        private final List<String> onDemandImports = new ArrayList<String>();
+        private final Set<String> simpleNames = new HashSet<String>();
+        private final Set<String> qualifiedNames = new HashSet<String>();
+
+        SourceFile(String fileName) {
+            this.fileName = fileName;
+            onDemandImports.add(DEFAULT_IMPORT);
+        }
+
+        String qualify(String simpleName) {
+            return packageName.isEmpty() ? simpleName : (packageName + "." + simpleName);
+        }
+
+        /*
+         * Adds a package or import declaration, static imports are treated
+         * like imports of types.
+         */
+        void addDeclaration(String name, boolean isImport) {
+            if (!isImport) {
+                packageName = name;
+            } else if (name.endsWith(".*")) {
+                onDemandImports.add(name.substring(0, name.length() - 2));
+                qualifiedNames.add(name.substring(0, name.length() - 2));
+            } else {
+                singleTypeImports.put(name.substring(name.lastIndexOf('.') + 1), name);
+                qualifiedNames.add(name);
+            }
+        }
+
+        /*
+         * Returns the files that declare the types this file names.
+         */
+        Set<SourceFile> getDependencies(Map<String, SourceFile> declaringFiles) {
+            Set<SourceFile> dependencies = new HashSet<SourceFile>();
+            for (String simpleName : simpleNames) {
+                addDependency(dependencies, declaringFiles, qualify(simpleName));
+                String importedName = singleTypeImports.get(simpleName);
+                if (importedName != null) {
+                    addDependency(dependencies, declaringFiles, importedName);
+                }
+                for (String onDemandImport : onDemandImports) {
+                    addDependency(dependencies, declaringFiles, onDemandImport + "." + simpleName);
+                }
+            }
+            //a qualified name may continue beyond the type, like a.B.C or a.B.method
+            for (String qualifiedName : qualifiedNames) {
+                for (int end = qualifiedName.indexOf('.'); end != -1; end = qualifiedName.indexOf('.', end + 1)) {
+                    addDependency(dependencies, declaringFiles, qualifiedName.substring(0, end));
+                }
+                addDependency(dependencies, declaringFiles, qualifiedName);
+            }
+            return dependencies;
+        }
+
+        private static void addDependency(Set<SourceFile> dependencies, Map<String, SourceFile> declaringFiles,
+                String typeName) {
+            SourceFile declaringFile = declaringFiles.get(typeName);
+            if (declaringFile != null) {
+                dependencies.add(declaringFile);
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package java2rsf;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Reads a file of facts in the binary format of java2rsf, as written with
+ * the option <code>--binary</code>.
+ *
+ * <p>The file is mapped into memory, nothing is read in advance. Entity names
+ * are decoded when they are requested, facts are decoded while they are
+ * iterated. Each entity name has an int id. Ids are sorted like their names,
+ * so facts are returned in the order of the Rsf output.</p>
+ *
+ * <p>The file can be converted back to Rsf with</p>
+ * <p><pre>
+ * java -cp java2rsf.jar java2rsf.BinaryFactReader &lt;factFile&gt;
+ * </pre></p>
+ *
+ * <p>The names and each relation must be smaller than 2 GB. Instances are
+ * thread-safe, but a {@link Cursor} must only be used by one thread.</p>
+ */
+public final class BinaryFactReader implements Closeable {
+
+    private ByteBuffer names;
+    private int symbolCount;
+    private int blockOffsetsStart;
+    //the relations by name
+    private Map<String, RelationBlock> relations = new TreeMap<String, RelationBlock>();
+
+    /**
+     * Opens a file of facts.
+     *
+     * @param file the file to read
+     * @throws IOException in case the file cannot be read or is not a file of facts
+     */
+    public BinaryFactReader(File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("Parameter file may not be null.");
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if ((size < 24) || (map(channel, 0, 12).getInt() != BinaryFactWriter.MAGIC)
+                    || (map(channel, size - 4, 4).getInt() != BinaryFactWriter.MAGIC)) {
+                throw new IOException("Not a file of facts: " + file);
+            }
+            ByteBuffer header = map(channel, 4, 8);
+            if (header.getInt() != BinaryFactWriter.FORMAT) {
+                throw new IOException("Unsupported format of file of facts: " + file);
+            }
+            symbolCount = header.getInt();
+
+            long directoryOffset = map(channel, size - 12, 8).getLong();
+            ByteBuffer directory = map(channel, directoryOffset, size - 12 - directoryOffset);
+            int relationCount = directory.getInt();
+            long namesEnd = directoryOffset;
+            for (int i = 0; i < relationCount; i++) {
+                byte[] name = new byte[readVarint(directory)];
+                directory.get(name);
+                RelationBlock relation = new RelationBlock();
+                relation.arity = readVarint(directory);
+                relation.factCount = directory.getLong();
+                long offset = directory.getLong();
+                relation.facts = map(channel, offset, directory.getLong());
+                relations.put(new String(name, BinaryFactWriter.UTF_8), relation);
+                namesEnd = Math.min(namesEnd, offset);
+            }
+            //the names end where the first relation starts, followed by the offsets of their blocks
+            names = map(channel, 12, namesEnd - 12);
+            int blockCount = (symbolCount + BinaryFactWriter.NAMES_PER_BLOCK - 1) / BinaryFactWriter.NAMES_PER_BLOCK;
+            blockOffsetsStart = names.capacity() - 4 * blockCount;
+        } finally {
+            //the mappings stay valid after the file is closed
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Converts a file of facts to Rsf and prints it.
+     *
+     * @param args the name of the file of facts
+     * @throws IOException in case the file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("\nUsage: java -cp java2rsf.jar java2rsf.BinaryFactReader <factFile>");
+            System.exit(1);
+        }
+
+        BinaryFactReader reader = new BinaryFactReader(new File(args[0]));
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+            reader.writeRsf(writer);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns the number of entity names.
+     *
+     * @return number of entity names
+     */
+    public int getSymbolCount() {
+        return symbolCount;
+    }
+
+    /**
+     * Returns the entity name with an id.
+     *
+     * @param id the id of the name, from <code>0</code> to
+     *           <code>getSymbolCount() - 1</code>
+     * @return the name with the id
+     */
+    public String getSymbol(int id) {
+        if ((id < 0) || (id >= symbolCount)) {
+            throw new IndexOutOfBoundsException("No symbol with id " + id);
+        }
+
+        ByteBuffer buffer = names.duplicate();
+        buffer.position(getBlockOffset(id / BinaryFactWriter.NAMES_PER_BLOCK));
+        byte[] bytes = new byte[0];
+        for (int i = id - id % BinaryFactWriter.NAMES_PER_BLOCK; i <= id; i++) {
+            bytes = readName(buffer, bytes, i);
+        }
+        return new String(bytes, BinaryFactWriter.UTF_8);
+    }
+
+    /**
+     * Returns the id of an entity name, or <code>-1</code> if the file doesn't
+     * contain the name.
+     *
+     * @param name the name to look up
+     * @return id of the name, or <code>-1</code>
+     */
+    public int getSymbolId(String name) {
+        if (name == null) {
+            throw new NullPointerException("Parameter name may not be null.");
+        }
+
+        //find the last block that starts with a name not greater than name
+        int low = 0;
+        int high = (symbolCount + BinaryFactWriter.NAMES_PER_BLOCK - 1) / BinaryFactWriter.NAMES_PER_BLOCK - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (getSymbol(middle * BinaryFactWriter.NAMES_PER_BLOCK).compareTo(name) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (high < 0) {
+            return -1;
+        }
+
+        ByteBuffer buffer = names.duplicate();
+        buffer.position(getBlockOffset(low));
+        byte[] bytes = new byte[0];
+        int end = Math.min(symbolCount, (low + 1) * BinaryFactWriter.NAMES_PER_BLOCK);
+        for (int id = low * BinaryFactWriter.NAMES_PER_BLOCK; id < end; id++) {
+            bytes = readName(buffer, bytes, id);
+            int comparison = new String(bytes, BinaryFactWriter.UTF_8).compareTo(name);
+            if (comparison == 0) {
+                return id;
+            } else if (comparison > 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the names of all relations in the file, sorted.
+     *
+     * @return names of the relations
+     */
+    public Set<String> getRelationNames() {
+        return Collections.unmodifiableSet(relations.keySet());
+    }
+
+    /**
+     * Returns the number of arguments of the facts of a relation.
+     *
+     * @param relation the name of the relation
+     * @return <code>1</code> or <code>2</code>, or <code>0</code> if the file
+     *         has no facts of the relation
+     */
+    public int getArity(String relation) {
+        RelationBlock block = relations.get(relation);
+        return (block == null) ? 0 : block.arity;
+    }
+
+    /**
+     * Returns the number of facts of a relation.
+     *
+     * @param relation the name of the relation
+     * @return number of facts of the relation
+     */
+    public long getFactCount(String relation) {
+        RelationBlock block = relations.get(relation);
+        return (block == null) ? 0 : block.factCount;
+    }
+
+    /**
+     * Returns a cursor over the facts of a relation, sorted by their ids.
+     *
+     * @param relation the name of the relation
+     * @return cursor over the facts, empty if the file has no facts of the relation
+     */
+    public Cursor getFacts(String relation) {
+        RelationBlock block = relations.get(relation);
+        if (block == null) {
+            return new Cursor(ByteBuffer.allocate(0), 1, 0);
+        }
+        return new Cursor(block.facts.duplicate(), block.arity, block.factCount);
+    }
+
+    /**
+     * Writes all facts as Rsf, sorted like the Rsf output of java2rsf. Each
+     * line is followed by the system line separator.
+     *
+     * @param writer the writer for the output
+     * @throws IOException in case writing fails
+     */
+    public void writeRsf(Writer writer) throws IOException {
+        String lineSeparator = System.getProperty("line.separator");
+
+        //decode all names in one pass, instead of one block per argument
+        String[] symbols = new String[symbolCount];
+        ByteBuffer buffer = names.duplicate();
+        buffer.position(0);
+        byte[] bytes = new byte[0];
+        for (int id = 0; id < symbolCount; id++) {
+            bytes = readName(buffer, bytes, id);
+            symbols[id] = new String(bytes, BinaryFactWriter.UTF_8);
+        }
+
+        for (String relation : relations.keySet()) {
+            Cursor cursor = getFacts(relation);
+            while (cursor.next()) {
+                writer.write(relation);
+                writer.write('\t');
+                writer.write(symbols[cursor.getArgument1()]);
+                if (cursor.getArgument2() >= 0) {
+                    writer.write('\t');
+                    writer.write(symbols[cursor.getArgument2()]);
+                }
+                writer.write(lineSeparator);
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Releases the file. The memory mapping is released by the garbage
+     * collector.
+     */
+    public void close() {
+        names = ByteBuffer.allocate(0);
+        symbolCount = 0;
+        relations.clear();
+    }
+
+    private int getBlockOffset(int block) {
+        return names.getInt(blockOffsetsStart + 4 * block);
+    }
+
+    /*
+     * Reads the name with an id from the position of buffer. previousBytes
+     * are the bytes of the previous name, unless the name starts a block.
+     */
+    private static byte[] readName(ByteBuffer buffer, byte[] previousBytes, int id) {
+        int sharedLength = (id % BinaryFactWriter.NAMES_PER_BLOCK == 0) ? 0 : readVarint(buffer);
+        int suffixLength = readVarint(buffer);
+        byte[] bytes = new byte[sharedLength + suffixLength];
+        System.arraycopy(previousBytes, 0, bytes, 0, sharedLength);
+        buffer.get(bytes, sharedLength, suffixLength);
+        return bytes;
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Part of file of facts too large to map: " + size + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    }
+
+    /**
+     * Iterates over the facts of a relation. The arguments are ids of entity
+     * names, see {@link BinaryFactReader#getSymbol(int)}.
+     *
+     * <p>Use it like this:</p>
+     * <p><pre>
+     * Cursor cursor = reader.getFacts("CALLS");
+     * while (cursor.next()) {
+     *     ... cursor.getArgument1() ... cursor.getArgument2() ...
+     * }
+     * </pre></p>
+     */
+    public static final class Cursor {
+
+        private ByteBuffer facts;
+        private int arity;
+        private long remaining;
+        private int argument1 = 0;
+        private int argument2 = 0;
+
+        private Cursor(ByteBuffer facts, int arity, long factCount) {
+            this.facts = facts;
+            this.arity = arity;
+            this.remaining = factCount;
+        }
+
+        /**
+         * Moves to the next fact.
+         *
+         * @return false if there are no more facts
+         */
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+
+            remaining--;
+            int delta = readVarint(facts);
+            argument1 += delta;
+            if (arity == 2) {
+                int value = readVarint(facts);
+                argument2 = (delta == 0) ? argument2 + value : value;
+            } else {
+                argument2 = -1;
+            }
+            return true;
+        }
+
+        /**
+         * Returns the id of the first argument of the current fact.
+         *
+         * @return id of the first argument
+         */
+        public int getArgument1() {
+            checkFact();
+            return argument1;
+        }
+
+        /**
+         * Returns the id of the second argument of the current fact, or
+         * <code>-1</code> if the facts of the relation have one argument.
+         *
+         * @return id of the second argument, or <code>-1</code>
+         */
+        public int getArgument2() {
+            checkFact();
+            return argument2;
+        }
+
+        private void checkFact() {
+            if (facts.position() == 0) {
+                throw new NoSuchElementException("Call next() first.");
+            }
+        }
+    }
+
+    /*
+     * The mapped facts of a relation.
+     */
+    private static class RelationBlock {
+
+        private int arity;
+        private long factCount;
+        private ByteBuffer facts;
+    }
+}
@@ -0,0 +1,188 @@
+package java2rsf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes facts in the binary format that is read by {@link BinaryFactReader}.
+ *
+ * <p>The file starts with a table of all entity names, sorted like strings.
+ * The id of a name is its position in the table, so that sorting ids sorts
+ * names. The names are front coded: each name stores the number of leading
+ * bytes it shares with the previous name, and only the rest of its bytes.
+ * Every {@value #NAMES_PER_BLOCK}th name starts a block and is stored in
+ * full, the offsets of the blocks follow the names.</p>
+ *
+ * <p>The facts of each relation follow in a block of their own, sorted by
+ * their ids. Each fact stores the difference of its first argument to the
+ * one of the previous fact. The second argument is stored as difference to
+ * the previous second argument if the first argument is the same, and in
+ * full otherwise. All numbers are stored as variable length integers with 7
+ * bits per byte.</p>
+ *
+ * <p>The file ends with a directory of the relation blocks, followed by the
+ * offset of the directory and the magic number. So the facts can be written
+ * as they come, without knowing the size of the blocks in advance.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+class BinaryFactWriter {
+
+    static final int MAGIC = 0x4A324246;
+    static final int FORMAT = 1;
+    static final int NAMES_PER_BLOCK = 16;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private OutputStream out;
+    private long position = 0;
+    private List<RelationBlock> relationBlocks = new ArrayList<RelationBlock>();
+    private RelationBlock relationBlock = null;
+    private int previousArgument1;
+    private int previousArgument2;
+
+    /*
+     * Creates a writer to out and writes the names. The names must be
+     * sorted and unique, the id of a name is its index.
+     */
+    BinaryFactWriter(OutputStream out, String[] sortedNames) throws IOException {
+        if (out == null) {
+            throw new NullPointerException("Parameter out may not be null.");
+        }
+
+        this.out = out;
+        writeInt(MAGIC);
+        writeInt(FORMAT);
+        writeInt(sortedNames.length);
+
+        long namesStart = position;
+        int[] blockOffsets = new int[(sortedNames.length + NAMES_PER_BLOCK - 1) / NAMES_PER_BLOCK];
+        byte[] previousBytes = new byte[0];
+        for (int id = 0; id < sortedNames.length; id++) {
+            byte[] bytes = sortedNames[id].getBytes(UTF_8);
+            int sharedLength = 0;
+            if (id % NAMES_PER_BLOCK == 0) {
+                blockOffsets[id / NAMES_PER_BLOCK] = (int) (position - namesStart);
+            } else {
+                int maxSharedLength = Math.min(bytes.length, previousBytes.length);
+                while ((sharedLength < maxSharedLength) && (bytes[sharedLength] == previousBytes[sharedLength])) {
+                    sharedLength++;
+                }
+                writeVarint(sharedLength);
+            }
+            writeVarint(bytes.length - sharedLength);
+            write(bytes, sharedLength, bytes.length - sharedLength);
+            previousBytes = bytes;
+        }
+        if (position - namesStart > Integer.MAX_VALUE) {
+            throw new IOException("Too many names for the binary format.");
+        }
+        for (int blockOffset : blockOffsets) {
+            writeInt(blockOffset);
+        }
+    }
+
+    /*
+     * Adds a fact. The facts must be added in the order of their relation
+     * names and then of their ids, argument2 is -1 for facts with one
+     * argument. Duplicates are skipped.
+     */
+    void add(String relation, int argument1, int argument2) throws IOException {
+        int arity = (argument2 < 0) ? 1 : 2;
+        if ((relationBlock == null) || !relationBlock.name.equals(relation)) {
+            if ((relationBlock != null) && (relationBlock.name.compareTo(relation) > 0)) {
+                throw new IllegalArgumentException("Relations must be added in order: " + relation);
+            }
+            relationBlock = new RelationBlock(relation, arity, position);
+            relationBlocks.add(relationBlock);
+            previousArgument1 = 0;
+            previousArgument2 = 0;
+        } else if (relationBlock.arity != arity) {
+            throw new IllegalArgumentException("Facts of different arity in relation " + relation);
+        } else if ((argument1 < previousArgument1)
+                || ((argument1 == previousArgument1) && (argument2 <= previousArgument2))) {
+            if ((argument1 == previousArgument1) && (argument2 == previousArgument2)) {
+                return;
+            }
+            throw new IllegalArgumentException("Facts must be added in order: " + relation);
+        }
+
+        writeVarint(argument1 - previousArgument1);
+        if (arity == 2) {
+            writeVarint((argument1 == previousArgument1) ? argument2 - previousArgument2 : argument2);
+        }
+        previousArgument1 = argument1;
+        previousArgument2 = argument2;
+        relationBlock.factCount++;
+    }
+
+    /*
+     * Writes the directory of the relations and flushes the output. The
+     * output stream is not closed.
+     */
+    void finish() throws IOException {
+        long directoryOffset = position;
+        writeInt(relationBlocks.size());
+        for (int i = 0; i < relationBlocks.size(); i++) {
+            RelationBlock block = relationBlocks.get(i);
+            long end = (i + 1 < relationBlocks.size()) ? relationBlocks.get(i + 1).offset : directoryOffset;
+            byte[] name = block.name.getBytes(UTF_8);
+            writeVarint(name.length);
+            write(name, 0, name.length);
+            writeVarint(block.arity);
+            writeLong(block.factCount);
+            writeLong(block.offset);
+            writeLong(end - block.offset);
+        }
+        writeLong(directoryOffset);
+        writeInt(MAGIC);
+        out.flush();
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+            position++;
+        }
+        out.write(value);
+        position++;
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+        position += 4;
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+        position += length;
+    }
+
+    /*
+     * The position and size of the facts of a relation.
+     */
+    private static class RelationBlock {
+
+        private String name;
+        private int arity;
+        private long offset;
+        private long factCount = 0;
+
+        RelationBlock(String name, int arity, long offset) {
+            this.name = name;
+            this.arity = arity;
+            this.offset = offset;
+        }
+    }
+}
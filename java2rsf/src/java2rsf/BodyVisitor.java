@@ -0,0 +1,674 @@
+package java2rsf;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.eclipse.jdt.internal.compiler.ASTVisitor;
+import org.eclipse.jdt.internal.compiler.ast.ASTNode;
+import org.eclipse.jdt.internal.compiler.ast.AllocationExpression;
+import org.eclipse.jdt.internal.compiler.ast.ArrayQualifiedTypeReference;
+import org.eclipse.jdt.internal.compiler.ast.ArrayReference;
+import org.eclipse.jdt.internal.compiler.ast.ArrayTypeReference;
+import org.eclipse.jdt.internal.compiler.ast.Assignment;
+import org.eclipse.jdt.internal.compiler.ast.ClassLiteralAccess;
+import org.eclipse.jdt.internal.compiler.ast.CompoundAssignment;
+import org.eclipse.jdt.internal.compiler.ast.ExplicitConstructorCall;
+import org.eclipse.jdt.internal.compiler.ast.Expression;
+import org.eclipse.jdt.internal.compiler.ast.FieldDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.FieldReference;
+import org.eclipse.jdt.internal.compiler.ast.MessageSend;
+import org.eclipse.jdt.internal.compiler.ast.NormalAnnotation;
+import org.eclipse.jdt.internal.compiler.ast.ParameterizedQualifiedTypeReference;
+import org.eclipse.jdt.internal.compiler.ast.ParameterizedSingleTypeReference;
+import org.eclipse.jdt.internal.compiler.ast.PostfixExpression;
+import org.eclipse.jdt.internal.compiler.ast.PrefixExpression;
+import org.eclipse.jdt.internal.compiler.ast.QualifiedAllocationExpression;
+import org.eclipse.jdt.internal.compiler.ast.QualifiedNameReference;
+import org.eclipse.jdt.internal.compiler.ast.QualifiedSuperReference;
+import org.eclipse.jdt.internal.compiler.ast.QualifiedThisReference;
+import org.eclipse.jdt.internal.compiler.ast.QualifiedTypeReference;
+import org.eclipse.jdt.internal.compiler.ast.SingleMemberAnnotation;
+import org.eclipse.jdt.internal.compiler.ast.SingleNameReference;
+import org.eclipse.jdt.internal.compiler.ast.SingleTypeReference;
+import org.eclipse.jdt.internal.compiler.ast.Statement;
+import org.eclipse.jdt.internal.compiler.ast.StringLiteral;
+import org.eclipse.jdt.internal.compiler.ast.SuperReference;
+import org.eclipse.jdt.internal.compiler.ast.ThisReference;
+import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
+import org.eclipse.jdt.internal.compiler.lookup.BlockScope;
+import org.eclipse.jdt.internal.compiler.lookup.ClassScope;
+import org.eclipse.jdt.internal.compiler.lookup.CompilationUnitScope;
+import org.eclipse.jdt.internal.compiler.lookup.FieldBinding;
+import org.eclipse.jdt.internal.compiler.lookup.MethodBinding;
+import org.eclipse.jdt.internal.compiler.lookup.MethodScope;
+import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
+
+/**
+ * A helper class for {@link DeclarationVisitor}. Creates the Rsf output for
+ * the body of a method or initializer in a single traversal: method calls,
+ * field accesses and type use. The enclosing type uses the types that its
+ * bodies use, too.
+ *
+ * <p>Accesses and type use are not reported below the same nodes. E.g. an
+ * unreachable assignment ends the accesses, but not the type use below it.
+ * An anonymous class allocation ends the type use, but not the accesses in
+ * its arguments. The traversal only stops where both end.</p>
+ *
+ */
+class BodyVisitor extends ASTVisitor {
+
+    private String blockName;
+    private String typeName;
+    private FactSink facts;
+    private NameUtil names;
+    private Set<Statement> writesExpressions = new HashSet<Statement>();
+    //whether the sink needs accesses and type use at all
+    private boolean reportsAccess;
+    private boolean reportsTypeUse;
+
+    //the nodes below which no accesses or no type use are reported, null if they are reported
+    private ASTNode accessEndNode = null;
+    private ASTNode typeUseEndNode = null;
+
+    /*
+     * Create a new visitor with the names of the block and of its enclosing
+     * type to print out, and a fact sink to add to. If blockName is null,
+     * only the type use of the enclosing type is reported.
+     */
+    BodyVisitor(String blockName, String typeName, FactSink facts, NameUtil names) {
+        if (typeName == null) {
+            throw new NullPointerException("Parameter typeName may not be null");
+        }
+        if (facts == null) {
+            throw new NullPointerException("Parameter facts may not be null");
+        }
+        if (names == null) {
+            throw new NullPointerException("Parameter names may not be null");
+        }
+
+        this.blockName = blockName;
+        this.typeName = typeName;
+        this.facts = facts;
+        this.names = names;
+        this.reportsAccess = (blockName != null) && reportsAccess(facts);
+        this.reportsTypeUse = facts.includes(Relation.USES);
+    }
+
+    /*
+     * Returns whether a body needs to be visited at all.
+     */
+    static boolean reportsAny(FactSink facts) {
+        return reportsAccess(facts) || facts.includes(Relation.USES);
+    }
+
+    private static boolean reportsAccess(FactSink facts) {
+        return facts.includes(Relation.CALLS) || facts.includes(Relation.READS) || facts.includes(Relation.WRITES);
+    }
+
+    private boolean isAccessVisit() {
+        return reportsAccess && (accessEndNode == null);
+    }
+
+    private boolean isTypeUseVisit() {
+        return reportsTypeUse && (typeUseEndNode == null);
+    }
+
+    /*
+     * Returns whether to visit the children of node. endsAccess and
+     * endsTypeUse tell whether accesses and type use are reported below node.
+     * Must be matched by a call to endVisitNode in endVisit.
+     */
+    private boolean visitChildren(ASTNode node, boolean endsAccess, boolean endsTypeUse) {
+        if ((!isAccessVisit() || endsAccess) && (!isTypeUseVisit() || endsTypeUse)) {
+            return false;
+        }
+
+        if (isAccessVisit() && endsAccess) {
+            accessEndNode = node;
+        }
+        if (isTypeUseVisit() && endsTypeUse) {
+            typeUseEndNode = node;
+        }
+        return true;
+    }
+
+    /*
+     * Reports accesses and type use again after leaving the node that ended them.
+     */
+    private void endVisitNode(ASTNode node) {
+        if (accessEndNode == node) {
+            accessEndNode = null;
+        }
+        if (typeUseEndNode == node) {
+            typeUseEndNode = null;
+        }
+    }
+
+    /*
+     * Handle a method call.
+     */
+    @Override
+    public boolean visit(MessageSend messageSend, BlockScope scope) {
+        if (NameUtil.isUnreachable(messageSend)) {
+            return false;
+        }
+
+        if (isAccessVisit()) {
+            //need actualReceiverType here, in case a method is declared in java.lang.Object
+            String methodName = names.getMethodName(messageSend.codegenBinding, messageSend.actualReceiverType);
+            facts.add(Relation.CALLS, blockName, methodName);
+        }
+        if (isTypeUseVisit()) {
+            visitTypeReference(messageSend.resolvedType);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean visit(AllocationExpression allocationExpression, BlockScope scope) {
+        if (NameUtil.isUnreachable(allocationExpression)) {
+            return false;
+        }
+
+        return visitAllocation(allocationExpression, allocationExpression.binding);
+    }
+
+    @Override
+    public void endVisit(AllocationExpression allocationExpression, BlockScope scope) {
+        endVisitNode(allocationExpression);
+    }
+
+    @Override
+    public boolean visit(QualifiedAllocationExpression qualifiedAllocationExpression, BlockScope scope) {
+        if (NameUtil.isUnreachable(qualifiedAllocationExpression)) {
+            return false;
+        }
+
+        return visitAllocation(qualifiedAllocationExpression, qualifiedAllocationExpression.binding);
+    }
+
+    @Override
+    public void endVisit(QualifiedAllocationExpression qualifiedAllocationExpression, BlockScope scope) {
+        endVisitNode(qualifiedAllocationExpression);
+    }
+
+    /*
+     * Handle an allocation. The type use of an anonymous class is the class
+     * itself, but not its body and the arguments.
+     */
+    private boolean visitAllocation(Expression allocationExpression, MethodBinding constructorBinding) {
+        if (isAccessVisit()) {
+            visitConstructorCall(constructorBinding);
+        }
+
+        boolean isAnonymous = (constructorBinding != null) && (constructorBinding.declaringClass != null)
+                && constructorBinding.declaringClass.isAnonymousType();
+        if (isTypeUseVisit() && isAnonymous) {
+            visitTypeReference(constructorBinding.declaringClass);
+        }
+        return visitChildren(allocationExpression, false, isAnonymous);
+    }
+
+    @Override
+    public boolean visit(ExplicitConstructorCall explicitConstructor, BlockScope scope) {
+        if (NameUtil.isUnreachable(explicitConstructor)) {
+            return visitChildren(explicitConstructor, true, false);
+        }
+
+        if (isAccessVisit()) {
+            visitConstructorCall(explicitConstructor.binding);
+        }
+        return true;
+    }
+
+    @Override
+    public void endVisit(ExplicitConstructorCall explicitConstructor, BlockScope scope) {
+        endVisitNode(explicitConstructor);
+    }
+
+    /*
+     * Handle a constructor call.
+     */
+    private void visitConstructorCall(MethodBinding methodBinding) {
+        facts.add(Relation.CALLS, blockName, names.getMethodName(methodBinding));
+    }
+
+    @Override
+    public boolean visit(Assignment assignment, BlockScope scope) {
+        if (NameUtil.isUnreachable(assignment)) {
+            return visitChildren(assignment, true, false);
+        }
+
+        if (isAccessVisit()) {
+            visitAssignment(assignment.lhs);
+        }
+        return true;
+    }
+
+    @Override
+    public void endVisit(Assignment assignment, BlockScope scope) {
+        endVisitNode(assignment);
+    }
+
+    @Override
+    public boolean visit(CompoundAssignment compoundAssignment, BlockScope scope) {
+        if (NameUtil.isUnreachable(compoundAssignment)) {
+            return visitChildren(compoundAssignment, true, false);
+        }
+
+        if (isAccessVisit()) {
+            visitAssignment(compoundAssignment.lhs);
+        }
+        return true;
+    }
+
+    @Override
+    public void endVisit(CompoundAssignment compoundAssignment, BlockScope scope) {
+        endVisitNode(compoundAssignment);
+    }
+
+    @Override
+    public boolean visit(FieldDeclaration fieldDeclaration, MethodScope scope) {
+        if (NameUtil.isUnreachable(fieldDeclaration)) {
+            return visitChildren(fieldDeclaration, true, false);
+        }
+
+        if (isAccessVisit() && (fieldDeclaration.initialization != null)) {
+            visitAssignment(fieldDeclaration);
+        }
+        return true;
+    }
+
+    @Override
+    public void endVisit(FieldDeclaration fieldDeclaration, MethodScope scope) {
+        endVisitNode(fieldDeclaration);
+    }
+
+    /*
+     * Handle writing to a field.
+     */
+    private void visitAssignment(Statement assignmentLhs) {
+        String fieldName = names.findFieldName(assignmentLhs);
+        if (fieldName != null) {
+            writesExpressions.add(assignmentLhs);
+            facts.add(Relation.WRITES, blockName, fieldName);
+        }
+    }
+
+    @Override
+    public boolean visit(PostfixExpression postfixExpression, BlockScope scope) {
+        if (NameUtil.isUnreachable(postfixExpression)) {
+            return visitChildren(postfixExpression, true, false);
+        }
+
+        if (isAccessVisit()) {
+            //first read then write so that the write doesn't block the read
+            visitFieldAccess(postfixExpression.lhs);
+            visitAssignment(postfixExpression.lhs);
+        }
+        return true;
+    }
+
+    @Override
+    public void endVisit(PostfixExpression postfixExpression, BlockScope scope) {
+        endVisitNode(postfixExpression);
+    }
+
+    @Override
+    public boolean visit(PrefixExpression prefixExpression, BlockScope scope) {
+        if (NameUtil.isUnreachable(prefixExpression)) {
+            return visitChildren(prefixExpression, true, false);
+        }
+
+        if (isAccessVisit()) {
+            visitFieldAccess(prefixExpression.lhs);
+            visitAssignment(prefixExpression.lhs);
+        }
+        return true;
+    }
+
+    @Override
+    public void endVisit(PrefixExpression prefixExpression, BlockScope scope) {
+        endVisitNode(prefixExpression);
+    }
+
+    @Override
+    public boolean visit(FieldReference fieldReference, ClassScope scope) {
+        if (NameUtil.isUnreachable(fieldReference)) {
+            return false;
+        }
+
+        if (isAccessVisit()) {
+            visitFieldAccess(fieldReference);
+        }
+        if (isTypeUseVisit()) {
+            visitTypeReference(fieldReference.resolvedType);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean visit(FieldReference fieldReference, BlockScope scope) {
+        if (NameUtil.isUnreachable(fieldReference)) {
+            return false;
+        }
+
+        if (isAccessVisit()) {
+            visitFieldAccess(fieldReference);
+        }
+        if (isTypeUseVisit()) {
+            visitTypeReference(fieldReference.resolvedType);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean visit(SingleNameReference singleNameReference, BlockScope scope) {
+        if (NameUtil.isUnreachable(singleNameReference)) {
+            return false;
+        }
+
+        if (isAccessVisit()) {
+            visitFieldAccess(singleNameReference);
+        }
+        if (isTypeUseVisit()) {
+            visitNameTypeReference(singleNameReference);
+        }
+        return true;
+    }
+
+    //no field access reported here
+    @Override
+    public boolean visit(SingleNameReference singleNameReference, ClassScope scope) {
+        if (NameUtil.isUnreachable(singleNameReference)) {
+            return false;
+        }
+
+        if (isTypeUseVisit()) {
+            visitNameTypeReference(singleNameReference);
+        }
+        return true;
+    }
+
+    /*
+     * Handle the type use of a name.
+     */
+    private void visitNameTypeReference(SingleNameReference singleNameReference) {
+        if (singleNameReference.codegenBinding instanceof FieldBinding) {
+            FieldBinding fieldBinding = (FieldBinding) singleNameReference.codegenBinding;
+            visitTypeReference(fieldBinding.declaringClass);
+        }
+        visitTypeReference(singleNameReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(QualifiedNameReference qualifiedNameReference, BlockScope scope) {
+        if (NameUtil.isUnreachable(qualifiedNameReference)) {
+            return false;
+        }
+
+        if (qualifiedNameReference.otherCodegenBindings != null) {
+            for (FieldBinding fieldBinding : qualifiedNameReference.otherCodegenBindings) {
+                if ((fieldBinding != null) && (fieldBinding.declaringClass != null)
+                        && !"length".equals(new String(fieldBinding.name))) {
+                    if (isAccessVisit()) {
+                        String fieldName = names.getFieldName(fieldBinding.declaringClass, fieldBinding.shortReadableName());
+                        facts.add(Relation.READS, blockName, fieldName);
+                    }
+                    if (isTypeUseVisit()) {
+                        visitTypeReference(fieldBinding.declaringClass);
+                    }
+                }
+            }
+        }
+        visitQualifiedNameReference(qualifiedNameReference);
+        return true;
+    }
+
+    @Override
+    public boolean visit(QualifiedNameReference qualifiedNameReference, ClassScope scope) {
+        if (NameUtil.isUnreachable(qualifiedNameReference)) {
+            return false;
+        }
+
+        if (qualifiedNameReference.otherCodegenBindings != null) {
+            for (FieldBinding fieldBinding : qualifiedNameReference.otherCodegenBindings) {
+                if (fieldBinding == null) {
+                    continue;
+                }
+                if (isAccessVisit()) {
+                    String fieldName = names.getFieldName(fieldBinding.declaringClass, fieldBinding.shortReadableName());
+                    facts.add(Relation.READS, blockName, fieldName);
+                }
+                if (isTypeUseVisit()) {
+                    visitTypeReference(fieldBinding.declaringClass);
+                }
+            }
+        }
+        visitQualifiedNameReference(qualifiedNameReference);
+        return true;
+    }
+
+    /*
+     * Handle the first field access and the type use of a qualified name.
+     */
+    private void visitQualifiedNameReference(QualifiedNameReference qualifiedNameReference) {
+        if (isAccessVisit()) {
+            visitFieldAccess(qualifiedNameReference);
+        }
+        if (isTypeUseVisit()) {
+            visitTypeReference(qualifiedNameReference.actualReceiverType);
+            visitTypeReference(qualifiedNameReference.resolvedType);
+        }
+    }
+
+    /*
+     * Handle reading a field.
+     */
+    private void visitFieldAccess(Expression expression) {
+        String fieldName = names.findFieldName(expression);
+        if ((fieldName != null) && (!writesExpressions.contains(expression))) {
+            facts.add(Relation.READS, blockName, fieldName);
+        }
+    }
+
+    @Override
+    public boolean visit(ArrayReference arrayReference, BlockScope scope) {
+        if (NameUtil.isUnreachable(arrayReference)) {
+            return visitChildren(arrayReference, false, true);
+        }
+
+        if (isTypeUseVisit()) {
+            visitTypeReference(arrayReference.resolvedType);
+        }
+        return true;
+    }
+
+    @Override
+    public void endVisit(ArrayReference arrayReference, BlockScope scope) {
+        endVisitNode(arrayReference);
+    }
+
+    /*
+     * The nodes below only report type use. Below them are only type
+     * references, so the traversal stops at unreachable nodes.
+     */
+    @Override
+    public boolean visit(ArrayTypeReference arrayTypeReference, BlockScope scope) {
+        return visitTypeUse(arrayTypeReference, arrayTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ArrayTypeReference arrayTypeReference, ClassScope scope) {
+        return visitTypeUse(arrayTypeReference, arrayTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ArrayQualifiedTypeReference arrayQualifiedTypeReference, BlockScope scope) {
+        return visitTypeUse(arrayQualifiedTypeReference, arrayQualifiedTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ArrayQualifiedTypeReference arrayQualifiedTypeReference, ClassScope scope) {
+        return visitTypeUse(arrayQualifiedTypeReference, arrayQualifiedTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(SingleTypeReference singleTypeReference, BlockScope scope) {
+        return visitTypeUse(singleTypeReference, singleTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(SingleTypeReference singleTypeReference, ClassScope scope) {
+        return visitTypeUse(singleTypeReference, singleTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(QualifiedTypeReference qualifiedTypeReference, BlockScope scope) {
+        return visitTypeUse(qualifiedTypeReference, qualifiedTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(QualifiedTypeReference qualifiedTypeReference, ClassScope scope) {
+        return visitTypeUse(qualifiedTypeReference, qualifiedTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ParameterizedSingleTypeReference parameterizedSingleTypeReference, BlockScope scope) {
+        return visitTypeUse(parameterizedSingleTypeReference, parameterizedSingleTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ParameterizedSingleTypeReference parameterizedSingleTypeReference, ClassScope scope) {
+        return visitTypeUse(parameterizedSingleTypeReference, parameterizedSingleTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ParameterizedQualifiedTypeReference parameterizedQualifiedTypeReference, BlockScope scope) {
+        return visitTypeUse(parameterizedQualifiedTypeReference, parameterizedQualifiedTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ParameterizedQualifiedTypeReference parameterizedQualifiedTypeReference, ClassScope scope) {
+        return visitTypeUse(parameterizedQualifiedTypeReference, parameterizedQualifiedTypeReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ThisReference thisReference, BlockScope scope) {
+        return visitTypeUse(thisReference, thisReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ThisReference thisReference, ClassScope scope) {
+        return visitTypeUse(thisReference, thisReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(QualifiedThisReference qualifiedThisReference, BlockScope scope) {
+        return visitTypeUse(qualifiedThisReference, qualifiedThisReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(QualifiedThisReference qualifiedThisReference, ClassScope scope) {
+        return visitTypeUse(qualifiedThisReference, qualifiedThisReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(SuperReference superReference, BlockScope scope) {
+        return visitTypeUse(superReference, superReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(QualifiedSuperReference qualifiedSuperReference, BlockScope scope) {
+        return visitTypeUse(qualifiedSuperReference, qualifiedSuperReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(QualifiedSuperReference qualifiedSuperReference, ClassScope scope) {
+        return visitTypeUse(qualifiedSuperReference, qualifiedSuperReference.resolvedType);
+    }
+
+    @Override
+    public boolean visit(StringLiteral stringLiteral, BlockScope scope) {
+        return visitTypeUse(stringLiteral, stringLiteral.resolvedType);
+    }
+
+    @Override
+    public boolean visit(ClassLiteralAccess classLiteral, BlockScope scope) {
+        return visitTypeUse(classLiteral, classLiteral.resolvedType);
+    }
+
+    /*
+     * Handle a node that only reports type use.
+     */
+    private boolean visitTypeUse(ASTNode node, TypeBinding typeBinding) {
+        if (NameUtil.isUnreachable(node)) {
+            return false;
+        }
+
+        if (isTypeUseVisit()) {
+            visitTypeReference(typeBinding);
+        }
+        return true;
+    }
+
+    /*
+     * Handle type use.
+     */
+    private void visitTypeReference(TypeBinding typeBinding) {
+        if (typeBinding == null) {
+            addTypeUse(NameUtil.UNRESOLVED);
+        } else if (typeBinding.isArrayType()) {
+            visitTypeReference(typeBinding.leafComponentType());
+        } else if (!typeBinding.isBaseType()) {
+            addTypeUse(names.getTypeName(typeBinding));
+        }
+    }
+
+    private void addTypeUse(String usedTypeName) {
+        if (blockName != null) {
+            facts.add(Relation.USES, blockName, usedTypeName);
+        }
+        facts.add(Relation.USES, typeName, usedTypeName);
+    }
+
+    //types are handled by DeclarationVisitor
+    @Override
+    public boolean visit(TypeDeclaration localTypeDeclaration, BlockScope scope) {
+        return false;
+    }
+
+    @Override
+    public boolean visit(TypeDeclaration memberTypeDeclaration, ClassScope scope) {
+        return false;
+    }
+
+    @Override
+    public boolean visit(TypeDeclaration typeDeclaration, CompilationUnitScope scope) {
+        return false;
+    }
+
+    //annotations only report the type use of the annotation type
+    @Override
+    public boolean visit(NormalAnnotation annotation, BlockScope scope) {
+        if (NameUtil.isUnreachable(annotation)) {
+            return false;
+        }
+
+        if (isTypeUseVisit()) {
+            visitTypeReference(annotation.resolvedType);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean visit(SingleMemberAnnotation annotation, BlockScope scope) {
+        if (NameUtil.isUnreachable(annotation)) {
+            return false;
+        }
+
+        if (isTypeUseVisit()) {
+            visitTypeReference(annotation.resolvedType);
+        }
+        return false;
+    }
+}
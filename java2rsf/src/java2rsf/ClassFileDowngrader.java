@@ -0,0 +1,243 @@
+package java2rsf;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+import org.eclipse.jdt.internal.compiler.lookup.MethodBinding;
+
+/**
+ * Rewrites class files of newer Java versions so that the Jdt compiler can
+ * read them. The Jdt compiler only knows class files up to Java 6.
+ *
+ * <p>Constant pool entries that were added after Java 6 are replaced by
+ * integer constants, so that the indices of all other entries stay the same.
+ * Default methods become abstract methods, so that calls to them resolve.
+ * They are marked with the strictfp flag, which no abstract method has, and
+ * the compiler doesn't report that classes must implement them, see
+ * {@link #isDefaultMethod}. Static and private interface methods are
+ * removed, they are only called within their interface or with its name,
+ * which Java 6 doesn't allow. Annotations are removed, because the Jdt compiler
+ * misreads the values of some annotations of the Java API, like
+ * <code>@Deprecated(since = "9")</code>.</p>
+ *
+ * <p>The class files are only used to resolve references, the removed parts
+ * are never needed for that.</p>
+ */
+final class ClassFileDowngrader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int JAVA_6_MAJOR_VERSION = 50;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final int ACC_STRICT = 0x0800;
+    private static final int ACC_SYNTHETIC = 0x1000;
+    private static final String ANNOTATIONS_SUFFIX = "Annotations";
+
+    private ClassFileDowngrader() {
+    }
+
+    /*
+     * Reads a class file of any Java version.
+     */
+    static ClassFileReader read(byte[] classFileBytes, String fileName) throws ClassFormatException {
+        byte[] bytes;
+        try {
+            bytes = downgrade(classFileBytes);
+        } catch (IOException e) {
+            throw new ClassFormatException(ClassFormatException.ErrTruncatedInput);
+        }
+        return new ClassFileReader(bytes, fileName.toCharArray());
+    }
+
+    /*
+     * Returns the class file as a Java 6 class file. Returns the same array if
+     * the class file is not newer than Java 6.
+     */
+    static byte[] downgrade(byte[] classFileBytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFileBytes));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a class file.");
+        }
+        in.readUnsignedShort();
+        if (in.readUnsignedShort() <= JAVA_6_MAJOR_VERSION) {
+            return classFileBytes;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(classFileBytes.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(0);
+        out.writeShort(JAVA_6_MAJOR_VERSION);
+
+        //constant pool, remembers the strings and the names of classes
+        int constantPoolCount = in.readUnsignedShort();
+        String[] utf8Entries = new String[constantPoolCount];
+        int[] classNameIndices = new int[constantPoolCount];
+        out.writeShort(constantPoolCount);
+        for (int index = 1; index < constantPoolCount; index++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: //Utf8
+                    utf8Entries[index] = in.readUTF();
+                    out.writeByte(tag);
+                    out.writeUTF(utf8Entries[index]);
+                    break;
+                case 3: //Integer
+                case 4: //Float
+                case 9: //Fieldref
+                case 10: //Methodref
+                case 11: //InterfaceMethodref
+                case 12: //NameAndType
+                    out.writeByte(tag);
+                    out.writeInt(in.readInt());
+                    break;
+                case 5: //Long
+                case 6: //Double
+                    out.writeByte(tag);
+                    out.writeLong(in.readLong());
+                    index++;
+                    break;
+                case 7: //Class
+                    classNameIndices[index] = in.readUnsignedShort();
+                    out.writeByte(tag);
+                    out.writeShort(classNameIndices[index]);
+                    break;
+                case 8: //String
+                    out.writeByte(tag);
+                    out.writeShort(in.readUnsignedShort());
+                    break;
+                case 15: //MethodHandle
+                    in.skipBytes(3);
+                    writePlaceholder(out);
+                    break;
+                case 16: //MethodType
+                case 19: //Module
+                case 20: //Package
+                    in.skipBytes(2);
+                    writePlaceholder(out);
+                    break;
+                case 17: //Dynamic
+                case 18: //InvokeDynamic
+                    in.skipBytes(4);
+                    writePlaceholder(out);
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag + ".");
+            }
+        }
+
+        int accessFlags = in.readUnsignedShort();
+        int thisClass = in.readUnsignedShort();
+        out.writeShort(accessFlags);
+        out.writeShort(thisClass);
+        out.writeShort(in.readUnsignedShort());
+        int interfaceCount = in.readUnsignedShort();
+        out.writeShort(interfaceCount);
+        copy(in, out, 2 * interfaceCount);
+
+        //fields
+        int fieldCount = in.readUnsignedShort();
+        out.writeShort(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            copy(in, out, 6);
+            copyAttributes(in, out, utf8Entries);
+        }
+
+        //methods, default methods become abstract, other non-abstract interface methods are removed
+        boolean isInterface = (accessFlags & ACC_INTERFACE) != 0;
+        int methodCount = in.readUnsignedShort();
+        ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+        DataOutputStream methodOut = new DataOutputStream(methodBytes);
+        int keptMethodCount = 0;
+        for (int i = 0; i < methodCount; i++) {
+            int methodAccessFlags = in.readUnsignedShort();
+            int nameIndex = in.readUnsignedShort();
+            int descriptorIndex = in.readUnsignedShort();
+            boolean keep = true;
+            if (isInterface && ((methodAccessFlags & ACC_ABSTRACT) == 0)) {
+                if ((methodAccessFlags & (ACC_PRIVATE | ACC_STATIC | ACC_SYNTHETIC)) == 0) {
+                    methodAccessFlags |= ACC_ABSTRACT | ACC_STRICT;
+                } else {
+                    keep = false;
+                }
+            }
+            if (keep) {
+                keptMethodCount++;
+                methodOut.writeShort(methodAccessFlags);
+                methodOut.writeShort(nameIndex);
+                methodOut.writeShort(descriptorIndex);
+                copyAttributes(in, methodOut, utf8Entries);
+            } else {
+                skipAttributes(in);
+            }
+        }
+        out.writeShort(keptMethodCount);
+        methodBytes.writeTo(out);
+
+        copyAttributes(in, out, utf8Entries);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /*
+     * Returns whether a method is a default method that was turned into an
+     * abstract method. Classes need not implement it.
+     */
+    static boolean isDefaultMethod(MethodBinding method) {
+        int modifiers = method.original().modifiers;
+        return method.declaringClass.isInterface() && ((modifiers & ACC_ABSTRACT) != 0)
+                && ((modifiers & ACC_STRICT) != 0);
+    }
+
+    /*
+     * Writes an entry that takes the place of an unsupported constant.
+     */
+    private static void writePlaceholder(DataOutputStream out) throws IOException {
+        out.writeByte(3);
+        out.writeInt(0);
+    }
+
+    /*
+     * Copies attributes, except for annotations.
+     */
+    private static void copyAttributes(DataInputStream in, DataOutputStream out, String[] utf8Entries) throws IOException {
+        int attributeCount = in.readUnsignedShort();
+        ByteArrayOutputStream attributeBytes = new ByteArrayOutputStream();
+        DataOutputStream attributeOut = new DataOutputStream(attributeBytes);
+        int keptAttributeCount = 0;
+        for (int i = 0; i < attributeCount; i++) {
+            int nameIndex = in.readUnsignedShort();
+            int length = in.readInt();
+            if (utf8Entries[nameIndex].endsWith(ANNOTATIONS_SUFFIX)) {
+                in.skipBytes(length);
+            } else {
+                keptAttributeCount++;
+                attributeOut.writeShort(nameIndex);
+                attributeOut.writeInt(length);
+                copy(in, attributeOut, length);
+            }
+        }
+        out.writeShort(keptAttributeCount);
+        attributeBytes.writeTo(out);
+    }
+
+    private static void skipAttributes(DataInputStream in) throws IOException {
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            in.readUnsignedShort();
+            in.skipBytes(in.readInt());
+        }
+    }
+
+    private static void copy(DataInputStream in, DataOutputStream out, int length) throws IOException {
+        byte[] buffer = new byte[length];
+        in.readFully(buffer);
+        out.write(buffer);
+    }
+}
@@ -0,0 +1,683 @@
+package java2rsf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+
+/**
+ * An index of the classpath that can be shared by all compilations of a run.
+ *
+ * <p>Every classpath location is opened and scanned only once. The index maps
+ * packages to the types they contain and the types to their location. The
+ * contents of class and source files are only read when a type is requested
+ * by the compiler.</p>
+ *
+ * <p>Instances are thread-safe. Use {@link #close()} to release the opened
+ * <code>.jar</code> files after the last compilation.</p>
+ *
+ * @see JdtCompiler#setClasspathIndex(ClasspathIndex)
+ */
+public class ClasspathIndex {
+
+    /**
+     * Classpath name of the module image of the running Java runtime, Java 9
+     * or later.
+     */
+    public static final String JRT_CLASSPATH_NAME = "jrt:/";
+    /**
+     * Prefix of the classpath name of the Java API of an earlier release, as
+     * stored in <code>java.home/lib/ct.sym</code>. For example
+     * <code>ct.sym:8</code> for Java 8.
+     */
+    public static final String RELEASE_CLASSPATH_PREFIX = "ct.sym:";
+
+    private static final String CLASS_SUFFIX = ".class";
+    private static final String JAVA_SUFFIX = ".java";
+    private static final String SIGNATURE_SUFFIX = ".sig";
+    //marks packages that don't exist in a directory
+    private static final Set<String> MISSING_PACKAGE = Collections.emptySet();
+
+    private final List<Location> locations = new ArrayList<Location>();
+    //classpath names that didn't exist when the index was created
+    private final List<File> missingFiles = new ArrayList<File>();
+    private String encoding;
+
+    /**
+     * Creates a new index of the classpath.
+     *
+     * <p>Each classpath name can be a directory containing Java source or
+     * class files or a <code>.jar</code> file. {@link #JRT_CLASSPATH_NAME}
+     * and names starting with {@link #RELEASE_CLASSPATH_PREFIX} stand for the
+     * Java API of the running Java runtime or of an earlier release. Locations
+     * that don't exist or cannot be opened are ignored, except for the Java
+     * API of a release.</p>
+     *
+     * <p>Class files of any Java version can be read, see
+     * {@link ClassFileDowngrader}.</p>
+     *
+     * @param classpathNames the locations of the classpath, in lookup order
+     * @param encoding the encoding of Java source files on the classpath
+     * @throws IllegalArgumentException if the Java API of a release is not in
+     *         the <code>ct.sym</code> file of the running Java runtime
+     */
+    public ClasspathIndex(List<String> classpathNames, String encoding) {
+        if (classpathNames == null) {
+            throw new NullPointerException("Parameter classpathNames may not be null.");
+        }
+        if (encoding == null) {
+            throw new NullPointerException("Parameter encoding may not be null.");
+        }
+        this.encoding = encoding;
+
+        for (String classpathName : classpathNames) {
+            File file = new File(classpathName);
+            try {
+                if (classpathName.equals(JRT_CLASSPATH_NAME)) {
+                    locations.add(new JrtLocation());
+                } else if (classpathName.startsWith(RELEASE_CLASSPATH_PREFIX)) {
+                    locations.add(createReleaseLocation(classpathName.substring(RELEASE_CLASSPATH_PREFIX.length())));
+                } else if (file.isDirectory()) {
+                    locations.add(new DirectoryLocation(file));
+                } else if (file.isFile()) {
+                    locations.add(new JarLocation(file));
+                } else {
+                    missingFiles.add(file);
+                }
+            } catch (IOException e) {
+                if (classpathName.startsWith(RELEASE_CLASSPATH_PREFIX)) {
+                    throw new IllegalArgumentException("Cannot read release " 
+                            + classpathName.substring(RELEASE_CLASSPATH_PREFIX.length()) + ": " + e.getMessage(), e);
+                }
+                //ignore invalid classpath entries, like the Jdt compiler does
+            }
+        }
+    }
+
+    /*
+     * Creates the location of the Java API of a release like "8". The
+     * release of the running Java runtime is not in ct.sym, its module image
+     * is used instead. Fails if the release is missing, the compilation 
+     * would fail without the Java API anyway, but with a misleading error.
+     */
+    private Location createReleaseLocation(String release) throws IOException {
+        int releaseNumber;
+        try {
+            releaseNumber = Integer.parseInt(release);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid release " + release + ".");
+        }
+        String runningVersion = System.getProperty("java.specification.version");
+        if (runningVersion.equals(release) || runningVersion.equals("1." + release)) {
+            return new JrtLocation();
+        }
+        File ctSym = new File(System.getProperty("java.home") + File.separator + "lib" + File.separator + "ct.sym");
+        if (!ctSym.isFile()) {
+            throw new IllegalArgumentException("Release " + release + " is not supported, " + ctSym 
+                    + " doesn't exist. It is part of Java 9 and later.");
+        }
+        //ct.sym names the releases by a single digit of base 36
+        if ((releaseNumber < 0) || (releaseNumber >= Character.MAX_RADIX)) {
+            throw new IllegalArgumentException("Release " + release + " is not supported by " + ctSym + ".");
+        }
+        CtSymLocation location = new CtSymLocation(ctSym, 
+                Character.toUpperCase(Character.forDigit(releaseNumber, Character.MAX_RADIX)));
+        if (!location.isPackage("java/lang")) {
+            location.close();
+            throw new IllegalArgumentException("Release " + release + " is not supported by " + ctSym + ".");
+        }
+        return location;
+    }
+
+    /**
+     * Returns a name environment for a single compilation.
+     *
+     * <p>Types that are declared in <code>inputFileNames</code> are not
+     * looked up on the classpath, because the compiler gets them as source
+     * files already.</p>
+     *
+     * @param inputFileNames names of the files that are compiled
+     * @return a name environment backed by this index
+     */
+    INameEnvironment getNameEnvironment(String[] inputFileNames) {
+        return getNameEnvironment(inputFileNames, null);
+    }
+
+    /*
+     * Returns a name environment that finds the types of compiledTypes
+     * before those on the classpath. compiledTypes maps qualified type names
+     * like "hworld/HelloWorld" to class files that were compiled earlier in
+     * the same run, it may be null.
+     */
+    INameEnvironment getNameEnvironment(String[] inputFileNames, Map<String, byte[]> compiledTypes) {
+        return new NameEnvironment(getKnownTypeNames(inputFileNames), compiledTypes);
+    }
+
+    /*
+     * Returns whether the index no longer matches the classpath: a .jar file
+     * changed, or a location that was missing now exists. Directories are
+     * listed when their packages are first requested, see clearListings.
+     */
+    boolean isStale() {
+        for (File missingFile : missingFiles) {
+            if (missingFile.exists()) {
+                return true;
+            }
+        }
+        for (Location location : locations) {
+            if (location.isStale()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Forgets the listed package directories, so that files added to or
+     * removed from a directory since are found. Must not be called while
+     * compilations use the index.
+     */
+    void clearListings() {
+        for (Location location : locations) {
+            if (location instanceof DirectoryLocation) {
+                ((DirectoryLocation) location).listings.clear();
+            }
+        }
+    }
+
+    /**
+     * Closes all <code>.jar</code> files of the classpath.
+     *
+     * @throws java.io.IOException in case of an IO error while closing a file
+     */
+    public void close() throws IOException {
+        for (Location location : locations) {
+            location.close();
+        }
+    }
+
+    /*
+     * Turns input file names into qualified type names like "hworld/HelloWorld",
+     * relative to the classpath directory that contains the file.
+     */
+    private Set<String> getKnownTypeNames(String[] inputFileNames) {
+        Set<String> knownTypeNames = new HashSet<String>();
+        for (String inputFileName : inputFileNames) {
+            String typeName;
+            try {
+                typeName = new File(inputFileName).getCanonicalPath().replace(File.separatorChar, '/');
+            } catch (IOException e) {
+                continue;
+            }
+            int suffixIndex = typeName.lastIndexOf('.');
+            if (suffixIndex != -1) {
+                typeName = typeName.substring(0, suffixIndex);
+            }
+
+            //strip the shortest matching classpath directory
+            String matchingPath = null;
+            for (Location location : locations) {
+                if (location instanceof DirectoryLocation) {
+                    String path = ((DirectoryLocation) location).normalizedPath;
+                    if (typeName.startsWith(path) && ((matchingPath == null) || (path.length() < matchingPath.length()))) {
+                        matchingPath = path;
+                    }
+                }
+            }
+            if (matchingPath != null) {
+                typeName = typeName.substring(matchingPath.length());
+            }
+            knownTypeNames.add(typeName);
+        }
+        return knownTypeNames;
+    }
+
+    /*
+     * Returns whether a package like "java/lang" exists in any location.
+     */
+    private boolean isPackage(String qualifiedPackageName) {
+        for (Location location : locations) {
+            if (location.isPackage(qualifiedPackageName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Looks up a type in all locations, returns the first one found or null.
+     */
+    private NameEnvironmentAnswer findType(String qualifiedPackageName, String typeName) {
+        for (Location location : locations) {
+            NameEnvironmentAnswer answer = location.findType(qualifiedPackageName, typeName);
+            if (answer != null) {
+                return answer;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Reads a class file from a .jar file.
+     */
+    private static byte[] readEntry(ZipFile zipFile, ZipEntry entry) throws IOException {
+        InputStream in = zipFile.getInputStream(entry);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((entry.getSize() > 0) ? (int) entry.getSize() : 1 << 12);
+            byte[] buffer = new byte[1 << 12];
+            for (int length = in.read(buffer); length != -1; length = in.read(buffer)) {
+                bytes.write(buffer, 0, length);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /*
+     * The name environment of a single compilation. Delegates to the shared index.
+     */
+    private class NameEnvironment implements INameEnvironment {
+
+        private Set<String> knownTypeNames;
+        private Map<String, byte[]> compiledTypes;
+
+        NameEnvironment(Set<String> knownTypeNames, Map<String, byte[]> compiledTypes) {
+            this.knownTypeNames = knownTypeNames;
+            this.compiledTypes = compiledTypes;
+        }
+
+        public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+            if (compoundTypeName == null) {
+                return null;
+            }
+            char[][] packageName = CharOperation.subarray(compoundTypeName, 0, compoundTypeName.length - 1);
+            return findType(compoundTypeName[compoundTypeName.length - 1], packageName);
+        }
+
+        public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+            if (typeName == null) {
+                return null;
+            }
+            String qualifiedPackageName = new String(CharOperation.concatWith(packageName, '/'));
+            String qualifiedTypeName = new String(CharOperation.concatWith(packageName, typeName, '/'));
+            if (knownTypeNames.contains(qualifiedTypeName)) {
+                return null;
+            }
+            byte[] compiledType = (compiledTypes == null) ? null : compiledTypes.get(qualifiedTypeName);
+            if (compiledType != null) {
+                try {
+                    return new NameEnvironmentAnswer(new ClassFileReader(compiledType, 
+                            (qualifiedTypeName + CLASS_SUFFIX).toCharArray()), null);
+                } catch (ClassFormatException e) {
+                    //compile the type from its source file again
+                }
+            }
+            return ClasspathIndex.this.findType(qualifiedPackageName, new String(typeName));
+        }
+
+        public boolean isPackage(char[][] parentPackageName, char[] packageName) {
+            return ClasspathIndex.this.isPackage(new String(CharOperation.concatWith(parentPackageName, packageName, '/')));
+        }
+
+        public void cleanup() {
+            //the index is shared, it stays open
+        }
+    }
+
+    /*
+     * A location on the classpath.
+     */
+    private abstract class Location {
+
+        abstract boolean isPackage(String qualifiedPackageName);
+
+        abstract NameEnvironmentAnswer findType(String qualifiedPackageName, String typeName);
+
+        boolean isStale() {
+            return false;
+        }
+
+        void close() throws IOException {
+        }
+    }
+
+    /*
+     * A location whose contents don't change while it is open. The class
+     * files are kept after they were read and downgraded, so that other
+     * compilations of the same run don't read them again. The parsed class
+     * files are not kept, the Jdt compiler may decode them lazily.
+     */
+    private abstract class ArchiveLocation extends Location {
+
+        private final ConcurrentMap<String, byte[]> classFiles = new ConcurrentHashMap<String, byte[]>();
+
+        /*
+         * Reads an entry of the archive, or returns null if there is none.
+         */
+        abstract byte[] readClassFile(String entryName) throws IOException;
+
+        /*
+         * Returns the answer for a class file in the archive, or null if it
+         * cannot be read.
+         */
+        NameEnvironmentAnswer getAnswer(String entryName) {
+            try {
+                byte[] bytes = classFiles.get(entryName);
+                if (bytes == null) {
+                    bytes = readClassFile(entryName);
+                    if (bytes == null) {
+                        return null;
+                    }
+                    bytes = ClassFileDowngrader.downgrade(bytes);
+                    classFiles.putIfAbsent(entryName, bytes);
+                }
+                return new NameEnvironmentAnswer(ClassFileDowngrader.read(bytes, entryName), null);
+            } catch (IOException e) {
+                //treat unreadable class files as missing, like the Jdt compiler does
+            } catch (ClassFormatException e) {
+                //treat unreadable class files as missing, like the Jdt compiler does
+            }
+            return null;
+        }
+    }
+
+    /*
+     * A .jar file. All entries are indexed when the file is opened.
+     */
+    private class JarLocation extends ArchiveLocation {
+
+        private File file;
+        private long lastModified;
+        private long length;
+        private ZipFile zipFile;
+        private final Map<String, Set<String>> typesByPackage = new HashMap<String, Set<String>>();
+
+        JarLocation(File file) throws IOException {
+            this.file = file;
+            lastModified = file.lastModified();
+            length = file.length();
+            zipFile = new ZipFile(file);
+            typesByPackage.put("", new HashSet<String>());
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                String entryName = entries.nextElement().getName();
+                int lastSlash = entryName.lastIndexOf('/');
+                String packageName = (lastSlash == -1) ? "" : entryName.substring(0, lastSlash);
+                Set<String> types = addPackage(packageName);
+                if (entryName.endsWith(CLASS_SUFFIX)) {
+                    types.add(entryName.substring(lastSlash + 1, entryName.length() - CLASS_SUFFIX.length()));
+                }
+            }
+        }
+
+        /*
+         * Adds a package and all its parent packages.
+         */
+        private Set<String> addPackage(String packageName) {
+            Set<String> types = typesByPackage.get(packageName);
+            if (types == null) {
+                types = new HashSet<String>();
+                typesByPackage.put(packageName, types);
+                int lastSlash = packageName.lastIndexOf('/');
+                if (lastSlash > 0) {
+                    addPackage(packageName.substring(0, lastSlash));
+                }
+            }
+            return types;
+        }
+
+        @Override
+        boolean isPackage(String qualifiedPackageName) {
+            return typesByPackage.containsKey(qualifiedPackageName);
+        }
+
+        @Override
+        NameEnvironmentAnswer findType(String qualifiedPackageName, String typeName) {
+            Set<String> types = typesByPackage.get(qualifiedPackageName);
+            if ((types == null) || !types.contains(typeName)) {
+                return null;
+            }
+            String entryName = qualifiedPackageName.length() == 0 ? typeName + CLASS_SUFFIX
+                                                                 : qualifiedPackageName + "/" + typeName + CLASS_SUFFIX;
+            return getAnswer(entryName);
+        }
+
+        @Override
+        byte[] readClassFile(String entryName) throws IOException {
+            ZipEntry entry = zipFile.getEntry(entryName);
+            return (entry == null) ? null : readEntry(zipFile, entry);
+        }
+
+        @Override
+        boolean isStale() {
+            return (file.lastModified() != lastModified) || (file.length() != length);
+        }
+
+        @Override
+        void close() throws IOException {
+            zipFile.close();
+        }
+    }
+
+    /*
+     * A directory with source or class files. Each package directory is listed
+     * when it is first requested.
+     */
+    private class DirectoryLocation extends Location {
+
+        private String path;
+        private String normalizedPath;
+        //file names per package
+        private final ConcurrentMap<String, Set<String>> listings = new ConcurrentHashMap<String, Set<String>>();
+
+        DirectoryLocation(File directory) throws IOException {
+            path = directory.getCanonicalPath();
+            if (!path.endsWith(File.separator)) {
+                path += File.separator;
+            }
+            normalizedPath = path.replace(File.separatorChar, '/');
+        }
+
+        /*
+         * Returns the file names in a package directory, or null if there is no
+         * such directory. The names are case sensitive on all platforms.
+         */
+        private Set<String> getListing(String qualifiedPackageName) {
+            Set<String> listing = listings.get(qualifiedPackageName);
+            if (listing == null) {
+                listing = MISSING_PACKAGE;
+                int lastSlash = qualifiedPackageName.lastIndexOf('/');
+                Set<String> parentListing = (qualifiedPackageName.length() == 0)
+                        ? null : getListing((lastSlash == -1) ? "" : qualifiedPackageName.substring(0, lastSlash));
+                if ((qualifiedPackageName.length() == 0) ||
+                        ((parentListing != null) && parentListing.contains(qualifiedPackageName.substring(lastSlash + 1)))) {
+                    File directory = new File(path + qualifiedPackageName.replace('/', File.separatorChar));
+                    String[] fileNames = directory.isDirectory() ? directory.list() : null;
+                    if (fileNames != null) {
+                        listing = new HashSet<String>();
+                        Collections.addAll(listing, fileNames);
+                    }
+                }
+                Set<String> previousListing = listings.putIfAbsent(qualifiedPackageName, listing);
+                if (previousListing != null) {
+                    listing = previousListing;
+                }
+            }
+            return (listing == MISSING_PACKAGE) ? null : listing;
+        }
+
+        @Override
+        boolean isPackage(String qualifiedPackageName) {
+            return getListing(qualifiedPackageName) != null;
+        }
+
+        @Override
+        NameEnvironmentAnswer findType(String qualifiedPackageName, String typeName) {
+            Set<String> listing = getListing(qualifiedPackageName);
+            if (listing == null) {
+                return null;
+            }
+
+            String filePath = path + ((qualifiedPackageName.length() == 0) ? typeName
+                    : qualifiedPackageName.replace('/', File.separatorChar) + File.separator + typeName);
+            boolean binaryExists = listing.contains(typeName + CLASS_SUFFIX);
+            boolean sourceExists = listing.contains(typeName + JAVA_SUFFIX);
+
+            //prefer the source file, unless the class file is newer
+            if (sourceExists) {
+                String sourcePath = filePath + JAVA_SUFFIX;
+                if (!binaryExists || (new File(sourcePath).lastModified() > new File(filePath + CLASS_SUFFIX).lastModified())) {
+                    return new NameEnvironmentAnswer(new CompilationUnit(null, sourcePath, encoding), null);
+                }
+            }
+            if (binaryExists) {
+                try {
+                    byte[] bytes = Files.readAllBytes(Paths.get(filePath + CLASS_SUFFIX));
+                    return new NameEnvironmentAnswer(ClassFileDowngrader.read(bytes, filePath + CLASS_SUFFIX), null);
+                } catch (IOException e) {
+                    //treat unreadable class files as missing, like the Jdt compiler does
+                } catch (ClassFormatException e) {
+                    //treat unreadable class files as missing, like the Jdt compiler does
+                }
+            }
+            return null;
+        }
+    }
+
+    /*
+     * The module image of the running Java runtime, Java 9 or later. The
+     * packages and types are listed in a PlatformIndex.
+     */
+    private class JrtLocation extends ArchiveLocation {
+
+        private FileSystem jrt;
+        private PlatformIndex index;
+
+        JrtLocation() throws IOException {
+            try {
+                jrt = FileSystems.getFileSystem(URI.create(JRT_CLASSPATH_NAME));
+            } catch (FileSystemNotFoundException e) {
+                throw new IOException("No module image, Java 9 or later is required.", e);
+            } catch (ProviderNotFoundException e) {
+                throw new IOException("No module image, Java 9 or later is required.", e);
+            }
+            index = PlatformIndex.open(jrt);
+        }
+
+        @Override
+        boolean isPackage(String qualifiedPackageName) {
+            return index.isPackage(qualifiedPackageName);
+        }
+
+        @Override
+        NameEnvironmentAnswer findType(String qualifiedPackageName, String typeName) {
+            if (!index.containsType(qualifiedPackageName, typeName)) {
+                return null;
+            }
+            return getAnswer("/modules/" + index.getModule(qualifiedPackageName) + "/"
+                    + qualifiedPackageName + "/" + typeName + CLASS_SUFFIX);
+        }
+
+        @Override
+        byte[] readClassFile(String fileName) throws IOException {
+            return Files.readAllBytes(jrt.getPath(fileName));
+        }
+    }
+
+    /*
+     * The Java API of an earlier release, stored in ct.sym. Its entries look
+     * like "789A/java.base/java/lang/Object.sig", the first directory lists
+     * the releases that contain the entry. Java 9 and later add the module
+     * directory, which is ignored here. Only entries of one release are indexed.
+     */
+    private class CtSymLocation extends ArchiveLocation {
+
+        private ZipFile zipFile;
+        //entry names per type name per package
+        private final Map<String, Map<String, String>> entriesByPackage = new HashMap<String, Map<String, String>>();
+
+        CtSymLocation(File file, char release) throws IOException {
+            zipFile = new ZipFile(file);
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                String entryName = entries.nextElement().getName();
+                int firstSlash = entryName.indexOf('/');
+                if (!entryName.endsWith(SIGNATURE_SUFFIX) || (firstSlash == -1)
+                        || (entryName.substring(0, firstSlash).indexOf(release) == -1)) {
+                    continue;
+                }
+                String path = entryName.substring(firstSlash + 1);
+                //module names contain dots, package names in ct.sym don't
+                int secondSlash = path.indexOf('/');
+                if ((secondSlash != -1) && (path.substring(0, secondSlash).indexOf('.') != -1)) {
+                    path = path.substring(secondSlash + 1);
+                }
+                int lastSlash = path.lastIndexOf('/');
+                String packageName = (lastSlash == -1) ? "" : path.substring(0, lastSlash);
+                addPackage(packageName).put(path.substring(lastSlash + 1, path.length() - SIGNATURE_SUFFIX.length()), entryName);
+            }
+        }
+
+        /*
+         * Adds a package and all its parent packages.
+         */
+        private Map<String, String> addPackage(String packageName) {
+            Map<String, String> entries = entriesByPackage.get(packageName);
+            if (entries == null) {
+                entries = new HashMap<String, String>();
+                entriesByPackage.put(packageName, entries);
+                int lastSlash = packageName.lastIndexOf('/');
+                if (lastSlash > 0) {
+                    addPackage(packageName.substring(0, lastSlash));
+                }
+            }
+            return entries;
+        }
+
+        @Override
+        boolean isPackage(String qualifiedPackageName) {
+            return entriesByPackage.containsKey(qualifiedPackageName);
+        }
+
+        @Override
+        NameEnvironmentAnswer findType(String qualifiedPackageName, String typeName) {
+            Map<String, String> entries = entriesByPackage.get(qualifiedPackageName);
+            String entryName = (entries == null) ? null : entries.get(typeName);
+            return (entryName == null) ? null : getAnswer(entryName);
+        }
+
+        @Override
+        byte[] readClassFile(String entryName) throws IOException {
+            return readEntry(zipFile, zipFile.getEntry(entryName));
+        }
+
+        @Override
+        void close() throws IOException {
+            zipFile.close();
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package java2rsf;
 
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
 import org.eclipse.jdt.internal.compiler.problem.AbortCompilation;
 
 /**
- * An exception that is thrown when parsing fails.
+ * An exception that is thrown when parsing fails. Also describes the errors
+ * that were found when the compiler keeps going after errors.
  * 
  */
 public class CompilationException extends Exception {
@@ -21,13 +23,24 @@ public class CompilationException extends Exception {
                                         : "Failed to create abstract syntax tree",
                 cause
                 );
-        char[] originatingFileName = cause.problem.getOriginatingFileName();
-        if ((cause.problem != null) && (originatingFileName != null)){
-            this.fileName = new String(originatingFileName);
+        if ((cause.problem != null) && (cause.problem.getOriginatingFileName() != null)){
+            this.fileName = new String(cause.problem.getOriginatingFileName());
             this.lineNumber = cause.problem.getSourceLineNumber();
         }
     }
 
+    /*
+     * Create a new compilationException from an error the compiler recorded
+     * and kept going after. It has no cause.
+     */
+    CompilationException(CategorizedProblem problem) {
+        super(problem.getMessage());
+        if (problem.getOriginatingFileName() != null){
+            this.fileName = new String(problem.getOriginatingFileName());
+            this.lineNumber = problem.getSourceLineNumber();
+        }
+    }
+
     /**
      * Returns the error message given by the compiler.
      * 
@@ -73,7 +86,8 @@ public class CompilationException extends Exception {
     }
 
     /**
-     * Returns the original exception thrown by the compiler.
+     * Returns the original exception thrown by the compiler. Or 
+     * <code>null</code> if the compiler kept going after the error.
      * 
      * @return the original exception
      */
@@ -2,14 +2,32 @@ package java2rsf;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
+import org.eclipse.jdt.internal.compiler.ClassFile;
 import org.eclipse.jdt.internal.compiler.Compiler;
 import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
 import org.eclipse.jdt.internal.compiler.IErrorHandlingPolicy;
 import org.eclipse.jdt.internal.compiler.IProblemFactory;
+import org.eclipse.jdt.internal.compiler.ast.Block;
 import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.Expression;
+import org.eclipse.jdt.internal.compiler.ast.FieldDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.Initializer;
+import org.eclipse.jdt.internal.compiler.ast.MessageSend;
+import org.eclipse.jdt.internal.compiler.ast.Statement;
+import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
 import org.eclipse.jdt.internal.compiler.batch.CompilationUnit;
 import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
 import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.lookup.MethodBinding;
+import org.eclipse.jdt.internal.compiler.lookup.SourceTypeBinding;
+import org.eclipse.jdt.internal.compiler.problem.AbortCompilation;
+import org.eclipse.jdt.internal.compiler.problem.ProblemReporter;
 import org.eclipse.jdt.internal.compiler.util.Util;
 
 /*
@@ -17,33 +35,295 @@ import org.eclipse.jdt.internal.compiler.util.Util;
  */
 class CompilerImpl extends Compiler {
 
+    private Map<String, byte[]> compiledTypes = null;
+    private Set<String> generatedFileNames = Collections.emptySet();
+    private boolean declarationsOnly = false;
+    private boolean keepGoing = false;
+    private RunReport runReport = null;
+
     CompilerImpl(INameEnvironment environment, IErrorHandlingPolicy policy, CompilerOptions options, ICompilerRequestor requestor, IProblemFactory problemFactory) {
         super(environment, policy, options, requestor, problemFactory);
+        problemReporter = new DefaultMethodProblemReporter(policy, options, problemFactory);
+        lookupEnvironment.problemReporter = problemReporter;
+        initializeParser();
+    }
+
+    /*
+     * Generates class files for the units of generatedFileNames and adds 
+     * them to compiledTypes, by qualified type names like "hworld/HelloWorld".
+     * No other class files are generated.
+     */
+    void setCompiledTypes(Map<String, byte[]> compiledTypes, Set<String> generatedFileNames) {
+        this.compiledTypes = compiledTypes;
+        this.generatedFileNames = generatedFileNames;
+    }
+
+    /*
+     * Skips the bodies of methods and initializers. No class files are 
+     * generated then.
+     */
+    void setDeclarationsOnly(boolean declarationsOnly) {
+        this.declarationsOnly = declarationsOnly;
+    }
+
+    /*
+     * Goes on with the next unit if a unit is aborted, like Compiler.compile()
+     * does. The error is recorded in the compilation result of the aborted
+     * unit, which is then ignored by the visitors.
+     */
+    void setKeepGoing(boolean keepGoing) {
+        this.keepGoing = keepGoing;
+    }
+
+    /*
+     * Measures reading, parsing and resolving each unit in runReport.
+     */
+    void setRunReport(RunReport runReport) {
+        this.runReport = runReport;
+    }
+
+    /*
+     * Like Compiler.process(), but without generating code. The visitors only
+     * need the resolved unit. Flow analysis must still run, it marks the
+     * reachable nodes, sets the codegen bindings of message sends and names
+     * local types. Without the bodies, flow analysis would report missing
+     * return statements. The declarations are marked reachable by default.
+     */
+    @Override
+    public void process(CompilationUnitDeclaration unit, int i) {
+        lookupEnvironment.unitBeingCompleted = unit;
+        ExtractionEvents.Event event = ExtractionEvents.INSTANCE.begin(ExtractionEvents.Kind.RESOLVE);
+        RunReport.Measurement measurement = (runReport == null) ? null : runReport.start();
+        if (!declarationsOnly) {
+            parser.getMethodBodies(unit);
+        }
+        if (runReport != null) {
+            runReport.stop(measurement, RunReport.Phase.PARSE, new String(unit.getFileName()));
+            measurement = runReport.start();
+        }
+        if (unit.scope != null) {
+            unit.scope.faultInTypes();
+            unit.scope.verifyMethods(lookupEnvironment.methodVerifier());
+        }
+        unit.resolve();
+        Map<FieldDeclaration, Statement> skippedInitializations = null;
+        if (keepGoing) {
+            investigateFurther(unit);
+            skippedInitializations = skipInitializationsWithErrors(unit);
+        }
+        if (!declarationsOnly) {
+            unit.analyseCode();
+            if (generatedFileNames.contains(new String(unit.getFileName()))) {
+                if (keepGoing && unit.compilationResult.hasErrors()) {
+                    //like the compiler does for a unit with errors, generate types whose methods throw them
+                    unit.ignoreFurtherInvestigation = true;
+                    unit.generateCode();
+                    investigateFurther(unit);
+                } else {
+                    unit.generateCode();
+                }
+            }
+        }
+        if (skippedInitializations != null) {
+            restoreInitializations(skippedInitializations);
+        }
+        if (options.produceReferenceInfo && (unit.scope != null)) {
+            unit.scope.storeDependencyInfo();
+        }
+        unit.compilationResult.totalUnitsKnown = totalUnits;
+        lookupEnvironment.unitBeingCompleted = null;
+        if (runReport != null) {
+            runReport.stop(measurement, RunReport.Phase.RESOLVE, new String(unit.getFileName()));
+        }
+        if (event != null) {
+            event.finish(new String(unit.getFileName()), 1, ExtractionEvents.getSourceChars(unit), -1);
+        }
+    }
+
+    /*
+     * An error in the imports or the hierarchy of a type tags the whole unit
+     * or type, which would then be skipped by flow analysis and by the 
+     * visitors. Their other declarations are resolved, so they are kept.
+     * Methods with errors are still not analysed.
+     */
+    private static void investigateFurther(CompilationUnitDeclaration unit) {
+        unit.ignoreFurtherInvestigation = false;
+        if (unit.types != null) {
+            for (TypeDeclaration type : unit.types) {
+                investigateFurther(type);
+            }
+        }
+    }
+
+    private static void investigateFurther(TypeDeclaration type) {
+        if (type.binding != null) {
+            type.ignoreFurtherInvestigation = false;
+        }
+        if (type.memberTypes != null) {
+            for (TypeDeclaration memberType : type.memberTypes) {
+                investigateFurther(memberType);
+            }
+        }
+    }
+
+    /*
+     * Like methods with errors, initializations and initializer blocks with
+     * errors must not be analysed, flow analysis would fail on their missing
+     * bindings. They are removed until the unit is analysed, and returned by
+     * their fields.
+     */
+    private static Map<FieldDeclaration, Statement> skipInitializationsWithErrors(CompilationUnitDeclaration unit) {
+        Map<FieldDeclaration, Statement> skippedInitializations = new IdentityHashMap<FieldDeclaration, Statement>();
+        CategorizedProblem[] errors = unit.compilationResult.getErrors();
+        if ((unit.types != null) && (errors != null)) {
+            for (TypeDeclaration type : unit.types) {
+                skipInitializationsWithErrors(type, errors, skippedInitializations);
+            }
+        }
+        return skippedInitializations;
+    }
+
+    private static void skipInitializationsWithErrors(TypeDeclaration type, CategorizedProblem[] errors, 
+            Map<FieldDeclaration, Statement> skippedInitializations) {
+        if (type.fields != null) {
+            for (FieldDeclaration field : type.fields) {
+                if (!hasError(errors, field.declarationSourceStart, field.declarationSourceEnd)) {
+                    continue;
+                }
+                if (field instanceof Initializer) {
+                    skippedInitializations.put(field, ((Initializer) field).block);
+                    ((Initializer) field).block = new Block(0);
+                } else if (field.initialization != null) {
+                    skippedInitializations.put(field, field.initialization);
+                    field.initialization = null;
+                }
+            }
+        }
+        if (type.memberTypes != null) {
+            for (TypeDeclaration memberType : type.memberTypes) {
+                skipInitializationsWithErrors(memberType, errors, skippedInitializations);
+            }
+        }
+    }
+
+    private static boolean hasError(CategorizedProblem[] errors, int sourceStart, int sourceEnd) {
+        for (CategorizedProblem error : errors) {
+            if ((error.getSourceStart() >= sourceStart) && (error.getSourceStart() <= sourceEnd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Puts back the initializations removed by skipInitializationsWithErrors(),
+     * so the visitors still report the initializers and their type uses.
+     */
+    private static void restoreInitializations(Map<FieldDeclaration, Statement> skippedInitializations) {
+        for (Map.Entry<FieldDeclaration, Statement> entry : skippedInitializations.entrySet()) {
+            if (entry.getKey() instanceof Initializer) {
+                ((Initializer) entry.getKey()).block = (Block) entry.getValue();
+            } else {
+                entry.getKey().initialization = (Expression) entry.getValue();
+            }
+        }
     }
 
     CompilationUnitDeclaration getResolvedUnit(String inputFileName, String encoding) throws IOException {
-        //create compilation unit
-        char[] contents = Util.getFileCharContent(new File(inputFileName), encoding);
-        CompilationUnit[] sourceUnits = {new CompilationUnit(contents, inputFileName, encoding)};
+        String[] inputFileNames = {inputFileName};
+        return getResolvedUnits(inputFileNames, encoding, null)[0];
+    }
+
+    /*
+     * Parses and resolves all input files in one compiler session. Every unit 
+     * is processed once, also when it is referenced by other input files.
+     * 
+     * Returns the units in the same order as inputFileNames. The files are
+     * read by sourcePrefetcher, or directly if it is null.
+     */
+    CompilationUnitDeclaration[] getResolvedUnits(String[] inputFileNames, String encoding, 
+            SourcePrefetcher sourcePrefetcher) throws IOException {
+        //create compilation units
+        CompilationUnit[] sourceUnits = new CompilationUnit[inputFileNames.length];
+        Map<String, Integer> inputIndices = new HashMap<String, Integer>();
+        for (int i = 0; i < inputFileNames.length; i++) {
+            RunReport.Measurement measurement = (runReport == null) ? null : runReport.start();
+            char[] contents = (sourcePrefetcher == null) ? Util.getFileCharContent(new File(inputFileNames[i]), encoding)
+                    : sourcePrefetcher.getContents(inputFileNames[i], encoding);
+            sourceUnits[i] = new CompilationUnit(contents, inputFileNames[i], encoding);
+            inputIndices.put(inputFileNames[i], i);
+            if (runReport != null) {
+                runReport.stop(measurement, RunReport.Phase.READ, inputFileNames[i]);
+            }
+        }
         
-        //build AST
+        //build AST, for a batch the time is not counted for any of its files
+        RunReport.Measurement measurement = (runReport == null) ? null : runReport.start();
         beginToCompile(sourceUnits);
+        if (runReport != null) {
+            runReport.stop(measurement, RunReport.Phase.PARSE, (inputFileNames.length == 1) ? inputFileNames[0] : null);
+        }
         
         //Use for-loop like this. There might be nulls at the end of the array
         for (int i = 0; i < totalUnits; i++) {
-            process(unitsToProcess[i], i);
+            try {
+                process(unitsToProcess[i], i);
+            } catch (AbortCompilation e) {
+                if (!keepGoing) {
+                    throw e;
+                }
+                handleInternalException(e, unitsToProcess[i]);
+                unitsToProcess[i].ignoreFurtherInvestigation = true;
+                lookupEnvironment.unitBeingCompleted = null;
+            }
+        }
+
+        if (compiledTypes != null) {
+            for (int i = 0; i < totalUnits; i++) {
+                for (ClassFile classFile : unitsToProcess[i].compilationResult.getClassFiles()) {
+                    compiledTypes.put(new String(classFile.fileName()), classFile.getBytes());
+                }
+            }
         }
         
-        //return only original file
-        CompilationUnitDeclaration resultUnit = null;
+        //return only original files
+        CompilationUnitDeclaration[] resultUnits = new CompilationUnitDeclaration[inputFileNames.length];
         for (int i = 0; i < totalUnits; i++) {
-            if (inputFileName.equals(new String(unitsToProcess[i].getFileName()))) {
-                resultUnit = unitsToProcess[i];
-                break;
+            Integer inputIndex = inputIndices.get(new String(unitsToProcess[i].getFileName()));
+            if (inputIndex != null) {
+                resultUnits[inputIndex] = unitsToProcess[i];
             }
         }
-        assert (resultUnit != null) : "Didn't find original file in parsed files.";
+        for (CompilationUnitDeclaration resultUnit : resultUnits) {
+            assert (resultUnit != null) : "Didn't find original file in parsed files.";
+        }
         
-        return resultUnit;
+        return resultUnits;
+    }
+
+    /*
+     * Doesn't report that default methods of class files must be implemented
+     * or cannot be called with super. They were turned into abstract methods
+     * by ClassFileDowngrader, but have an implementation.
+     */
+    private static class DefaultMethodProblemReporter extends ProblemReporter {
+
+        DefaultMethodProblemReporter(IErrorHandlingPolicy policy, CompilerOptions options, IProblemFactory problemFactory) {
+            super(policy, options, problemFactory);
+        }
+
+        @Override
+        public void abstractMethodMustBeImplemented(SourceTypeBinding type, MethodBinding abstractMethod) {
+            if (!ClassFileDowngrader.isDefaultMethod(abstractMethod)) {
+                super.abstractMethodMustBeImplemented(type, abstractMethod);
+            }
+        }
+
+        @Override
+        public void cannotDireclyInvokeAbstractMethod(MessageSend messageSend, MethodBinding method) {
+            if (!ClassFileDowngrader.isDefaultMethod(method)) {
+                super.cannotDireclyInvokeAbstractMethod(messageSend, method);
+            }
+        }
     }
 }
@@ -0,0 +1,51 @@
+package java2rsf;
+
+/**
+ * Passes facts to another sink and counts them by relation.
+ *
+ * <p>Not thread-safe, use one instance per unit.</p>
+ */
+final class CountingFactSink implements FactSink {
+
+    private final FactSink sink;
+    private final int[] counts = new int[Relation.values().length];
+
+    CountingFactSink(FactSink sink) {
+        if (sink == null) {
+            throw new NullPointerException("Parameter sink may not be null.");
+        }
+        this.sink = sink;
+    }
+
+    public boolean includes(Relation relation) {
+        return sink.includes(relation);
+    }
+
+    public void add(Relation relation, String argument) {
+        counts[relation.ordinal()]++;
+        sink.add(relation, argument);
+    }
+
+    public void add(Relation relation, String argument1, String argument2) {
+        counts[relation.ordinal()]++;
+        sink.add(relation, argument1, argument2);
+    }
+
+    /*
+     * Returns the number of facts passed, by relation ordinal.
+     */
+    int[] getCounts() {
+        return counts;
+    }
+
+    /*
+     * Returns the number of facts passed.
+     */
+    long getTotal() {
+        long total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,277 @@
+package java2rsf;
+
+import com.martiansoftware.jsap.JSAPResult;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs many extractions in one Java process, so that each one doesn't pay for
+ * starting the Java runtime, compiling the code of the Jdt compiler and
+ * scanning the classpath.
+ *
+ * <p>The index of each classpath is kept between requests, with the class
+ * files that were read from <code>.jar</code> files and the Java API. It is
+ * created again when a <code>.jar</code> file of the classpath changes.
+ * Directories of the classpath are listed again for every request.</p>
+ *
+ * <p>Usage: <code>java -cp rsfparser.jar java2rsf.Daemon [port secretFile]</code></p>
+ *
+ * <p>Without a port, requests are read from standard input and answered on
+ * standard output. With a port, the daemon accepts connections on the
+ * loopback interface, one at a time, and prints the port to standard error.
+ * Port 0 picks a free port.</p>
+ *
+ * <p>Any local user can connect to the port, but a request can write files
+ * and read sources with the rights of the daemon. So the daemon writes a 
+ * random secret to <code>secretFile</code>, readable only by its owner, and
+ * a connection must send the secret as its first line. Otherwise it is 
+ * closed without an answer. An existing <code>secretFile</code> is replaced,
+ * and it is deleted when the Java runtime of the daemon exits.</p>
+ *
+ * <p>A request is a command line of {@link Main}, one argument per line,
+ * followed by an empty line. The answer is the output of the command line,
+ * followed by a line with {@link #OK} or one that starts with
+ * {@link #ERROR_PREFIX} and the error message. Several requests can be sent
+ * one after the other. Relative paths are relative to the working directory
+ * of the daemon, and the input file cannot be <code>-</code>.</p>
+ */
+public final class Daemon {
+
+    /**
+     * The last line of the answer to a successful request.
+     */
+    public static final String OK = "%% OK";
+    /**
+     * Starts the last line of the answer to a failed request.
+     */
+    public static final String ERROR_PREFIX = "%% ERROR ";
+
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    private static final int SECRET_BYTES = 32;
+    //how long a client may take to send the secret
+    private static final int SECRET_TIMEOUT_MILLIS = 10000;
+    //classpaths whose index is kept, the least recently used one is closed first
+    private static final int MAX_CLASSPATH_INDEXES = 8;
+
+    private final Map<List<String>, ClasspathIndex> classpathIndexes =
+            new LinkedHashMap<List<String>, ClasspathIndex>(16, 0.75f, true);
+
+    /*
+     * Use main.
+     */
+    private Daemon() {
+    }
+
+    /**
+     * Answers requests until standard input ends, or forever if a port is
+     * given.
+     *
+     * @param args an optional port
+     * @throws IOException in case of an IO error while reading requests from
+     *         standard input or while opening the port
+     */
+    public static void main(String[] args) throws IOException {
+        if (((args.length != 0) && (args.length != 2)) || ((args.length == 2) && !args[0].matches("\\d+"))) {
+            System.err.println("\nUsage: java -cp rsfparser.jar java2rsf.Daemon [port secretFile]\n");
+            System.exit(1);
+        }
+
+        Daemon daemon = new Daemon();
+        try {
+            if (args.length == 0) {
+                daemon.serve(new InputStreamReader(System.in, BinaryFactWriter.UTF_8),
+                        new OutputStreamWriter(System.out, BinaryFactWriter.UTF_8));
+                return;
+            }
+
+            File secretFile = new File(args[1]);
+            byte[] secret = writeSecret(secretFile);
+            secretFile.deleteOnExit();
+            ServerSocket serverSocket = null;
+            try {
+                serverSocket = new ServerSocket(Integer.parseInt(args[0]), 0, InetAddress.getLoopbackAddress());
+                System.err.println("Listening on port " + serverSocket.getLocalPort());
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    try {
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(socket.getInputStream(), BinaryFactWriter.UTF_8));
+                        socket.setSoTimeout(SECRET_TIMEOUT_MILLIS);
+                        String line = reader.readLine();
+                        socket.setSoTimeout(0);
+                        if ((line != null) && MessageDigest.isEqual(line.getBytes(BinaryFactWriter.UTF_8), secret)) {
+                            daemon.serve(reader, new OutputStreamWriter(socket.getOutputStream(), BinaryFactWriter.UTF_8));
+                        }
+                    } catch (SocketTimeoutException e) {
+                        //no secret, wait for the next client
+                    } catch (IOException e) {
+                        //the client went away, wait for the next one
+                    } finally {
+                        socket.close();
+                    }
+                }
+            } finally {
+                if (serverSocket != null) {
+                    serverSocket.close();
+                }
+            }
+        } finally {
+            daemon.close();
+        }
+    }
+
+    /*
+     * Writes a new random secret to a file that only the owner can read, and
+     * returns it in UTF-8. A file of that name is deleted first, so the new 
+     * one can't have been prepared by someone else.
+     */
+    private static byte[] writeSecret(File secretFile) throws IOException {
+        byte[] random = new byte[SECRET_BYTES];
+        new SecureRandom().nextBytes(random);
+        StringBuilder secret = new StringBuilder();
+        for (byte b : random) {
+            secret.append(String.format("%02x", b & 0xff));
+        }
+
+        Path path = secretFile.toPath();
+        Files.deleteIfExists(path);
+        if (Files.getFileStore(path.toAbsolutePath().getParent()).supportsFileAttributeView("posix")) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(path);
+            if (!(secretFile.setReadable(false, false) && secretFile.setReadable(true, true)
+                    && secretFile.setWritable(false, false) && secretFile.setWritable(true, true))) {
+                Files.delete(path);
+                throw new IOException("Cannot make " + secretFile + " readable only by its owner.");
+            }
+        }
+        OutputStream out = Files.newOutputStream(path);
+        try {
+            out.write(secret.toString().getBytes(BinaryFactWriter.UTF_8));
+            out.write('\n');
+        } finally {
+            out.close();
+        }
+        return secret.toString().getBytes(BinaryFactWriter.UTF_8);
+    }
+
+    /*
+     * Answers the requests read from in until it ends.
+     */
+    private void serve(Reader in, Writer out) throws IOException {
+        BufferedReader reader = (in instanceof BufferedReader) ? (BufferedReader) in : new BufferedReader(in);
+        Writer writer = new BufferedWriter(out, OUTPUT_BUFFER_SIZE);
+        for (List<String> request = readRequest(reader); request != null; request = readRequest(reader)) {
+            try {
+                run(request, writer);
+                writer.write(OK);
+            } catch (IOException e) {
+                writer.write(ERROR_PREFIX + getMessage(e));
+            } catch (CompilationException e) {
+                writer.write(ERROR_PREFIX + getMessage(e));
+            } catch (QueryException e) {
+                writer.write(ERROR_PREFIX + getMessage(e));
+            } catch (RuntimeException e) {
+                writer.write(ERROR_PREFIX + getMessage(e));
+            }
+            writer.write(System.getProperty("line.separator"));
+            writer.flush();
+        }
+    }
+
+    /*
+     * Reads the arguments of a request up to the empty line. Returns null if
+     * the input ended before the request.
+     */
+    private static List<String> readRequest(BufferedReader reader) throws IOException {
+        List<String> arguments = new ArrayList<String>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            if (line.isEmpty()) {
+                if (arguments.isEmpty()) {
+                    continue;
+                }
+                return arguments;
+            }
+            arguments.add(line);
+        }
+        return arguments.isEmpty() ? null : arguments;
+    }
+
+    private void run(List<String> arguments, Writer writer) throws IOException, CompilationException, QueryException {
+        JSAPResult config = Main.getOptions().parse(arguments.toArray(new String[arguments.size()]));
+        if (!config.success()) {
+            Iterator<?> errors = config.getErrorMessageIterator();
+            throw new IllegalArgumentException(errors.hasNext() ? errors.next().toString() : "Invalid arguments.");
+        }
+        if (config.getString("inputFile").equals("-")) {
+            throw new IllegalArgumentException("Standard input cannot be read in a request, use @listFile instead.");
+        }
+        Main.run(config, writer, this);
+    }
+
+    /*
+     * Returns the message of an exception on a single line.
+     */
+    private static String getMessage(Exception e) {
+        String message = (e.getMessage() == null) ? e.toString() : e.getMessage();
+        return message.replaceAll("\\s*[\\r\\n]+\\s*", " ");
+    }
+
+    /*
+     * Returns the index of the classpath of compiler. The index is created
+     * when it is first requested or when it no longer matches the classpath.
+     */
+    ClasspathIndex getClasspathIndex(JdtCompiler compiler) throws IOException {
+        List<String> key = new ArrayList<String>(compiler.classpathNames);
+        key.add(compiler.encoding);
+
+        ClasspathIndex classpathIndex = classpathIndexes.get(key);
+        if ((classpathIndex != null) && classpathIndex.isStale()) {
+            classpathIndexes.remove(key);
+            classpathIndex.close();
+            classpathIndex = null;
+        }
+        if (classpathIndex != null) {
+            classpathIndex.clearListings();
+            return classpathIndex;
+        }
+
+        classpathIndex = new ClasspathIndex(compiler.classpathNames, compiler.encoding);
+        classpathIndexes.put(key, classpathIndex);
+        if (classpathIndexes.size() > MAX_CLASSPATH_INDEXES) {
+            Iterator<ClasspathIndex> eldest = classpathIndexes.values().iterator();
+            ClasspathIndex eldestIndex = eldest.next();
+            eldest.remove();
+            eldestIndex.close();
+        }
+        return classpathIndex;
+    }
+
+    private void close() throws IOException {
+        for (ClasspathIndex classpathIndex : classpathIndexes.values()) {
+            classpathIndex.close();
+        }
+        classpathIndexes.clear();
+    }
+}
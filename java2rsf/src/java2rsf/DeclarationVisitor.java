@@ -1,6 +1,5 @@
 package java2rsf;
 
-import java.util.Collection;
 import org.eclipse.jdt.internal.compiler.ASTVisitor;
 import org.eclipse.jdt.internal.compiler.ast.AbstractMethodDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.Annotation;
@@ -15,7 +14,9 @@ import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
 import org.eclipse.jdt.internal.compiler.lookup.BlockScope;
 import org.eclipse.jdt.internal.compiler.lookup.ClassScope;
 import org.eclipse.jdt.internal.compiler.lookup.CompilationUnitScope;
+import org.eclipse.jdt.internal.compiler.lookup.MethodBinding;
 import org.eclipse.jdt.internal.compiler.lookup.MethodScope;
+import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
 
 /**
  * Creates the Rsf output for a list of parsed Java source files.
@@ -23,18 +24,47 @@ import org.eclipse.jdt.internal.compiler.lookup.MethodScope;
  */
 public class DeclarationVisitor extends ASTVisitor {
 
-    private Collection<String> lines;
+    private FactSink facts;
+    private NameUtil names;
+    private boolean declarationsOnly;
 
     /**
      * Create a new visitor that generates Rsf output.
      * 
-     * @param lines collection to fill with Rsf output.
+     * @param facts sink for the Rsf facts, like a {@link FactStore}
      */
-    public DeclarationVisitor(Collection<String> lines) {
-        if(lines == null){
-            throw new NullPointerException("Parameter lines may not be null.");
+    public DeclarationVisitor(FactSink facts) {
+        this(facts, false);
+    }
+
+    /**
+     * Create a new visitor that generates Rsf output. If 
+     * <code>declarationsOnly</code> is set, the bodies of methods and
+     * initializers are not visited, and local and anonymous types are 
+     * skipped. Use it for units that were parsed without their bodies.
+     * 
+     * @param facts sink for the Rsf facts, like a {@link FactStore}
+     * @param declarationsOnly whether to report only declarations and signatures
+     * @see JdtCompiler#setDeclarationsOnly(boolean)
+     */
+    public DeclarationVisitor(FactSink facts, boolean declarationsOnly) {
+        this(facts, new NameUtil(), declarationsOnly);
+    }
+
+    /*
+     * Create a new visitor that shares the names of another visitor. Both 
+     * must visit units of the same compilation.
+     */
+    DeclarationVisitor(FactSink facts, NameUtil names, boolean declarationsOnly) {
+        if(facts == null){
+            throw new NullPointerException("Parameter facts may not be null.");
+        }
+        if(names == null){
+            throw new NullPointerException("Parameter names may not be null.");
         }
-        this.lines = lines;
+        this.facts = facts;
+        this.names = names;
+        this.declarationsOnly = declarationsOnly;
     }
 
     /*
@@ -59,7 +89,7 @@ public class DeclarationVisitor extends ASTVisitor {
         } else {
             packageName = "<defaultPackage>";
         }
-        lines.add("PACKAGE\t" + packageName);
+        facts.add(Relation.PACKAGE, packageName);
 
         if (compilationUnitDeclaration.currentPackage != null) {
             handleModifiers(packageName, 0, compilationUnitDeclaration.currentPackage.annotations);
@@ -67,9 +97,10 @@ public class DeclarationVisitor extends ASTVisitor {
 
         if (compilationUnitDeclaration.types != null) {
             for (TypeDeclaration typeDeclaration : compilationUnitDeclaration.types) {
-                if (!typeDeclaration.name.equals(TypeDeclaration.PACKAGE_INFO_NAME)) {
-                    String typeName = NameUtil.getTypeName(typeDeclaration.binding);
-                    lines.add("CONTAINS\t" + packageName + "\t" + typeName);
+                if (!typeDeclaration.name.equals(TypeDeclaration.PACKAGE_INFO_NAME)
+                        && !NameUtil.isUnreachable(typeDeclaration)) {
+                    String typeName = names.getTypeName(typeDeclaration.binding);
+                    facts.add(Relation.CONTAINS, packageName, typeName);
                 }
             }
         }
@@ -99,7 +130,8 @@ public class DeclarationVisitor extends ASTVisitor {
 
     @Override
     public boolean visit(TypeDeclaration localTypeDeclaration, BlockScope scope) {
-        if(NameUtil.isUnreachable(localTypeDeclaration)){
+        //flow analysis didn't name the local types of field initializations
+        if(declarationsOnly || NameUtil.isUnreachable(localTypeDeclaration)){
             return false;
         }
         
@@ -115,42 +147,51 @@ public class DeclarationVisitor extends ASTVisitor {
             return;
         }
 
-        String typeName = NameUtil.getTypeName(typeDeclaration.binding);
+        String typeName = names.getTypeName(typeDeclaration.binding);
         switch (TypeDeclaration.kind(typeDeclaration.modifiers)) {
             case TypeDeclaration.CLASS_DECL:
                 if (typeDeclaration.binding.isAnonymousType()) {
-                    lines.add("ANONYMOUS_CLASS\t" + typeName);
+                    facts.add(Relation.ANONYMOUS_CLASS, typeName);
                 } else if (typeDeclaration.binding.isLocalType()) {
-                    lines.add("LOCAL_CLASS\t" + typeName);
+                    facts.add(Relation.LOCAL_CLASS, typeName);
                 } else if (typeDeclaration.binding.isMemberType()) {
-                    lines.add("MEMBER_CLASS\t" + typeName);
+                    facts.add(Relation.MEMBER_CLASS, typeName);
                 } else {
-                    lines.add("CLASS\t" + typeName);
+                    facts.add(Relation.CLASS, typeName);
                 }
                 break;
             case TypeDeclaration.INTERFACE_DECL:
-                lines.add("INTERFACE\t" + typeName);
+                facts.add(Relation.INTERFACE, typeName);
                 break;
             case TypeDeclaration.ENUM_DECL:
-                lines.add("ENUM\t" + typeName);
+                facts.add(Relation.ENUM, typeName);
                 break;
             case TypeDeclaration.ANNOTATION_TYPE_DECL:
-                lines.add("ANNOTATION_TYPE\t" + typeName);
+                facts.add(Relation.ANNOTATION_TYPE, typeName);
                 break;
         }
 
-        if ((typeDeclaration.superclass != null) || (typeDeclaration.binding.isAnonymousType())) {
-            lines.add("EXTENDS\t" + typeName + "\t" + NameUtil.getTypeName(typeDeclaration.binding.superclass));
+        if (typeDeclaration.superclass != null) {
+            //the compiler falls back to Object for a superclass that failed to resolve
+            TypeBinding superclassBinding = typeDeclaration.superclass.resolvedType;
+            String superclassName = ((superclassBinding != null) && superclassBinding.isValidBinding()) 
+                    ? names.getTypeName(typeDeclaration.binding.superclass) : NameUtil.UNRESOLVED;
+            facts.add(Relation.EXTENDS, typeName, superclassName);
+        } else if (typeDeclaration.binding.isAnonymousType()) {
+            facts.add(Relation.EXTENDS, typeName, names.getTypeName(typeDeclaration.binding.superclass));
         }
 
         if (typeDeclaration.superInterfaces != null) {
             for (TypeReference reference : typeDeclaration.superInterfaces) {
-                lines.add("IMPLEMENTS\t" + typeName + "\t" + new String(reference.resolvedType.readableName()));
+                TypeBinding interfaceBinding = reference.resolvedType;
+                String interfaceName = ((interfaceBinding != null) && interfaceBinding.isValidBinding()) 
+                        ? new String(interfaceBinding.readableName()) : NameUtil.UNRESOLVED;
+                facts.add(Relation.IMPLEMENTS, typeName, interfaceName);
             }
         }
 
         if (typeDeclaration.binding.isMemberType()) {
-            lines.add("CONTAINS\t" + NameUtil.getTypeName(typeDeclaration.binding.enclosingType()) + "\t" + typeName);
+            facts.add(Relation.CONTAINS, names.getTypeName(typeDeclaration.binding.enclosingType()), typeName);
         }
 
 
@@ -164,7 +205,9 @@ public class DeclarationVisitor extends ASTVisitor {
         }
 
         handleModifiers(typeName, typeDeclaration.modifiers, typeDeclaration.annotations);
-        typeDeclaration.traverse(new TypeUseVisitor(typeName, lines, true), (ClassScope) null);
+        if (!declarationsOnly && facts.includes(Relation.USES)) {
+            typeDeclaration.traverse(new TypeUseVisitor(typeName, facts, names, true), (ClassScope) null);
+        }
     }
 
     /*
@@ -176,15 +219,17 @@ public class DeclarationVisitor extends ASTVisitor {
             return false;
         }
         
-        String typeName = NameUtil.getTypeName(fieldDeclaration.binding.declaringClass);
+        //a field whose type failed to resolve has no binding
+        String typeName = names.getTypeName((fieldDeclaration.binding == null) ? scope.enclosingSourceType()
+                : fieldDeclaration.binding.declaringClass);
         String fieldName = typeName + "#" + new String(fieldDeclaration.name);
         if (fieldDeclaration.getKind() == FieldDeclaration.ENUM_CONSTANT) {
-            lines.add("ENUM_CONSTANT\t" + fieldName);
+            facts.add(Relation.ENUM_CONSTANT, fieldName);
         } else {
-            lines.add("FIELD\t" + fieldName);
-            lines.add("IS_OF_TYPE\t" + fieldName + "\t" + NameUtil.getTypeName(fieldDeclaration.type.resolvedType));
+            facts.add(Relation.FIELD, fieldName);
+            facts.add(Relation.IS_OF_TYPE, fieldName, names.getTypeName(fieldDeclaration.type.resolvedType));
         }
-        lines.add("HAS\t" + typeName + "\t" + fieldName);
+        facts.add(Relation.HAS, typeName, fieldName);
 
         handleModifiers(fieldName, fieldDeclaration.modifiers, fieldDeclaration.annotations);
 
@@ -202,14 +247,15 @@ public class DeclarationVisitor extends ASTVisitor {
         String blockName = typeName + "#";
         if (isStatic) {
             blockName += "<staticInit>";
-            lines.add("STATIC_INITIALIZER\t" + blockName);
+            facts.add(Relation.STATIC_INITIALIZER, blockName);
         } else {
             blockName += "<instanceInit>";
-            lines.add("INSTANCE_INITIALIZER\t" + blockName);
+            facts.add(Relation.INSTANCE_INITIALIZER, blockName);
+        }
+        facts.add(Relation.HAS, typeName, blockName);
+        if (!declarationsOnly && BodyVisitor.reportsAny(facts)) {
+            fieldDeclaration.traverse(new BodyVisitor(blockName, typeName, facts, names), null);
         }
-        lines.add("HAS\t" + typeName + "\t" + blockName);
-        fieldDeclaration.traverse(new AccessVisitor(blockName, lines), null);
-        fieldDeclaration.traverse(new TypeUseVisitor(blockName, lines, false), null);
     }
 
     @Override
@@ -218,8 +264,8 @@ public class DeclarationVisitor extends ASTVisitor {
             return false;
         }
         
-        visitMethodDeclaration(methodDeclaration);
-        return true;
+        visitMethodDeclaration(methodDeclaration, scope);
+        return methodDeclaration.binding != null;
     }
 
     @Override
@@ -228,8 +274,8 @@ public class DeclarationVisitor extends ASTVisitor {
             return false;
         }
         
-        visitMethodDeclaration(constructorDeclaration);
-        return true;
+        visitMethodDeclaration(constructorDeclaration, scope);
+        return constructorDeclaration.binding != null;
     }
 
     @Override
@@ -238,39 +284,48 @@ public class DeclarationVisitor extends ASTVisitor {
             return false;
         }
         
-        visitMethodDeclaration(annotationTypeDeclaration);
-        return true;
+        visitMethodDeclaration(annotationTypeDeclaration, classScope);
+        return annotationTypeDeclaration.binding != null;
     }
 
     /*
-     * Handle a method call.
+     * Handle a method declaration. A method whose signature failed to resolve 
+     * has no binding, it is named from its declaration and its body only 
+     * adds to the type use of its type.
      */
-    private void visitMethodDeclaration(AbstractMethodDeclaration methodDeclaration) {
-        String methodName = NameUtil.getMethodName(methodDeclaration.binding);
+    private void visitMethodDeclaration(AbstractMethodDeclaration methodDeclaration, ClassScope scope) {
+        MethodBinding binding = methodDeclaration.binding;
+        TypeBinding typeBinding = (binding == null) ? scope.enclosingSourceType() : binding.declaringClass;
+        String methodName = (binding == null) ? names.getMethodName(methodDeclaration, typeBinding)
+                : names.getMethodName(binding);
         if (methodDeclaration.isConstructor()) {
-            lines.add("CONSTRUCTOR\t" + methodName);
+            facts.add(Relation.CONSTRUCTOR, methodName);
         } else if (methodDeclaration.isAnnotationMethod()) {
-            lines.add("ANNOTATION_METHOD\t" + methodName);
+            facts.add(Relation.ANNOTATION_METHOD, methodName);
         } else {
-            lines.add("METHOD\t" + methodName);
+            facts.add(Relation.METHOD, methodName);
         }
 
-        String typeName = NameUtil.getTypeName(methodDeclaration.binding.declaringClass);
-        lines.add("HAS\t" + typeName + "\t" + methodName);
+        String typeName = names.getTypeName(typeBinding);
+        facts.add(Relation.HAS, typeName, methodName);
 
         if (!methodDeclaration.isConstructor()) {
-            lines.add("IS_OF_TYPE\t" + methodName + "\t" + NameUtil.getTypeName(methodDeclaration.binding.returnType));
+            TypeBinding returnType = (binding == null) ? ((MethodDeclaration) methodDeclaration).returnType.resolvedType
+                    : binding.returnType;
+            facts.add(Relation.IS_OF_TYPE, methodName, names.getTypeName(returnType));
         }
 
         if (methodDeclaration.thrownExceptions != null) {
             for (TypeReference exceptionReference : methodDeclaration.thrownExceptions) {
-                lines.add("THROWS\t" + methodName + "\t" + NameUtil.getTypeName(exceptionReference.resolvedType));
+                facts.add(Relation.THROWS, methodName, names.getTypeName(exceptionReference.resolvedType));
             }
         }
 
         handleModifiers(methodName, methodDeclaration.modifiers, methodDeclaration.annotations);
-        methodDeclaration.traverse(new AccessVisitor(methodName, lines), (ClassScope) null);
-        methodDeclaration.traverse(new TypeUseVisitor(methodName, lines, false), (ClassScope) null);
+        if (!declarationsOnly && BodyVisitor.reportsAny(facts)) {
+            String blockName = (binding == null) ? null : methodName;
+            methodDeclaration.traverse(new BodyVisitor(blockName, typeName, facts, names), (ClassScope) null);
+        }
     }
 
     /*
@@ -278,45 +333,45 @@ public class DeclarationVisitor extends ASTVisitor {
      */
     private void handleModifiers(String modifiedName, int modifiers, Annotation[] annotations) {
         if ((modifiers & ClassFileConstants.AccPublic) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "public");
+            facts.add(Relation.IS, modifiedName, "public");
         }
         if ((modifiers & ClassFileConstants.AccProtected) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "protected");
+            facts.add(Relation.IS, modifiedName, "protected");
         }
         if ((modifiers & ClassFileConstants.AccPrivate) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "private");
+            facts.add(Relation.IS, modifiedName, "private");
         }
         if ((modifiers & ClassFileConstants.AccAbstract) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "abstract");
+            facts.add(Relation.IS, modifiedName, "abstract");
         }
         if ((modifiers & ClassFileConstants.AccStatic) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "static");
+            facts.add(Relation.IS, modifiedName, "static");
         }
         if ((modifiers & ClassFileConstants.AccFinal) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "final");
+            facts.add(Relation.IS, modifiedName, "final");
         }
         if ((modifiers & ClassFileConstants.AccSynchronized) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "synchronized");
+            facts.add(Relation.IS, modifiedName, "synchronized");
         }
         if ((modifiers & ClassFileConstants.AccNative) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "native");
+            facts.add(Relation.IS, modifiedName, "native");
         }
         if ((modifiers & ClassFileConstants.AccStrictfp) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "strictfp");
+            facts.add(Relation.IS, modifiedName, "strictfp");
         }
         if ((modifiers & ClassFileConstants.AccTransient) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "transient");
+            facts.add(Relation.IS, modifiedName, "transient");
         }
         if ((modifiers & ClassFileConstants.AccVolatile) != 0) {
-            lines.add("IS\t" + modifiedName + "\t" + "volatile");
+            facts.add(Relation.IS, modifiedName, "volatile");
         }
 
         if (annotations == null) {
             return;
         }
         for (Annotation annotation : annotations) {
-            String annotationName = NameUtil.getTypeName(annotation.resolvedType);
-            lines.add("HAS_ANNOTATION\t" + modifiedName + "\t" + annotationName);
+            String annotationName = names.getTypeName(annotation.resolvedType);
+            facts.add(Relation.HAS_ANNOTATION, modifiedName, annotationName);
         }
     }
 }
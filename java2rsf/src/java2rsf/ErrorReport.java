@@ -0,0 +1,68 @@
+package java2rsf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the errors of a run that keeps going after errors, one per line with
+ * tab separated fields: the file, the line number and the message. The line
+ * number is <code>-1</code> if it is not known. Tabs and line breaks in the
+ * fields are replaced by spaces.
+ *
+ * <p>Example:<br>
+ * <code>src/a/B.java&lt;TAB&gt;12&lt;TAB&gt;The import c cannot be resolved</code></p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+final class ErrorReport implements Closeable {
+
+    private final Writer writer;
+    private final boolean closeWriter;
+    private int errorCount = 0;
+
+    /*
+     * Writes the errors to writer. It is closed with this report if
+     * closeWriter is true, otherwise only flushed.
+     */
+    ErrorReport(Writer writer, boolean closeWriter) {
+        if (writer == null) {
+            throw new NullPointerException("Parameter writer may not be null.");
+        }
+        this.writer = writer;
+        this.closeWriter = closeWriter;
+    }
+
+    /*
+     * Writes an error. fileName is used if the error names no file.
+     */
+    synchronized void add(String fileName, CompilationException error) throws IOException {
+        add((error.getFileName() != null) ? error.getFileName() : fileName, error.getLineNumber(), error.getMessage());
+    }
+
+    synchronized void add(String fileName, int lineNumber, String message) throws IOException {
+        writer.write(clean(fileName));
+        writer.write('\t');
+        writer.write(Integer.toString(lineNumber));
+        writer.write('\t');
+        writer.write(clean(message));
+        writer.write('\n');
+        errorCount++;
+    }
+
+    synchronized int getErrorCount() {
+        return errorCount;
+    }
+
+    public synchronized void close() throws IOException {
+        if (closeWriter) {
+            writer.close();
+        } else {
+            writer.flush();
+        }
+    }
+
+    private static String clean(String field) {
+        return (field == null) ? "" : field.replaceAll("[\t\r\n]+", " ");
+    }
+}
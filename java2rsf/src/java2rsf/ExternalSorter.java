@@ -0,0 +1,254 @@
+package java2rsf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted runs of lines and removes duplicates, so that only one line
+ * per run needs to be in memory.
+ *
+ * <p>Runs are written to temporary files. When the output is written, all
+ * runs are merged with a last run that is still in memory. If there are
+ * more than {@link #MAX_MERGED_RUNS} runs, groups of them are first merged
+ * into longer runs, so that a merge has a bounded number of open files and
+ * buffers.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+class ExternalSorter {
+
+    //the number of runs that a merge reads at once
+    static final int MAX_MERGED_RUNS = 64;
+    private static final int MIN_BUFFER_SIZE = 1 << 10;
+    private static final int MAX_BUFFER_SIZE = 1 << 16;
+    //the bytes that a reader or writer decodes or encodes at once, besides its buffer
+    private static final int CODER_BUFFER_SIZE = 1 << 13;
+    private static final Charset RUN_CHARSET = Charset.forName("UTF-8");
+
+    private File tempDirectory;
+    private int bufferSize;
+    private List<File> runFiles = new ArrayList<File>();
+
+    /*
+     * Creates a new sorter that writes runs to tempDirectory, or to the
+     * default temporary directory if tempDirectory is null. The buffers of
+     * a merge use about mergeMemory bytes, but at least the memory of the
+     * smallest buffers, see getMergeMemory().
+     */
+    ExternalSorter(File tempDirectory, long mergeMemory) {
+        this.tempDirectory = tempDirectory;
+        //a merge reads MAX_MERGED_RUNS runs and may write one, with buffers of two byte chars
+        long bufferMemory = mergeMemory / (MAX_MERGED_RUNS + 1) - CODER_BUFFER_SIZE;
+        this.bufferSize = (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, bufferMemory / 2));
+    }
+
+    /*
+     * Returns the number of bytes that the buffers of a merge use.
+     */
+    long getMergeMemory() {
+        return (MAX_MERGED_RUNS + 1) * (2L * bufferSize + CODER_BUFFER_SIZE);
+    }
+
+    /*
+     * Writes sorted lines as a run to a temporary file.
+     */
+    synchronized void addRun(Iterator<String> sortedLines) throws IOException {
+        Writer writer = createRun();
+        try {
+            while (sortedLines.hasNext()) {
+                writer.write(sortedLines.next());
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /*
+     * Writes the lines of all runs and of lastRun sorted and without
+     * duplicates, each followed by the system line separator. Deletes the
+     * temporary files afterwards.
+     */
+    synchronized void writeTo(final Writer writer, Iterator<String> lastRun) throws IOException {
+        final String lineSeparator = System.getProperty("line.separator");
+        writeTo(new LineWriter() {
+
+            public void writeLine(String line) throws IOException {
+                writer.write(line);
+                writer.write(lineSeparator);
+            }
+        }, lastRun);
+        writer.flush();
+    }
+
+    /*
+     * Passes the lines of all runs and of lastRun to lineWriter, sorted and
+     * without duplicates. Deletes the temporary files afterwards.
+     */
+    synchronized void writeTo(LineWriter lineWriter, Iterator<String> lastRun) throws IOException {
+        try {
+            //merge the oldest runs into a new one, until the rest can be merged with lastRun
+            while (runFiles.size() >= MAX_MERGED_RUNS) {
+                List<File> mergedFiles = new ArrayList<File>(runFiles.subList(0, MAX_MERGED_RUNS));
+                final Writer writer = createRun();
+                try {
+                    merge(mergedFiles, Collections.<String>emptyIterator(), new LineWriter() {
+
+                        public void writeLine(String line) throws IOException {
+                            writer.write(line);
+                            writer.write('\n');
+                        }
+                    });
+                } finally {
+                    writer.close();
+                }
+                runFiles.subList(0, MAX_MERGED_RUNS).clear();
+                for (File runFile : mergedFiles) {
+                    runFile.delete();
+                }
+            }
+            merge(runFiles, lastRun, lineWriter);
+        } finally {
+            close();
+        }
+    }
+
+    /*
+     * Passes the lines of the run files and of lastRun to lineWriter, sorted
+     * and without duplicates.
+     */
+    private void merge(List<File> mergedFiles, Iterator<String> lastRun, LineWriter lineWriter) throws IOException {
+        //k-way merge of the runs
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        List<BufferedReader> readers = new ArrayList<BufferedReader>();
+        try {
+            for (File runFile : mergedFiles) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(runFile), RUN_CHARSET), bufferSize);
+                readers.add(reader);
+                addRun(queue, new Run(new ReaderIterator(reader)));
+            }
+            addRun(queue, new Run(lastRun));
+
+            String previousLine = null;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                if (!run.line.equals(previousLine)) {
+                    lineWriter.writeLine(run.line);
+                    previousLine = run.line;
+                }
+                run.next();
+                addRun(queue, run);
+            }
+        } finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /*
+     * Creates the temporary file of a new run, and returns a writer for it.
+     */
+    private Writer createRun() throws IOException {
+        File runFile = File.createTempFile("java2rsf", ".run", tempDirectory);
+        runFile.deleteOnExit();
+        runFiles.add(runFile);
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(runFile), RUN_CHARSET), bufferSize);
+    }
+
+    /*
+     * Adds a run to the merge, unless it is exhausted.
+     */
+    private static void addRun(PriorityQueue<Run> queue, Run run) {
+        if (run.line != null) {
+            queue.add(run);
+        }
+    }
+
+    /*
+     * Deletes all temporary files.
+     */
+    synchronized void close() {
+        for (File runFile : runFiles) {
+            runFile.delete();
+        }
+        runFiles.clear();
+    }
+
+    /*
+     * Receives the merged lines.
+     */
+    interface LineWriter {
+
+        void writeLine(String line) throws IOException;
+    }
+
+    /*
+     * A sorted sequence of lines, ordered by its current line. The current
+     * line is null when the run is exhausted.
+     */
+    private static class Run implements Comparable<Run> {
+
+        private Iterator<String> iterator;
+        private String line;
+
+        Run(Iterator<String> iterator) {
+            this.iterator = iterator;
+            next();
+        }
+
+        void next() {
+            line = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        public int compareTo(Run other) {
+            return line.compareTo(other.line);
+        }
+    }
+
+    /*
+     * Iterates over the lines of a run file.
+     */
+    private static class ReaderIterator implements Iterator<String> {
+
+        private BufferedReader reader;
+        private String nextLine;
+
+        ReaderIterator(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            nextLine = reader.readLine();
+        }
+
+        public boolean hasNext() {
+            return nextLine != null;
+        }
+
+        public String next() {
+            String line = nextLine;
+            try {
+                nextLine = reader.readLine();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read temporary file.", e);
+            }
+            return line;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package java2rsf;
+
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+
+/**
+ * Emits Java Flight Recorder events for the phases of the extraction, so
+ * that a recording shows which file is compiled, resolved and visited next
+ * to the JDT frames, the garbage collections and the allocations.
+ *
+ * <p>The events are named <code>java2rsf.Compile</code>,
+ * <code>java2rsf.Resolve</code>, <code>java2rsf.Visit</code> and
+ * <code>java2rsf.Write</code>. Their duration is the time of the phase, their
+ * fields are the file, the number of input files, the size of the source in
+ * characters and the number of facts, as far as they apply. Nothing is
+ * measured unless a recording enables the events, like
+ * <code>java -XX:StartFlightRecording=filename=run.jfr ...</code>.</p>
+ *
+ * <p>The events need <code>jdk.jfr</code>, which is part of Java 11 and of
+ * OpenJDK 8u262 and later. On other runtimes no events are emitted. The event
+ * classes are in {@link JfrExtractionEvents}, which is only loaded if
+ * <code>jdk.jfr</code> is found.</p>
+ */
+abstract class ExtractionEvents {
+
+    /**
+     * The events of the running Java runtime.
+     */
+    static final ExtractionEvents INSTANCE = load();
+
+    /*
+     * The phases that have events.
+     */
+    enum Kind {
+
+        COMPILE, RESOLVE, VISIT, WRITE
+    }
+
+    /*
+     * Starts an event of a kind in the current thread. Returns null if no
+     * recording enables events of this kind.
+     */
+    abstract Event begin(Kind kind);
+
+    /*
+     * A started event.
+     */
+    interface Event {
+
+        /*
+         * Ends the event and commits it with its fields. Fields that don't
+         * apply to the kind of event are ignored. fileName may be null.
+         */
+        void finish(String fileName, int files, long sourceChars, long facts);
+    }
+
+    /*
+     * Returns the number of characters of the source of a unit.
+     */
+    static long getSourceChars(CompilationUnitDeclaration unit) {
+        return (unit.compilationResult.compilationUnit == null) ? -1
+                : unit.compilationResult.compilationUnit.getContents().length;
+    }
+
+    private static ExtractionEvents load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (ExtractionEvents) Class.forName("java2rsf.JfrExtractionEvents").getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException e) {
+            //Java runtime without jdk.jfr
+        } catch (LinkageError e) {
+            //jdk.jfr is present, but not usable
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+        return new ExtractionEvents() {
+
+            @Override
+            Event begin(Kind kind) {
+                return null;
+            }
+        };
+    }
+}
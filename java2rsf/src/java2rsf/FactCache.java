@@ -0,0 +1,492 @@
+package java2rsf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
+import org.eclipse.jdt.internal.compiler.impl.Constant;
+import org.eclipse.jdt.internal.compiler.lookup.ExtraCompilerModifiers;
+import org.eclipse.jdt.internal.compiler.lookup.FieldBinding;
+import org.eclipse.jdt.internal.compiler.lookup.MethodBinding;
+import org.eclipse.jdt.internal.compiler.lookup.ReferenceBinding;
+import org.eclipse.jdt.internal.compiler.lookup.SourceTypeBinding;
+
+/**
+ * Keeps the Rsf facts of each compilation unit in a cache directory, so that
+ * unchanged units don't need to be resolved again.
+ *
+ * <p>Each cache entry stores the content hash of the source file, the
+ * signature of its types, the simple names of the types it declares and the
+ * simple names it references. A unit is extracted again if its content
+ * changed, or if it references the name of a type whose signature changed.
+ * This is repeated until no more units are affected.</p>
+ *
+ * <p>The whole cache is discarded if the classpath, the encoding, the
+ * source level or whether only declarations are parsed change. Only the size and date of classpath files are
+ * compared, changes inside classpath directories are not detected.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+class FactCache {
+
+    private static final String FORMAT = "java2rsf fact cache 1";
+    private static final String SETTINGS_FILE_NAME = "settings";
+    private static final String ENTRY_SUFFIX = ".facts";
+    private static final String FACTS_HEADER = "FACTS";
+    private static final Charset CACHE_CHARSET = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private File directory;
+    private String settings;
+    private Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private Set<String> changedNames = new HashSet<String>();
+    private Map<String, String> names = new HashMap<String, String>();
+
+    /*
+     * Creates a cache in directory for compilers with the settings of
+     * jdtCompiler. The directory is created if it doesn't exist.
+     */
+    FactCache(File directory, JdtCompiler jdtCompiler) {
+        if (directory == null) {
+            throw new NullPointerException("Parameter directory may not be null.");
+        }
+        if (jdtCompiler == null) {
+            throw new NullPointerException("Parameter jdtCompiler may not be null.");
+        }
+
+        this.directory = directory;
+        StringBuilder settingsBuilder = new StringBuilder(FORMAT);
+        settingsBuilder.append('\n').append(jdtCompiler.sourceLevel).append('\n').append(jdtCompiler.encoding);
+        if (jdtCompiler.declarationsOnly) {
+            settingsBuilder.append("\ndeclarations only");
+        }
+        //the Java API of the running Java runtime may be on the classpath
+        settingsBuilder.append('\n').append(System.getProperty("java.home"))
+                .append('\t').append(System.getProperty("java.version"));
+        for (String classpathName : jdtCompiler.classpathNames) {
+            File classpathFile = new File(classpathName);
+            settingsBuilder.append('\n').append(classpathFile.getAbsolutePath());
+            if (classpathFile.isFile()) {
+                settingsBuilder.append('\t').append(classpathFile.length())
+                        .append('\t').append(classpathFile.lastModified());
+            }
+        }
+        this.settings = settingsBuilder.toString();
+    }
+
+    /*
+     * Reads the cache entries for the input files. Returns the input files
+     * that are new or have changed since they were cached, and the cached
+     * ones that reference the types of deleted files.
+     */
+    synchronized List<String> open(List<String> inputFileNames) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create cache directory " + directory);
+        }
+
+        //discard all entries if the settings changed
+        File settingsFile = new File(directory, SETTINGS_FILE_NAME);
+        if (!settingsFile.isFile() || !settings.equals(readFile(settingsFile))) {
+            for (File file : listEntryFiles()) {
+                file.delete();
+            }
+            Writer writer = new OutputStreamWriter(new FileOutputStream(settingsFile), CACHE_CHARSET);
+            try {
+                writer.write(settings);
+            } finally {
+                writer.close();
+            }
+        }
+
+        List<String> changedFileNames = new ArrayList<String>();
+        Set<File> entryFiles = new HashSet<File>();
+        for (String inputFileName : inputFileNames) {
+            Entry entry = new Entry(inputFileName);
+            entryFiles.add(entry.file);
+            entries.put(inputFileName, entry);
+
+            String contentHash = getContentHash(new File(inputFileName));
+            if (entry.file.isFile()) {
+                readHeader(entry);
+            }
+            if (!contentHash.equals(entry.contentHash)) {
+                entry.contentHash = contentHash;
+                changedFileNames.add(inputFileName);
+            }
+        }
+
+        //the types of deleted files have changed, too
+        for (File file : listEntryFiles()) {
+            if (!entryFiles.contains(file)) {
+                Entry entry = new Entry(file);
+                readHeader(entry);
+                changedNames.addAll(entry.declaredNames);
+                file.delete();
+            }
+        }
+        Set<String> extractFileNames = new LinkedHashSet<String>(changedFileNames);
+        extractFileNames.addAll(getInvalidatedFileNames());
+
+        return new ArrayList<String>(extractFileNames);
+    }
+
+    /*
+     * Stores the facts of a unit that was just extracted. Records the names
+     * of its types if their signature changed.
+     */
+    synchronized void put(CompilationUnitDeclaration unit, FactStore unitFacts) throws IOException {
+        Entry entry = entries.get(new String(unit.getFileName()));
+        if (entry == null) {
+            throw new IllegalArgumentException("Unit is not an input file: " + new String(unit.getFileName()));
+        }
+
+        String signature = getSignature(unit);
+        Set<String> declaredNames = getDeclaredNames(unit);
+        if (!signature.equals(entry.signature)) {
+            changedNames.addAll(entry.declaredNames);
+            changedNames.addAll(declaredNames);
+        }
+        entry.signature = signature;
+        entry.declaredNames = declaredNames;
+        entry.referencedNames = new HashSet<String>();
+        if (unit.compilationResult.simpleNameReferences != null) {
+            for (char[] referencedName : unit.compilationResult.simpleNameReferences) {
+                entry.referencedNames.add(intern(new String(referencedName)));
+            }
+        }
+        entry.extracted = true;
+
+        //write to a temporary file first, so that no incomplete entry remains
+        File tempFile = new File(entry.file.getPath() + ".tmp");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), CACHE_CHARSET), BUFFER_SIZE);
+        try {
+            writer.write(FORMAT + "\n");
+            writeHeaderLine(writer, "SOURCE", Collections.singleton(entry.sourceFileName));
+            writeHeaderLine(writer, "HASH", Collections.singleton(entry.contentHash));
+            writeHeaderLine(writer, "SIGNATURE", Collections.singleton(entry.signature));
+            writeHeaderLine(writer, "DECLARES", entry.declaredNames);
+            writeHeaderLine(writer, "REFERENCES", entry.referencedNames);
+            writer.write(FACTS_HEADER + "\n");
+
+            //the facts are written with the system line separator, which is read back as well
+            unitFacts.writeTo(writer);
+        } finally {
+            writer.close();
+        }
+        entry.file.delete();
+        if (!tempFile.renameTo(entry.file)) {
+            throw new IOException("Failed to write cache entry " + entry.file);
+        }
+    }
+
+    /*
+     * Drops the entry of an input file that had errors. Its facts are not
+     * cached, so it is extracted again, and its errors are reported again,
+     * in the next run.
+     */
+    synchronized void remove(String inputFileName) {
+        Entry entry = entries.remove(inputFileName);
+        if (entry != null) {
+            changedNames.addAll(entry.declaredNames);
+            entry.file.delete();
+        }
+    }
+
+    /*
+     * Returns the cached input files that reference the name of a type whose
+     * signature changed. They must be extracted again.
+     */
+    synchronized List<String> getInvalidatedFileNames() {
+        List<String> invalidatedFileNames = new ArrayList<String>();
+        for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            if (!entry.extracted && !Collections.disjoint(entry.referencedNames, changedNames)) {
+                invalidatedFileNames.add(mapEntry.getKey());
+            }
+        }
+        return invalidatedFileNames;
+    }
+
+    /*
+     * Adds the cached facts of all input files to facts.
+     */
+    synchronized void addFactsTo(FactStore facts) throws IOException {
+        for (Entry entry : entries.values()) {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(entry.file), CACHE_CHARSET), BUFFER_SIZE);
+            try {
+                String line = reader.readLine();
+                while ((line != null) && !line.equals(FACTS_HEADER)) {
+                    line = reader.readLine();
+                }
+                for (line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] parts = line.split("\t", -1);
+                    if (parts.length == 2) {
+                        facts.add(Relation.valueOf(parts[0]), parts[1]);
+                    } else {
+                        facts.add(Relation.valueOf(parts[0]), parts[1], parts[2]);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            facts.spillIfOverBudget();
+        }
+    }
+
+    /*
+     * Reads the header of a cache entry. Leaves the entry unchanged if the
+     * file isn't a valid entry for its source file.
+     */
+    private void readHeader(Entry entry) throws IOException {
+        Map<String, List<String>> header = new HashMap<String, List<String>>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(entry.file), CACHE_CHARSET), BUFFER_SIZE);
+        try {
+            if (!FORMAT.equals(reader.readLine())) {
+                return;
+            }
+            for (String line = reader.readLine(); (line != null) && !line.equals(FACTS_HEADER); line = reader.readLine()) {
+                String[] parts = line.split("\t", -1);
+                List<String> values = new ArrayList<String>(parts.length - 1);
+                for (int i = 1; i < parts.length; i++) {
+                    values.add(intern(parts[i]));
+                }
+                header.put(parts[0], values);
+            }
+        } finally {
+            reader.close();
+        }
+
+        if ((entry.sourceFileName != null) && !header.get("SOURCE").contains(entry.sourceFileName)) {
+            return;
+        }
+        entry.contentHash = header.get("HASH").get(0);
+        entry.signature = header.get("SIGNATURE").get(0);
+        entry.declaredNames = new HashSet<String>(header.get("DECLARES"));
+        entry.referencedNames = new HashSet<String>(header.get("REFERENCES"));
+    }
+
+    private static void writeHeaderLine(Writer writer, String key, Set<String> values) throws IOException {
+        writer.write(key);
+        for (String value : values) {
+            writer.write('\t');
+            writer.write(value);
+        }
+        writer.write('\n');
+    }
+
+    private File[] listEntryFiles() {
+        File[] files = directory.listFiles();
+        List<File> entryFiles = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(ENTRY_SUFFIX)) {
+                    entryFiles.add(file);
+                }
+            }
+        }
+        return entryFiles.toArray(new File[entryFiles.size()]);
+    }
+
+    private static String readFile(File file) throws IOException {
+        StringWriter contents = new StringWriter();
+        InputStreamReader reader = new InputStreamReader(new FileInputStream(file), CACHE_CHARSET);
+        try {
+            char[] buffer = new char[BUFFER_SIZE];
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                contents.write(buffer, 0, read);
+            }
+        } finally {
+            reader.close();
+        }
+        return contents.toString();
+    }
+
+    /*
+     * Shares equal names between entries, many units reference the same names.
+     */
+    private String intern(String name) {
+        String internedName = names.get(name);
+        if (internedName == null) {
+            names.put(name, name);
+            internedName = name;
+        }
+        return internedName;
+    }
+
+    /*
+     * Returns the MD5 hash of a file's bytes.
+     */
+    private static String getContentHash(File file) throws IOException {
+        MessageDigest digest = createDigest();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    /*
+     * Returns a hash of everything that other units can see of a unit: the
+     * types with their modifiers, type parameters and super types, and their
+     * fields and methods with types, modifiers and constant values.
+     */
+    private static String getSignature(CompilationUnitDeclaration unit) {
+        MessageDigest digest = createDigest();
+        if (unit.types != null) {
+            for (TypeDeclaration typeDeclaration : unit.types) {
+                if (typeDeclaration.binding != null) {
+                    addSignature(digest, typeDeclaration.binding);
+                }
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void addSignature(MessageDigest digest, SourceTypeBinding type) {
+        update(digest, type.readableName());
+        update(digest, type.modifiers & ExtraCompilerModifiers.AccJustFlag);
+        update(digest, type.genericSignature());
+        if (type.superclass() != null) {
+            update(digest, type.superclass().readableName());
+        }
+        for (ReferenceBinding superInterface : type.superInterfaces()) {
+            update(digest, superInterface.readableName());
+        }
+
+        for (FieldBinding field : type.fields()) {
+            update(digest, field.name);
+            update(digest, field.modifiers & ExtraCompilerModifiers.AccJustFlag);
+            update(digest, field.type.readableName());
+            Constant constant = field.constant();
+            if ((constant != null) && (constant != Constant.NotAConstant)) {
+                update(digest, constant.toString().toCharArray());
+            }
+        }
+
+        for (MethodBinding method : type.methods()) {
+            update(digest, method.readableName());
+            update(digest, method.modifiers & ExtraCompilerModifiers.AccJustFlag);
+            update(digest, method.genericSignature());
+            if (method.returnType != null) {
+                update(digest, method.returnType.readableName());
+            }
+            for (ReferenceBinding exception : method.thrownExceptions) {
+                update(digest, exception.readableName());
+            }
+        }
+
+        for (ReferenceBinding memberType : type.memberTypes()) {
+            if (memberType instanceof SourceTypeBinding) {
+                addSignature(digest, (SourceTypeBinding) memberType);
+            }
+        }
+    }
+
+    /*
+     * Adds a value and a separator, null values are added as empty values.
+     */
+    private static void update(MessageDigest digest, char[] value) {
+        if (value != null) {
+            digest.update(new String(value).getBytes(CACHE_CHARSET));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static void update(MessageDigest digest, int value) {
+        update(digest, Integer.toString(value).toCharArray());
+    }
+
+    /*
+     * Returns the simple names of the top level and member types of a unit.
+     */
+    private Set<String> getDeclaredNames(CompilationUnitDeclaration unit) {
+        Set<String> declaredNames = new HashSet<String>();
+        if (unit.types != null) {
+            for (TypeDeclaration typeDeclaration : unit.types) {
+                addDeclaredNames(typeDeclaration, declaredNames);
+            }
+        }
+        return declaredNames;
+    }
+
+    private void addDeclaredNames(TypeDeclaration typeDeclaration, Set<String> declaredNames) {
+        declaredNames.add(intern(new String(typeDeclaration.name)));
+        if (typeDeclaration.memberTypes != null) {
+            for (TypeDeclaration memberType : typeDeclaration.memberTypes) {
+                addDeclaredNames(memberType, declaredNames);
+            }
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported.", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /*
+     * The cached state of one input file. The entry file is named after the
+     * hash of the canonical path of the source file.
+     */
+    private class Entry {
+
+        private String sourceFileName;
+        private File file;
+        private String contentHash = null;
+        private String signature = null;
+        private Set<String> declaredNames = Collections.emptySet();
+        private Set<String> referencedNames = Collections.emptySet();
+        private boolean extracted = false;
+
+        Entry(String inputFileName) throws IOException {
+            sourceFileName = new File(inputFileName).getCanonicalPath();
+            MessageDigest digest = createDigest();
+            digest.update(sourceFileName.getBytes(CACHE_CHARSET));
+            file = new File(directory, toHex(digest.digest()) + ENTRY_SUFFIX);
+        }
+
+        /*
+         * Creates an entry for a file of unknown source.
+         */
+        Entry(File file) {
+            this.file = file;
+        }
+    }
+}
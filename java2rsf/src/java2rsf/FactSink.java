@@ -0,0 +1,47 @@
+package java2rsf;
+
+/**
+ * Receives the facts of the visitors as they are extracted, without creating
+ * any Rsf text. {@link FactStore} collects them to write Rsf, other
+ * implementations can process them directly.
+ *
+ * <p>The arguments are the names of the entities. The names of types and
+ * methods are cached for each compilation, so an entity usually is passed as
+ * the same <code>String</code> instance in all facts of a compilation.
+ * Facts can be passed more than once.</p>
+ *
+ * <p>Implementations must be thread-safe if they are shared by several
+ * extraction threads. The extraction threads call <code>add</code>, so a
+ * slow sink slows down the extraction.</p>
+ *
+ * @see DeclarationVisitor#DeclarationVisitor(FactSink)
+ */
+public interface FactSink {
+
+    /**
+     * Returns whether facts of a relation are needed. Visitors skip the work
+     * for relations that are not needed, but may still pass some of their
+     * facts.
+     *
+     * @param relation the relation
+     * @return whether facts of the relation are needed
+     */
+    boolean includes(Relation relation);
+
+    /**
+     * Receives a fact with one argument, like <code>CLASS java.lang.Object</code>.
+     *
+     * @param relation the relation of the fact
+     * @param argument the argument of the fact
+     */
+    void add(Relation relation, String argument);
+
+    /**
+     * Receives a fact with two arguments, like <code>EXTENDS a.B a.A</code>.
+     *
+     * @param relation the relation of the fact
+     * @param argument1 the first argument of the fact
+     * @param argument2 the second argument of the fact
+     */
+    void add(Relation relation, String argument1, String argument2);
+}
@@ -0,0 +1,701 @@
+package java2rsf;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Collects Rsf facts in a compact form. Entity names are stored once in a
+ * symbol table, each fact is stored as the ids of its relation and arguments,
+ * packed into a long. The text of the Rsf output is only created when the
+ * facts are written. This is the {@link FactSink} of the command line tool.
+ *
+ * <p>Duplicate facts are removed. If the facts use up the memory budget, they
+ * can be written as a sorted run to a temporary file, see
+ * {@link #spillIfOverBudget()}.</p>
+ *
+ * <p>Derived relations are computed when the facts are written. The facts of
+ * their source relations are kept in memory for this, also when they are
+ * written to temporary files or are not kept themselves.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ *
+ */
+public class FactStore implements FactSink {
+
+    //a fact is packed as relation (5 bits), first argument and second argument + 1
+    private static final int ID_BITS = 29;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final int MAX_SYMBOLS = (1 << ID_BITS) - 1;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Charset MERGE_CHARSET = Charset.forName("UTF-8");
+
+    //the relations in the order of their names
+    private static final Relation[] RELATIONS_BY_RANK = Relation.values();
+    private static final int[] RELATION_RANKS = new int[RELATIONS_BY_RANK.length];
+    static {
+        Arrays.sort(RELATIONS_BY_RANK, new Comparator<Relation>() {
+
+            public int compare(Relation relation1, Relation relation2) {
+                return relation1.name().compareTo(relation2.name());
+            }
+        });
+        for (int rank = 0; rank < RELATIONS_BY_RANK.length; rank++) {
+            RELATION_RANKS[RELATIONS_BY_RANK[rank].ordinal()] = rank;
+        }
+    }
+
+    private long memoryBudget;
+    private File tempDirectory;
+    private ExternalSorter sorter;
+    private SymbolTable symbols = new SymbolTable();
+    private long[] facts = new long[INITIAL_CAPACITY];
+    private int size = 0;
+    private boolean spilled = false;
+    private volatile Set<Relation> relations = Relation.getExtracted();
+    //the relations that are kept, and the sources of the derived ones
+    private volatile Set<Relation> extractedRelations = Relation.getExtracted();
+    private Map<Relation, Reachability> closures = new EnumMap<Relation, Reachability>(Relation.class);
+    private boolean derived = false;
+
+    /**
+     * Creates a new store that keeps about memoryBudget bytes of facts in
+     * memory, including the buffers for merging the sorted runs.
+     *
+     * @param memoryBudget number of bytes to keep in memory, must be positive
+     * @param tempDirectory directory for sorted runs, or null for the default
+     *                      temporary directory
+     */
+    public FactStore(long memoryBudget, File tempDirectory) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("Memory budget must be positive.");
+        }
+        this.memoryBudget = memoryBudget;
+        this.tempDirectory = tempDirectory;
+        //the buffers for merging the runs get a quarter of the budget
+        this.sorter = new ExternalSorter(tempDirectory, memoryBudget / 4);
+    }
+
+    /**
+     * Sets the relations to keep. Facts of other relations are discarded
+     * when they are added. Derived relations are computed when the facts
+     * are written. Must be called before facts are added.
+     * <p>Default is all relations that are not derived</p>
+     *
+     * @param relations the relations to keep
+     * @return <code>this</code>
+     */
+    public synchronized FactStore setRelations(Set<Relation> relations) {
+        Set<Relation> extracted = EnumSet.noneOf(Relation.class);
+        extracted.addAll(relations);
+        closures.clear();
+        for (Relation relation : relations) {
+            if (relation.isDerived()) {
+                extracted.addAll(relation.getSources());
+                closures.put(relation, new Reachability());
+            }
+        }
+        this.relations = relations.isEmpty() ? EnumSet.noneOf(Relation.class) : EnumSet.copyOf(relations);
+        this.extractedRelations = extracted;
+        return this;
+    }
+
+    /**
+     * Returns whether facts of a relation are needed, because they are kept
+     * or because a derived relation is computed from them. Visitors skip the
+     * work for relations that are not needed.
+     *
+     * @param relation the relation
+     * @return whether facts of the relation are needed
+     */
+    public boolean includes(Relation relation) {
+        return extractedRelations.contains(relation);
+    }
+
+    /**
+     * Adds a fact with one argument.
+     *
+     * @param relation the relation of the fact
+     * @param argument the argument of the fact
+     */
+    public synchronized void add(Relation relation, String argument) {
+        addNames(relation, argument, null);
+    }
+
+    /**
+     * Adds a fact with two arguments.
+     *
+     * @param relation the relation of the fact
+     * @param argument1 the first argument of the fact
+     * @param argument2 the second argument of the fact
+     */
+    public synchronized void add(Relation relation, String argument1, String argument2) {
+        addNames(relation, argument1, argument2);
+    }
+
+    /**
+     * Adds all facts of another store, and takes the lock of this store only
+     * once. So threads can collect facts in stores of their own, e.g. the
+     * facts of one compilation unit, and add them at once. The facts of
+     * other must be in memory, derived relations of other are ignored.
+     *
+     * @param other the store with the facts to add
+     * @throws IllegalStateException if facts of other were written to
+     *         temporary files
+     */
+    public void addAll(FactStore other) {
+        if (other == null) {
+            throw new NullPointerException("Parameter other may not be null.");
+        }
+
+        long[] otherFacts;
+        int otherSize;
+        SymbolTable otherSymbols;
+        synchronized (other) {
+            if (other.spilled) {
+                throw new IllegalStateException("Facts were written to temporary files, use a larger memory budget.");
+            }
+            other.size = sortUnique(other.facts, other.size);
+            otherFacts = other.facts;
+            otherSize = other.size;
+            otherSymbols = other.symbols;
+        }
+
+        Relation[] relationsByOrdinal = Relation.values();
+        synchronized (this) {
+            for (int i = 0; i < otherSize; i++) {
+                long fact = otherFacts[i];
+                int argument2 = getArgument2(fact);
+                addNames(relationsByOrdinal[getRelation(fact)], otherSymbols.getName(getArgument1(fact)),
+                        (argument2 < 0) ? null : otherSymbols.getName(argument2));
+            }
+        }
+    }
+
+    /*
+     * Returns an empty store for the facts of one unit, to be added with
+     * addAll. It keeps the relations this store needs, without computing
+     * derived relations.
+     */
+    FactStore createUnitStore() {
+        Set<Relation> unitRelations = EnumSet.noneOf(Relation.class);
+        for (Relation relation : extractedRelations) {
+            if (!relation.isDerived()) {
+                unitRelations.add(relation);
+            }
+        }
+        return new FactStore(Long.MAX_VALUE, tempDirectory).setRelations(unitRelations);
+    }
+
+    /*
+     * Adds a fact by the names of its arguments, argument2 is null for facts
+     * with one argument.
+     */
+    private void addNames(Relation relation, String argument1, String argument2) {
+        if ((argument2 != null) && !closures.isEmpty()) {
+            for (Map.Entry<Relation, Reachability> closure : closures.entrySet()) {
+                if (closure.getKey().getSources().contains(relation)) {
+                    closure.getValue().addEdge(argument1, argument2);
+                }
+            }
+        }
+        if (!relations.contains(relation)) {
+            return;
+        }
+        addFact(relation, symbols.getId(argument1), (argument2 == null) ? -1 : symbols.getId(argument2));
+    }
+
+    /*
+     * Appends a packed fact, removes duplicates before the array grows.
+     */
+    private void addFact(Relation relation, int argument1, int argument2) {
+        if (symbols.size() > MAX_SYMBOLS) {
+            throw new IllegalStateException("Too many symbols, use a smaller memory budget.");
+        }
+
+        if (size == facts.length) {
+            size = sortUnique(facts, size);
+            if (size > facts.length / 2) {
+                facts = Arrays.copyOf(facts, 2 * facts.length);
+            }
+        }
+        facts[size++] = pack(relation.ordinal(), argument1, argument2);
+    }
+
+    /**
+     * Writes the facts as a sorted run to a temporary file, if they and the
+     * buffers for merging the runs use more memory than the budget. Afterwards the store starts over with an empty
+     * symbol table.
+     *
+     * @throws IOException in case writing the temporary file fails
+     */
+    public synchronized void spillIfOverBudget() throws IOException {
+        if (8L * facts.length + symbols.getUsedMemory() + sorter.getMergeMemory() < memoryBudget) {
+            return;
+        }
+
+        sorter.addRun(sortedLines());
+        spilled = true;
+        symbols = new SymbolTable();
+        facts = new long[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /**
+     * Writes all facts as Rsf, sorted and without duplicates. Each line is
+     * followed by the system line separator. Deletes the temporary files
+     * afterwards.
+     *
+     * @param writer the writer for the output
+     * @throws IOException in case writing or reading temporary files fails
+     */
+    public synchronized void writeTo(Writer writer) throws IOException {
+        try {
+            addDerivedFacts(true);
+            sorter.writeTo(writer, sortedLines());
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Writes the facts of each relation as Rsf to a file of its own, named
+     * like the relation with the suffix <code>.rsf</code>. The facts are
+     * sorted and without duplicates, each line is followed by the system line
+     * separator. Files are only created for relations that have facts.
+     * Deletes the temporary files afterwards.
+     *
+     * @param directory the directory for the files, created if it doesn't exist
+     * @throws IOException in case writing or reading temporary files fails
+     */
+    public synchronized void writeTo(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create output directory " + directory);
+        }
+
+        RelationFileWriter lineWriter = new RelationFileWriter(directory);
+        try {
+            addDerivedFacts(true);
+            sorter.writeTo(lineWriter, sortedLines());
+        } finally {
+            try {
+                lineWriter.close();
+            } finally {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Writes the facts as the CSV files of the Neo4j bulk import,
+     * <code>nodes.csv</code> and <code>relationships.csv</code>, without
+     * duplicates. Entities become nodes, facts with one argument their
+     * labels, and facts with two arguments relationships. The names of all
+     * entities are kept in memory while writing. Deletes the temporary files
+     * afterwards.
+     *
+     * @param directory the directory for the files, created if it doesn't exist
+     * @throws IOException in case writing or reading temporary files fails
+     */
+    public synchronized void writeNeo4jTo(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create output directory " + directory);
+        }
+
+        Neo4jCsvWriter lineWriter = new Neo4jCsvWriter(directory);
+        try {
+            addDerivedFacts(true);
+            sorter.writeTo(lineWriter, sortedLines());
+            lineWriter.finish();
+        } finally {
+            try {
+                lineWriter.close();
+            } finally {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Writes the facts to a database, without duplicates. Each relation
+     * that has facts gets a table of the same name, with the columns
+     * <code>argument1</code> and <code>argument2</code>. Existing tables are
+     * replaced. The rows are inserted in batches in a single transaction,
+     * the indexes are created afterwards. Deletes the temporary files
+     * afterwards. The connection is not closed.
+     *
+     * @param connection the connection to a SQLite or PostgreSQL database
+     * @throws IOException in case writing to the database or reading
+     *         temporary files fails
+     * @throws IllegalArgumentException if the database is not SQLite or
+     *         PostgreSQL
+     */
+    public synchronized void writeTo(Connection connection) throws IOException {
+        JdbcFactWriter lineWriter = new JdbcFactWriter(connection);
+        boolean finished = false;
+        try {
+            addDerivedFacts(true);
+            sorter.writeTo(lineWriter, sortedLines());
+            lineWriter.finish();
+            finished = true;
+        } finally {
+            try {
+                if (!finished) {
+                    lineWriter.rollback();
+                }
+            } finally {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Writes all facts in the binary format of {@link BinaryFactReader},
+     * without duplicates. Deletes the temporary files afterwards. The output
+     * stream is flushed, but not closed.
+     *
+     * @param out the stream for the output
+     * @throws IOException in case writing or reading temporary files fails
+     */
+    public synchronized void writeBinaryTo(OutputStream out) throws IOException {
+        try {
+            addDerivedFacts(true);
+            if (spilled) {
+                writeMergedBinaryTo(out);
+                return;
+            }
+
+            //the ranks are the ids in the output
+            int[] ranks = symbols.getRanks();
+            String[] namesByRank = new String[ranks.length];
+            for (int id = 0; id < ranks.length; id++) {
+                namesByRank[ranks[id]] = symbols.getName(id);
+            }
+            BinaryFactWriter writer = new BinaryFactWriter(out, namesByRank);
+            long[] rankedFacts = new long[size];
+            for (int i = 0; i < size; i++) {
+                long fact = facts[i];
+                int argument2 = getArgument2(fact);
+                rankedFacts[i] = pack(RELATION_RANKS[getRelation(fact)], ranks[getArgument1(fact)],
+                        (argument2 < 0) ? -1 : ranks[argument2]);
+            }
+            int rankedSize = sortUnique(rankedFacts, size);
+            for (int i = 0; i < rankedSize; i++) {
+                long fact = rankedFacts[i];
+                writer.add(RELATIONS_BY_RANK[getRelation(fact)].name(), getArgument1(fact), getArgument2(fact));
+            }
+            writer.finish();
+        } finally {
+            close();
+        }
+    }
+
+    /*
+     * Writes the facts of all runs in the binary format. The runs are merged
+     * into a temporary Rsf file, which is read twice: first for the names,
+     * then for the facts. The merged facts are sorted, so only the names are
+     * kept in memory.
+     */
+    private void writeMergedBinaryTo(OutputStream out) throws IOException {
+        File mergedFile = File.createTempFile("java2rsf", ".rsf", tempDirectory);
+        mergedFile.deleteOnExit();
+        try {
+            Writer mergedWriter = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(mergedFile), MERGE_CHARSET), BUFFER_SIZE);
+            try {
+                sorter.writeTo(mergedWriter, sortedLines());
+            } finally {
+                mergedWriter.close();
+            }
+
+            Set<String> names = new HashSet<String>();
+            BufferedReader reader = openMerged(mergedFile);
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] parts = line.split("\t");
+                    for (int i = 1; i < parts.length; i++) {
+                        names.add(parts[i]);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            String[] sortedNames = names.toArray(new String[names.size()]);
+            names = null;
+            Arrays.sort(sortedNames);
+
+            BinaryFactWriter writer = new BinaryFactWriter(out, sortedNames);
+            reader = openMerged(mergedFile);
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    String[] parts = line.split("\t");
+                    writer.add(parts[0], Arrays.binarySearch(sortedNames, parts[1]),
+                            (parts.length < 3) ? -1 : Arrays.binarySearch(sortedNames, parts[2]));
+                }
+            } finally {
+                reader.close();
+            }
+            writer.finish();
+        } finally {
+            mergedFile.delete();
+        }
+    }
+
+    private static BufferedReader openMerged(File mergedFile) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(mergedFile), MERGE_CHARSET), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes an index of the derived relations that are kept, see
+     * {@link ReachabilityIndex}. Must be called before the facts are
+     * written. The output stream is flushed, but not closed.
+     *
+     * @param out the stream for the output
+     * @throws IOException in case writing fails
+     */
+    public synchronized void writeReachabilityIndexTo(OutputStream out) throws IOException {
+        ReachabilityIndex.write(closures, out);
+    }
+
+    /*
+     * Adds the facts of the derived relations, computed from the facts added
+     * so far. If spill is true, the facts may be written to temporary files.
+     */
+    private void addDerivedFacts(boolean spill) throws IOException {
+        if (derived) {
+            return;
+        }
+        derived = true;
+
+        for (Map.Entry<Relation, Reachability> closure : closures.entrySet()) {
+            Relation relation = closure.getKey();
+            Reachability reachability = closure.getValue();
+            for (int source = 0; source < reachability.getNodeCount(); source++) {
+                BitSet reachable = reachability.getReachableComponents(reachability.getComponent(source));
+                if (reachable == null) {
+                    continue;
+                }
+                int sourceId = symbols.getId(reachability.getName(source));
+                for (int component = reachable.nextSetBit(0); component >= 0; component = reachable.nextSetBit(component + 1)) {
+                    for (int i = 0; i < reachability.getMemberCount(component); i++) {
+                        int target = reachability.getMember(component, i);
+                        addFact(relation, sourceId, symbols.getId(reachability.getName(target)));
+                    }
+                }
+                if (spill) {
+                    spillIfOverBudget();
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes all temporary files and discards the facts in memory.
+     */
+    public synchronized void close() {
+        sorter.close();
+        spilled = false;
+        derived = false;
+        for (Relation relation : closures.keySet()) {
+            closures.put(relation, new Reachability());
+        }
+        symbols = new SymbolTable();
+        facts = new long[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    /*
+     * Returns the symbol table of the facts in memory.
+     */
+    synchronized SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /*
+     * Returns the facts in memory as tables of symbol ids, by relation name.
+     * Fails if facts were written to temporary files.
+     */
+    synchronized Map<String, Table> toTables() {
+        if (spilled) {
+            throw new IllegalStateException("Facts were written to temporary files, use a larger memory budget.");
+        }
+        try {
+            addDerivedFacts(false);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        Map<String, Table> tables = new HashMap<String, Table>();
+        Relation[] relations = Relation.values();
+        int[] unaryRow = new int[1];
+        int[] binaryRow = new int[2];
+        for (int i = 0; i < size; i++) {
+            long fact = facts[i];
+            String relationName = relations[getRelation(fact)].name();
+            int argument2 = getArgument2(fact);
+            int[] row = (argument2 < 0) ? unaryRow : binaryRow;
+            row[0] = getArgument1(fact);
+            if (argument2 >= 0) {
+                row[1] = argument2;
+            }
+            Table table = tables.get(relationName);
+            if (table == null) {
+                table = new Table((argument2 < 0) ? new String[] {"#0"} : new String[] {"#0", "#1"});
+                tables.put(relationName, table);
+            }
+            table.add(row);
+        }
+        return tables;
+    }
+
+    /*
+     * Returns the lines of all facts in memory, in the order of the text. The
+     * facts are repacked with the ranks of their names, so that sorting the
+     * numbers sorts the text. This works because the tab that separates the
+     * arguments sorts before any character of a name.
+     */
+    private Iterator<String> sortedLines() {
+        int[] ranks = symbols.getRanks();
+        String[] namesByRank = new String[ranks.length];
+        for (int id = 0; id < ranks.length; id++) {
+            namesByRank[ranks[id]] = symbols.getName(id);
+        }
+
+        long[] rankedFacts = new long[size];
+        for (int i = 0; i < size; i++) {
+            long fact = facts[i];
+            int argument2 = getArgument2(fact);
+            rankedFacts[i] = pack(RELATION_RANKS[getRelation(fact)], ranks[getArgument1(fact)],
+                    (argument2 < 0) ? -1 : ranks[argument2]);
+        }
+        return new LineIterator(rankedFacts, sortUnique(rankedFacts, size), namesByRank);
+    }
+
+    /*
+     * Sorts the first size facts and removes duplicates. Returns the new size.
+     */
+    private static int sortUnique(long[] facts, int size) {
+        Arrays.sort(facts, 0, size);
+        int uniqueSize = 0;
+        for (int i = 0; i < size; i++) {
+            if ((uniqueSize == 0) || (facts[i] != facts[uniqueSize - 1])) {
+                facts[uniqueSize++] = facts[i];
+            }
+        }
+        return uniqueSize;
+    }
+
+    private static long pack(int relation, int argument1, int argument2) {
+        return ((long) relation << (2 * ID_BITS)) | ((long) argument1 << ID_BITS) | (argument2 + 1);
+    }
+
+    private static int getRelation(long fact) {
+        return (int) (fact >>> (2 * ID_BITS));
+    }
+
+    private static int getArgument1(long fact) {
+        return (int) ((fact >>> ID_BITS) & ID_MASK);
+    }
+
+    /*
+     * Returns the second argument, or -1 if the fact has only one argument.
+     */
+    private static int getArgument2(long fact) {
+        return (int) (fact & ID_MASK) - 1;
+    }
+
+    /*
+     * Writes sorted lines to a file per relation. The lines are sorted by
+     * relation first, so each file is written in one go.
+     */
+    private static class RelationFileWriter implements ExternalSorter.LineWriter {
+
+        private File directory;
+        private String lineSeparator = System.getProperty("line.separator");
+        private String relation = null;
+        private Writer writer = null;
+
+        RelationFileWriter(File directory) {
+            this.directory = directory;
+        }
+
+        public void writeLine(String line) throws IOException {
+            String lineRelation = line.substring(0, line.indexOf('\t'));
+            if (!lineRelation.equals(relation)) {
+                close();
+                relation = lineRelation;
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(new File(directory, relation + ".rsf"))), BUFFER_SIZE);
+            }
+            writer.write(line);
+            writer.write(lineSeparator);
+        }
+
+        void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+
+    /*
+     * Creates the lines for sorted facts, packed with ranks.
+     */
+    private static class LineIterator implements Iterator<String> {
+
+        private long[] rankedFacts;
+        private int size;
+        private String[] namesByRank;
+        private int next = 0;
+
+        LineIterator(long[] rankedFacts, int size, String[] namesByRank) {
+            this.rankedFacts = rankedFacts;
+            this.size = size;
+            this.namesByRank = namesByRank;
+        }
+
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            long fact = rankedFacts[next++];
+            StringBuilder line = new StringBuilder(RELATIONS_BY_RANK[getRelation(fact)].name());
+            line.append('\t').append(namesByRank[getArgument1(fact)]);
+            int argument2 = getArgument2(fact);
+            if (argument2 >= 0) {
+                line.append('\t').append(namesByRank[argument2]);
+            }
+            return line.toString();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package java2rsf;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes sorted Rsf lines to a database, a table per relation. The tables are
+ * named like the relations and have the columns <code>argument1</code> and,
+ * for facts with two arguments, <code>argument2</code>. Existing tables of
+ * the same names are replaced.
+ *
+ * <p>Only SQLite and PostgreSQL are supported. The columns are of type
+ * <code>TEXT</code>, because names like method signatures have no useful
+ * maximum length, and <code>DROP TABLE IF EXISTS</code> replaces the tables.
+ * Other databases don't have <code>TEXT</code>, like Derby and Oracle, or
+ * can't index it without a prefix length, like MySQL.</p>
+ *
+ * <p>The rows are inserted in batches with a prepared statement, in a single
+ * transaction. The indexes on the columns are created after all rows are
+ * inserted. SQLite databases are written with the journal in memory and
+ * without waiting for the disk, so a crash during the load may damage them.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+final class JdbcFactWriter implements ExternalSorter.LineWriter {
+
+    private static final int BATCH_SIZE = 10000;
+    /*
+     * The JDBC URL prefixes and product names of the supported databases.
+     */
+    static final List<String> SUPPORTED_URL_PREFIXES = Arrays.asList("jdbc:sqlite:", "jdbc:postgresql:");
+    private static final List<String> SUPPORTED_PRODUCTS = Arrays.asList("SQLite", "PostgreSQL");
+
+    private Connection connection;
+    //relation names like IS are keywords of SQL
+    private String quote;
+    private boolean autoCommit;
+    private List<String> tables = new ArrayList<String>();
+    private List<String> binaryTables = new ArrayList<String>();
+    private String relation = null;
+    private PreparedStatement insert = null;
+    private int batchSize = 0;
+
+    /*
+     * Starts the transaction of the load. Throws an IllegalArgumentException 
+     * if the database is not supported.
+     */
+    JdbcFactWriter(Connection connection) throws IOException {
+        this.connection = connection;
+        try {
+            String product = connection.getMetaData().getDatabaseProductName();
+            if (!SUPPORTED_PRODUCTS.contains(product)) {
+                throw new IllegalArgumentException("Writing to " + product 
+                        + " is not supported, only to SQLite and PostgreSQL.");
+            }
+            quote = connection.getMetaData().getIdentifierQuoteString().trim();
+            if (product.equals("SQLite")) {
+                //must be set outside of a transaction
+                execute("PRAGMA journal_mode = MEMORY");
+                execute("PRAGMA synchronous = OFF");
+            }
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            throw new IOException("Failed to prepare the database.", e);
+        }
+    }
+
+    public void writeLine(String line) throws IOException {
+        int firstTab = line.indexOf('\t');
+        int secondTab = line.indexOf('\t', firstTab + 1);
+        String lineRelation = line.substring(0, firstTab);
+        try {
+            if (!lineRelation.equals(relation)) {
+                startTable(lineRelation, secondTab != -1);
+            }
+            if (secondTab == -1) {
+                insert.setString(1, line.substring(firstTab + 1));
+            } else {
+                insert.setString(1, line.substring(firstTab + 1, secondTab));
+                insert.setString(2, line.substring(secondTab + 1));
+            }
+            insert.addBatch();
+            batchSize++;
+            if (batchSize == BATCH_SIZE) {
+                insert.executeBatch();
+                batchSize = 0;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to insert into table " + relation + ".", e);
+        }
+    }
+
+    /*
+     * Inserts the last batch, creates the indexes and commits.
+     */
+    void finish() throws IOException {
+        try {
+            endTable();
+            for (String table : tables) {
+                execute("CREATE INDEX " + quote(table + "_ARGUMENT1") + " ON " + quote(table) + " (argument1)");
+                if (binaryTables.contains(table)) {
+                    execute("CREATE INDEX " + quote(table + "_ARGUMENT2") + " ON " + quote(table) + " (argument2)");
+                }
+            }
+            connection.commit();
+            connection.setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            throw new IOException("Failed to finish the database.", e);
+        }
+    }
+
+    /*
+     * Rolls back after a failure.
+     */
+    void rollback() throws IOException {
+        try {
+            if (insert != null) {
+                insert.close();
+                insert = null;
+            }
+            connection.rollback();
+            connection.setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            throw new IOException("Failed to roll back.", e);
+        }
+    }
+
+    /*
+     * Replaces the table of a relation and prepares the insert statement.
+     */
+    private void startTable(String tableRelation, boolean binary) throws SQLException {
+        endTable();
+        relation = tableRelation;
+        tables.add(relation);
+        String table = quote(relation);
+        execute("DROP TABLE IF EXISTS " + table);
+        if (binary) {
+            binaryTables.add(relation);
+            execute("CREATE TABLE " + table + " (argument1 TEXT NOT NULL, argument2 TEXT NOT NULL)");
+            insert = connection.prepareStatement("INSERT INTO " + table + " (argument1, argument2) VALUES (?, ?)");
+        } else {
+            execute("CREATE TABLE " + table + " (argument1 TEXT NOT NULL)");
+            insert = connection.prepareStatement("INSERT INTO " + table + " (argument1) VALUES (?)");
+        }
+    }
+
+    private void endTable() throws SQLException {
+        if (insert == null) {
+            return;
+        }
+        if (batchSize > 0) {
+            insert.executeBatch();
+            batchSize = 0;
+        }
+        insert.close();
+        insert = null;
+    }
+
+    private String quote(String identifier) {
+        return quote + identifier + quote;
+    }
+
+    private void execute(String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+}
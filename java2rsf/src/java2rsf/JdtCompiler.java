@@ -4,13 +4,17 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.jdt.core.compiler.CategorizedProblem;
 import org.eclipse.jdt.internal.compiler.CompilationResult;
 import org.eclipse.jdt.internal.compiler.ICompilerRequestor;
 import org.eclipse.jdt.internal.compiler.IErrorHandlingPolicy;
 import org.eclipse.jdt.internal.compiler.IProblemFactory;
 import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
-import org.eclipse.jdt.internal.compiler.batch.FileSystem;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileConstants;
 import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
 import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
@@ -18,7 +22,7 @@ import org.eclipse.jdt.internal.compiler.problem.AbortCompilation;
 import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
 
 /**
- * Used to parse a Java source file. Return an object 
+ * Used to parse Java source files. Return objects 
  * with resolved abstract syntax trees that can accept a visitor.
  * 
  * <p>All methods return <code>this</code> to allow chained method calls.</p>
@@ -32,13 +36,30 @@ import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
  * CompilationUnitDeclaration unit = jdtCompiler.getResolvedUnit();
  * ...</pre>
  * </p>
+ * 
+ * <p>Several files can be parsed together in a single compiler session. Each 
+ * file is then resolved only once, also when other input files depend on it:<br>
+ * <pre>
+ * JdtCompiler jdtCompiler = new JdtCompiler(inputFileNames)
+ *                         .addClasspath("C:\Project\src");
+ * for (CompilationUnitDeclaration unit : jdtCompiler.getResolvedUnits()) {
+ * ...</pre>
+ * </p>
  */
 public class JdtCompiler {
 
-    String inputFileName;
+    List<String> inputFileNames = new ArrayList<String>();
     List<String> classpathNames = new ArrayList<String>();
     String encoding = Charset.defaultCharset().displayName();
-    private SourceLevel sourceLevel = SourceLevel.JDK1_6;
+    SourceLevel sourceLevel = SourceLevel.JDK1_6;
+    boolean declarationsOnly = false;
+    private boolean keepGoing = false;
+    private RunReport runReport = null;
+    private ClasspathIndex classpathIndex = null;
+    private boolean recordDependencies = false;
+    private SourcePrefetcher sourcePrefetcher = null;
+    private Map<String, byte[]> compiledTypes = null;
+    private Set<String> sharedFileNames = Collections.emptySet();
 
     /**
      * Creates a new instance from a file that shall be parsed.
@@ -49,17 +70,37 @@ public class JdtCompiler {
      * @param inputFileName names of the file that shall be parsed
      */
     public JdtCompiler(String inputFileName) {
-        if (inputFileName == null) {
-            throw new NullPointerException("Parameter initialFileName may not be null.");
+        this(Collections.singletonList(inputFileName));
+    }
+
+    /**
+     * Creates a new instance from several files that shall be parsed together.
+     * 
+     * <p><code>inputFileNames</code> must not be <code>null</code> or empty. 
+     * All file names must end in <code>.java</code.</p>
+     * 
+     * @param inputFileNames names of the files that shall be parsed
+     */
+    public JdtCompiler(List<String> inputFileNames) {
+        if (inputFileNames == null) {
+            throw new NullPointerException("Parameter inputFileNames may not be null.");
+        }
+        if (inputFileNames.isEmpty()) {
+            throw new IllegalArgumentException("No input files.");
         }
-        if (!inputFileName.endsWith(".java")) {
-            throw new IllegalArgumentException("Not a .java file.");
+        for (String inputFileName : inputFileNames) {
+            if (inputFileName == null) {
+                throw new NullPointerException("Parameter initialFileName may not be null.");
+            }
+            if (!inputFileName.endsWith(".java")) {
+                throw new IllegalArgumentException("Not a .java file.");
+            }
         }
-        this.inputFileName = inputFileName;
+        this.inputFileNames.addAll(inputFileNames);
 
-        //guess the path to rt.jar
+        //guess the path to rt.jar, Java 9 and later have a module image instead
         String baseClassesPath = System.getProperty("java.home") + File.separator + "lib" + File.separator + "rt.jar";
-        classpathNames.add(baseClassesPath);
+        classpathNames.add(new File(baseClassesPath).isFile() ? baseClassesPath : ClasspathIndex.JRT_CLASSPATH_NAME);
     }
 
     /**
@@ -73,8 +114,8 @@ public class JdtCompiler {
      * <code>classpathName</code> must point to <code>C:\Project\src</code></p>
      * 
      * <p>This class automatically tries to add the standard Java API 
-     * (usually located in <code>java.home\lib\rt.jar</code>) to the 
-     * classpath.</p>
+     * (usually located in <code>java.home\lib\rt.jar</code>, or in the 
+     * module image of Java 9 and later) to the classpath.</p>
      * 
      * @param classpathName a location 
      * @return <code>this</code>
@@ -84,6 +125,55 @@ public class JdtCompiler {
         return this;
     }
 
+    /**
+     * Uses the standard Java API of an earlier Java release, instead of the 
+     * one of the running Java runtime. 
+     * 
+     * <p>Requires a Java 9 or later runtime, which stores the APIs of 
+     * earlier releases in <code>java.home/lib/ct.sym</code>. For example 
+     * <code>8</code> for Java 8.</p>
+     * 
+     * @param release the number of a Java release
+     * @return <code>this</code>
+     */
+    public JdtCompiler setRelease(int release) {
+        //the standard Java API is always the first classpath entry
+        classpathNames.set(0, ClasspathIndex.RELEASE_CLASSPATH_PREFIX + release);
+        return this;
+    }
+
+    /**
+     * Shares an index of the classpath with other compilers. 
+     * 
+     * <p>The classpath and the encoding of <code>classpathIndex</code> are 
+     * used instead of those of this compiler.</p>
+     * 
+     * @param classpathIndex an index of the classpath
+     * @return <code>this</code>
+     * @see #getClasspathIndex()
+     */
+    public JdtCompiler setClasspathIndex(ClasspathIndex classpathIndex) {
+        this.classpathIndex = classpathIndex;
+        return this;
+    }
+
+    /**
+     * Returns the index of the classpath. If none was set, it is created 
+     * from the classpath and encoding of this compiler when first requested.
+     * 
+     * <p>The index can be shared with other compilers that use the same 
+     * classpath and encoding, so that the classpath is scanned only once.</p>
+     * 
+     * @return the index of the classpath
+     * @see #setClasspathIndex(ClasspathIndex)
+     */
+    public ClasspathIndex getClasspathIndex() {
+        if (classpathIndex == null) {
+            classpathIndex = new ClasspathIndex(classpathNames, encoding);
+        }
+        return classpathIndex;
+    }
+
     /**
      * Sets the encoding of the Java source files. 
      * Default is the system default encoding as returned by {@link Charset#defaultCharset()}
@@ -109,43 +199,168 @@ public class JdtCompiler {
         return this;
     }
 
+    /**
+     * Sets whether the compiler records the names each unit references. They
+     * are stored in the <code>CompilationResult</code> of each unit.
+     * <p>Default is <code>false</code></p>
+     * 
+     * @param recordDependencies whether to record referenced names
+     * @return <code>this</code>
+     */
+    public JdtCompiler setRecordDependencies(boolean recordDependencies) {
+        this.recordDependencies = recordDependencies;
+        return this;
+    }
+
+    /**
+     * Sets whether only the declarations of the input files are parsed and
+     * resolved. The bodies of methods, constructors and initializers are 
+     * skipped, so they have no statements, and the local and anonymous types
+     * declared in them are missing. Field initializations are still parsed.
+     * <p>Default is <code>false</code></p>
+     * 
+     * @param declarationsOnly whether to skip the bodies
+     * @return <code>this</code>
+     * @see DeclarationVisitor#DeclarationVisitor(FactSink, boolean)
+     */
+    public JdtCompiler setDeclarationsOnly(boolean declarationsOnly) {
+        this.declarationsOnly = declarationsOnly;
+        return this;
+    }
+
+    /**
+     * Sets whether the compiler keeps going after errors in the input files, 
+     * instead of throwing a <code>CompilationException</code> for the first
+     * one. The units are then resolved as far as possible, and the errors are 
+     * recorded in their <code>CompilationResult</code>, see 
+     * {@link #getErrors(CompilationUnitDeclaration)}. Bindings that failed to 
+     * resolve may be missing or invalid. A unit that the compiler had to 
+     * abort is not visited at all.
+     * <p>Errors that prevent the whole compilation, like a missing 
+     * <code>java.lang.Object</code>, are still thrown.</p>
+     * <p>Default is <code>false</code></p>
+     * 
+     * @param keepGoing whether to keep going after errors
+     * @return <code>this</code>
+     */
+    public JdtCompiler setKeepGoing(boolean keepGoing) {
+        this.keepGoing = keepGoing;
+        return this;
+    }
+
+    /**
+     * Returns the errors that the compiler recorded for a unit, if it kept
+     * going after errors. Errors found in other files while resolving the 
+     * unit are included.
+     * 
+     * @param unit a unit returned by this class
+     * @return the errors of the unit, in the order they were found
+     */
+    public static List<CompilationException> getErrors(CompilationUnitDeclaration unit) {
+        List<CompilationException> errors = new ArrayList<CompilationException>();
+        CategorizedProblem[] problems = unit.compilationResult.getErrors();
+        if (problems != null) {
+            for (CategorizedProblem problem : problems) {
+                errors.add(new CompilationException(problem));
+            }
+        }
+        return errors;
+    }
+
+    /*
+     * Measures reading, parsing and resolving the input files in runReport.
+     */
+    JdtCompiler setRunReport(RunReport runReport) {
+        this.runReport = runReport;
+        return this;
+    }
+
+    /*
+     * Reads the input files with a prefetcher that reads them in the
+     * background, instead of reading them when they are parsed.
+     */
+    JdtCompiler setSourcePrefetcher(SourcePrefetcher sourcePrefetcher) {
+        this.sourcePrefetcher = sourcePrefetcher;
+        return this;
+    }
+
+    /*
+     * Finds types in the class files of compiledTypes before the classpath,
+     * and adds to it the class files of the input files in sharedFileNames.
+     * So a later compilation reads the types it shares with this one as
+     * class files, instead of compiling their source files again. Class files
+     * are not generated otherwise. The map is shared by the compilers of a
+     * run and must be thread-safe.
+     */
+    JdtCompiler setCompiledTypes(Map<String, byte[]> compiledTypes, Set<String> sharedFileNames) {
+        this.compiledTypes = compiledTypes;
+        this.sharedFileNames = sharedFileNames;
+        return this;
+    }
+
     /**
      * Parses the input file. Returns an Object that is ready to accept a visitor. 
      * 
+     * <p>Only allowed if this instance was created with a single input file.</p>
+     * 
      * @return the <code>CompilationUnitDeclaration</code> created from the input file, parsed and ready to accept a visitor
      * @throws rsfparser.CompilationException in case parsing the input file fails
      * @throws java.io.IOException in case of an IO error while reading the input file
      */
     public CompilationUnitDeclaration getResolvedUnit() throws CompilationException, IOException {
-        CompilationUnitDeclaration unit = null;
+        if (inputFileNames.size() != 1) {
+            throw new IllegalStateException("More than one input file, use getResolvedUnits().");
+        }
+        return getResolvedUnits().get(0);
+    }
+
+    /**
+     * Parses all input files in a single compiler session. Returns Objects 
+     * that are ready to accept a visitor, in the same order as the input files.
+     * 
+     * @return the <code>CompilationUnitDeclaration</code>s created from the input files, parsed and ready to accept a visitor
+     * @throws rsfparser.CompilationException in case parsing the input files fails
+     * @throws java.io.IOException in case of an IO error while reading the input files
+     */
+    public List<CompilationUnitDeclaration> getResolvedUnits() throws CompilationException, IOException {
+        String[] inputFileArray = inputFileNames.toArray(new String[0]);
+        CompilationUnitDeclaration[] units = null;
+        ExtractionEvents.Event event = ExtractionEvents.INSTANCE.begin(ExtractionEvents.Kind.COMPILE);
         try {
-            unit = getCompiler().getResolvedUnit(inputFileName, encoding);
+            units = getCompiler().getResolvedUnits(inputFileArray, encoding, sourcePrefetcher);
         } catch (AbortCompilation e) {
             throw new CompilationException(e);
         }
-        return unit;
+        if (event != null) {
+            long sourceChars = 0;
+            for (CompilationUnitDeclaration unit : units) {
+                sourceChars += Math.max(0, ExtractionEvents.getSourceChars(unit));
+            }
+            event.finish((inputFileArray.length == 1) ? inputFileArray[0] : null, inputFileArray.length, sourceChars, -1);
+        }
+        return Arrays.asList(units);
     }
 
     /* 
      * Convenience method that creates a compiler instance
      */
     private CompilerImpl getCompiler() {
-        String[] inputFileArray = {inputFileName};
-        INameEnvironment environment = new FileSystem(classpathNames.toArray(new String[0]),
-                inputFileArray, encoding);
+        String[] inputFileArray = inputFileNames.toArray(new String[0]);
+        INameEnvironment environment = getClasspathIndex().getNameEnvironment(inputFileArray, compiledTypes);
         CompilerOptions options = new CompilerOptions();
         options.sourceLevel = this.sourceLevel.getSourceLevelLong();
         options.complianceLevel = this.sourceLevel.getSourceLevelLong();
+        options.produceReferenceInfo = this.recordDependencies;
         //options.targetJDK = this.sourceLevel.getSourceLevelLong();
         IProblemFactory problemFactory = new DefaultProblemFactory();
         IErrorHandlingPolicy policy = new IErrorHandlingPolicy() {
 
             public boolean proceedOnErrors() {
-                return false;
+                return keepGoing;
             }
 
             public boolean stopOnFirstError() {
-                return true;
+                return !keepGoing;
             }
         };
         ICompilerRequestor requestor = new ICompilerRequestor() {
@@ -153,7 +368,12 @@ public class JdtCompiler {
             public void acceptResult(CompilationResult result) {
             }
         };
-        return new CompilerImpl(environment, policy, options, requestor, problemFactory);
+        CompilerImpl compiler = new CompilerImpl(environment, policy, options, requestor, problemFactory);
+        compiler.setCompiledTypes(compiledTypes, sharedFileNames);
+        compiler.setDeclarationsOnly(declarationsOnly);
+        compiler.setKeepGoing(keepGoing);
+        compiler.setRunReport(runReport);
+        return compiler;
     }
 
     /**
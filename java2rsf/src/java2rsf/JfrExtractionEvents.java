@@ -0,0 +1,152 @@
+package java2rsf;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder events of {@link ExtractionEvents}. Only loaded if
+ * the Java runtime has <code>jdk.jfr</code>.
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+final class JfrExtractionEvents extends ExtractionEvents {
+
+    //tell whether a recording enables the events
+    private final CompileEvent compilePrototype = new CompileEvent();
+    private final ResolveEvent resolvePrototype = new ResolveEvent();
+    private final VisitEvent visitPrototype = new VisitEvent();
+    private final WriteEvent writePrototype = new WriteEvent();
+
+    @Override
+    ExtractionEvents.Event begin(Kind kind) {
+        PhaseEvent event;
+        switch (kind) {
+            case COMPILE:
+                event = compilePrototype.isEnabled() ? new CompileEvent() : null;
+                break;
+            case RESOLVE:
+                event = resolvePrototype.isEnabled() ? new ResolveEvent() : null;
+                break;
+            case VISIT:
+                event = visitPrototype.isEnabled() ? new VisitEvent() : null;
+                break;
+            case WRITE:
+                event = writePrototype.isEnabled() ? new WriteEvent() : null;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind of event: " + kind);
+        }
+        if (event != null) {
+            event.begin();
+        }
+        return event;
+    }
+
+    /*
+     * The time of a phase, the stack trace would only show this class.
+     */
+    @Category("java2rsf")
+    @StackTrace(false)
+    abstract static class PhaseEvent extends jdk.jfr.Event implements ExtractionEvents.Event {
+
+        public void finish(String fileName, int files, long sourceChars, long facts) {
+            end();
+            if (shouldCommit()) {
+                setFields(fileName, files, sourceChars, facts);
+                commit();
+            }
+        }
+
+        abstract void setFields(String fileName, int files, long sourceChars, long facts);
+    }
+
+    @Name("java2rsf.Compile")
+    @Label("Compile")
+    @Description("Parsing and resolving input files in one compiler session")
+    static final class CompileEvent extends PhaseEvent {
+
+        @Label("File")
+        @Description("The input file, if only one is compiled")
+        String file;
+
+        @Label("Files")
+        int files;
+
+        @Label("Source Size")
+        @Description("Characters of all input files")
+        long sourceChars;
+
+        @Override
+        void setFields(String fileName, int files, long sourceChars, long facts) {
+            this.file = fileName;
+            this.files = files;
+            this.sourceChars = sourceChars;
+        }
+    }
+
+    @Name("java2rsf.Resolve")
+    @Label("Resolve")
+    @Description("Parsing the bodies of a unit, resolving and analysing it")
+    static final class ResolveEvent extends PhaseEvent {
+
+        @Label("File")
+        String file;
+
+        @Label("Source Size")
+        @Description("Characters of the unit")
+        long sourceChars;
+
+        @Override
+        void setFields(String fileName, int files, long sourceChars, long facts) {
+            this.file = fileName;
+            this.sourceChars = sourceChars;
+        }
+    }
+
+    @Name("java2rsf.Visit")
+    @Label("Visit")
+    @Description("Extracting the facts of a unit")
+    static final class VisitEvent extends PhaseEvent {
+
+        @Label("File")
+        String file;
+
+        @Label("Source Size")
+        @Description("Characters of the unit")
+        long sourceChars;
+
+        @Label("Facts")
+        @Description("Facts the visitors emitted, before duplicates are removed")
+        long facts;
+
+        @Override
+        void setFields(String fileName, int files, long sourceChars, long facts) {
+            this.file = fileName;
+            this.sourceChars = sourceChars;
+            this.facts = facts;
+        }
+    }
+
+    @Name("java2rsf.Write")
+    @Label("Write")
+    @Description("Writing the output of a run")
+    static final class WriteEvent extends PhaseEvent {
+
+        @Label("Output")
+        @Description("The file, directory or database written to, standard output if empty")
+        String file;
+
+        @Label("Files")
+        @Description("Input files of the run")
+        int files;
+
+        @Override
+        void setFields(String fileName, int files, long sourceChars, long facts) {
+            this.file = fileName;
+            this.files = files;
+        }
+    }
+}
@@ -6,13 +6,36 @@ import com.martiansoftware.jsap.JSAPException;
 import com.martiansoftware.jsap.JSAPResult;
 import com.martiansoftware.jsap.Switch;
 import com.martiansoftware.jsap.UnflaggedOption;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
 
 /**
@@ -24,6 +47,15 @@ import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
  */
 public class Main {
 
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+    //bytes of .java files that are read ahead of parsing
+    private static final int PREFETCH_BYTES = 32 << 20;
+    //files listed in the run report as the slowest and the most allocating
+    private static final int REPORTED_FILES = 20;
+    //options that choose where the facts go, at most one can be used, and their flags
+    private static final String[] OUTPUT_OPTIONS = {"queryFile", "factFile", "outputDirectory", "neo4jDirectory", "jdbcUrl"};
+    private static final String[] OUTPUT_FLAGS = {"--query", "--binary", "--split", "--neo4j", "--jdbc"};
+
     /*
      * Do not instantiate.
      */
@@ -35,17 +67,47 @@ public class Main {
      * the Rsf output to the specified location.
      * 
      * <p><pre>
-     * Usage: java -jar rsfparser.jar &lt;inputFile&gt; [-r] [-c &lt;classpath&gt;] 
-     * [-l &lt;javaVersion&gt;] [-e &lt;encoding&gt;] [-v]
+     * Usage: java -jar rsfparser.jar &lt;inputFile&gt; [-r] [--include &lt;include&gt;] [--exclude &lt;exclude&gt;] 
+     * [--exclude-from &lt;excludeFile&gt;] [--gitignore] [-c &lt;classpath&gt;] 
+     * [-l &lt;javaVersion&gt;] [--release &lt;release&gt;] [-e &lt;encoding&gt;] [-b|--batch] [--batch-size &lt;batchSize&gt;] 
+     * [--declarations-only] [--keep-going] [--error-report &lt;errorFile&gt;] 
+     * [(-m|--sort-memory) &lt;sortMemory&gt;] [--cache &lt;cacheDirectory&gt;] 
+     * [--query &lt;queryFile&gt;] [--binary &lt;factFile&gt;] [--relations &lt;relations&gt;] 
+     * [--exclude-relations &lt;excludedRelations&gt;] [--split &lt;outputDirectory&gt;] [--neo4j &lt;neo4jDirectory&gt;] 
+     * [--jdbc &lt;jdbcUrl&gt;] [--closure] [--reachability-index &lt;indexFile&gt;] [--io-threads &lt;ioThreads&gt;] 
+     * [(-t|--threads) &lt;threads&gt;] [--run-report &lt;reportFile&gt;] [-v]
      *   &lt;inputFile&gt;
      *         Set the .java file or directory to create Rsf output from.
      *         For a directory, all .java files in the directory will be added, but
      *         files in its subdirectories will not be added.
+     *         @listFile reads the .java files and directories from listFile, one
+     *         per line, - reads them from standard input. Then the directories
+     *         with the packages must be added with -c.
      * 
      *   [-r]
      *         If the input file is a directory, adds all .java files in its
      *         sudirectories.
      * 
+     *   [--include &lt;include&gt;]
+     *         Only add .java files that match a pattern like *Impl.java or
+     *         src/main/**. A pattern without a slash matches file names, others
+     *         match the path relative to the input directory.
+     *         Can be used multiple times
+     * 
+     *   [--exclude &lt;exclude&gt;]
+     *         Do not add files and directories that match a pattern like target,
+     *         *Test.java or src/generated.
+     *         Can be used multiple times
+     * 
+     *   [--exclude-from &lt;excludeFile&gt;]
+     *         Exclude files and directories with the patterns of a file in
+     *         .gitignore format.
+     *         Can be used multiple times
+     * 
+     *   [--gitignore]
+     *         Exclude files and directories that are ignored by the .gitignore
+     *         files in the input directory and its subdirectories.
+     * 
      *   [-c &lt;classpath&gt;]
      *         Name a directory or .jar file that contains Java classes that are
      *         referenced in the input files.
@@ -55,21 +117,127 @@ public class Main {
      *         Set the java language version of the .java files, can be 1.1, 1.2, 1.3,
      *         1.4, 1.5 or 1.6, defaults to 1.6
      * 
+     *   [--release &lt;release&gt;]
+     *         Use the Java API of an earlier Java release, like 8, instead of the
+     *         one of the running Java runtime. Requires Java 9 or later.
+     * 
      *   [-e &lt;encoding&gt;]
      *         Set the encoding of the .java files, defaults to the system default
      *         encoding
      * 
+     *   [-b|--batch]
+     *         Parse all .java files together in a single compiler session. Every
+     *         file is resolved only once, but all abstract syntax trees are kept in
+     *         memory at the same time.
+     * 
+     *   [--batch-size &lt;batchSize&gt;]
+     *         Parse the .java files in batches of at most this many files, in the
+     *         order of their dependencies. Files that depend on each other are
+     *         parsed in the same batch. Later batches read the types of earlier
+     *         ones as compiled classes, so files are not resolved again and only
+     *         one batch is kept in memory per thread.
+     * 
+     *   [--declarations-only]
+     *         Extract only declarations and signatures, without parsing the bodies
+     *         of methods and initializers. Much faster, but CALLS, READS, WRITES,
+     *         USES and local and anonymous classes are not extracted.
+     * 
+     *   [--keep-going]
+     *         Keep going after compile errors. The facts are extracted from
+     *         everything that resolved, names that failed to resolve become
+     *         &lt;unresolved&gt;. The errors are reported as tab separated lines:
+     *         file, line and message, on standard error by default.
+     * 
+     *   [--error-report &lt;errorFile&gt;]
+     *         Write the compile errors to errorFile instead of standard error.
+     *         Implies --keep-going.
+     * 
+     *   [(-m|--sort-memory) &lt;sortMemory&gt;]
+     *         Set the number of megabytes of Rsf output to keep in memory, defaults
+     *         to a quarter of the maximum heap size. Output beyond that is sorted in
+     *         temporary files.
+     * 
+     *   [--cache &lt;cacheDirectory&gt;]
+     *         Keep the output of each .java file in a cache directory. Only files
+     *         that changed since the last run, or that depend on changed types,
+     *         are parsed again.
+     * 
+     *   [--query &lt;queryFile&gt;]
+     *         Run an RML program like those of CrocoPat on the facts, and print
+     *         its output instead of the facts. All facts are kept in memory.
+     * 
+     *   [--binary &lt;factFile&gt;]
+     *         Write the facts to factFile in a compact binary format instead of
+     *         printing Rsf. See BinaryFactReader to read the file or to convert
+     *         it to Rsf.
+     * 
+     *   [--relations &lt;relations&gt;]
+     *         Set the relations to extract, separated by commas, for example
+     *         EXTENDS,IMPLEMENTS,HAS. Defaults to all relations that are not
+     *         derived. Parts of the method bodies are not visited if their
+     *         relations are not extracted.
+     * 
+     *   [--exclude-relations &lt;excludedRelations&gt;]
+     *         Set relations not to extract, separated by commas, for example
+     *         USES,READS.
+     * 
+     *   [--split &lt;outputDirectory&gt;]
+     *         Write the facts of each relation to its own file in outputDirectory,
+     *         like CALLS.rsf, instead of printing them.
+     * 
+     *   [--neo4j &lt;neo4jDirectory&gt;]
+     *         Write the facts to nodes.csv and relationships.csv in
+     *         neo4jDirectory, for the bulk import of Neo4j, instead of printing
+     *         them. For example: neo4j-admin database import full
+     *         --nodes=nodes.csv --relationships=relationships.csv
+     * 
+     *   [--jdbc &lt;jdbcUrl&gt;]
+     *         Write the facts to the database of a JDBC URL like
+     *         jdbc:sqlite:facts.db instead of printing them, a table per
+     *         relation. Only SQLite and PostgreSQL are supported. The JDBC
+     *         driver must be on the classpath.
+     * 
+     *   [--closure]
+     *         Add the derived relations INHERITS_FROM, the transitive closure of
+     *         EXTENDS and IMPLEMENTS, and CALLS_TRANSITIVELY, the transitive
+     *         closure of CALLS.
+     * 
+     *   [--reachability-index &lt;indexFile&gt;]
+     *         Write an index of the derived relations to indexFile, that tells in
+     *         constant time if a fact is in a derived relation. See
+     *         ReachabilityIndex. Implies --closure.
+     * 
+     *   [--io-threads &lt;ioThreads&gt;]
+     *         Set the number of threads that read .java files ahead of parsing,
+     *         defaults to 4. Reading then overlaps with parsing, which helps on
+     *         slow disks and network file systems. 0 reads each file when it is
+     *         parsed. Directories are also listed with this many threads.
+     * 
+     *   [(-t|--threads) &lt;threads&gt;]
+     *         Set the number of threads that parse .java files in parallel, defaults
+     *         to 1. The output does not depend on the number of threads.
+     * 
+     *   [--run-report &lt;reportFile&gt;]
+     *         Write a report in JSON format to reportFile: the wall time, CPU
+     *         time and allocated bytes of walking directories, reading, parsing,
+     *         resolving, visiting and writing, the number of facts emitted per
+     *         relation before duplicates are removed, and the files that took
+     *         the most time and memory.
+     * 
      *   [-v]
      *         Give feedback about which file is parsed at the moment.
      * </pre></p>
      * 
      * <p>For more information about the parameters, see {@link JdtCompiler}</p>
      * 
+     * <p>To run many extractions in a single Java process, see {@link Daemon}.</p>
+     * 
      * @param args command line arguments
      * @throws java.io.IOException in case of an IO error while reading the input files
      * @throws rsfparser.CompilationException in case parsing the input files fails
+     * @throws QueryException in case the query program is invalid
      */
-    public static void main(String[] args) throws IOException, CompilationException {
+    public static void main(String[] args) throws IOException, CompilationException, QueryException {
         JSAP jsap = getOptions();
         JSAPResult config = jsap.parse(args);
         
@@ -81,59 +249,447 @@ public class Main {
             System.exit(1);
         }
 
+        Writer writer = new BufferedWriter(new OutputStreamWriter(System.out), OUTPUT_BUFFER_SIZE);
+        run(config, writer, null);
+    }
+
+    /*
+     * Extracts the facts as configured by the command line arguments. Prints
+     * the output to writer, unless it is written to files. If daemon is not
+     * null, its warm classpath index is used and stays open.
+     */
+    static void run(JSAPResult config, Writer writer, Daemon daemon) 
+            throws IOException, CompilationException, QueryException {
+        String outputFlag = null;
+        for (int i = 0; i < OUTPUT_OPTIONS.length; i++) {
+            if (config.contains(OUTPUT_OPTIONS[i])) {
+                if (outputFlag != null) {
+                    throw new IllegalArgumentException(outputFlag + " and " + OUTPUT_FLAGS[i] + " cannot be used together.");
+                }
+                outputFlag = OUTPUT_FLAGS[i];
+            }
+        }
+        if (config.contains("jdbcUrl") && !isSupportedDatabase(config.getString("jdbcUrl"))) {
+            throw new IllegalArgumentException("--jdbc only supports SQLite and PostgreSQL, with URLs starting with " 
+                    + JdbcFactWriter.SUPPORTED_URL_PREFIXES + ".");
+        }
 
-        List<String> inputFileNames = new ArrayList<String>();
+        RunReport runReport = config.contains("reportFile") ? new RunReport() : null;
+        RunReport.Measurement measurement = (runReport == null) ? null : runReport.start();
         File initialFile = new File(config.getString("inputFile"));
-        boolean searchSubdirectories = config.getBoolean("searchSubdirectories");
-        getInputFiles(initialFile, searchSubdirectories, inputFileNames);
+        List<String> inputFileNames = getInputFiles(config);
+        if (runReport != null) {
+            runReport.stop(measurement, RunReport.Phase.WALK, null);
+        }
         if(inputFileNames.isEmpty()){
             throw new IllegalArgumentException("No .java files found.");
         }
 
-        SortedSet<String> lines = new TreeSet<String>();
-        for (String inputFileName : inputFileNames) {
-            if(config.getBoolean("verbose")){
-                System.err.println(inputFileName);    
+        int threads = config.getInt("threads");
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1.");
+        }
+        boolean batch = config.getBoolean("batch");
+        if (batch && config.contains("batchSize")) {
+            throw new IllegalArgumentException("--batch and --batch-size cannot be used together.");
+        }
+        if (batch && config.getBoolean("verbose")) {
+            System.err.println("Parsing " + inputFileNames.size() + " files in batch mode");
+        }
+
+        //scan the classpath only once, share it with all compilers
+        JdtCompiler templateCompiler = createCompiler(inputFileNames, initialFile, config);
+        if (daemon != null) {
+            templateCompiler.setClasspathIndex(daemon.getClasspathIndex(templateCompiler));
+        }
+        ClasspathIndex classpathIndex = templateCompiler.getClasspathIndex();
+
+        //keep at most a quarter of the heap for facts by default
+        long sortMemory = Runtime.getRuntime().maxMemory() / 4;
+        if (config.contains("sortMemory")) {
+            sortMemory = config.getInt("sortMemory") * 1024L * 1024L;
+        }
+        //a query needs all facts in memory
+        if (config.contains("queryFile")) {
+            sortMemory = Long.MAX_VALUE;
+        }
+        FactStore facts = new FactStore(sortMemory, null).setRelations(getRelations(config));
+
+        //errors are reported as they are found
+        ErrorReport errors = null;
+        if (config.contains("errorFile")) {
+            errors = new ErrorReport(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(config.getString("errorFile")), "UTF-8")), true);
+        } else if (isKeepGoing(config)) {
+            errors = new ErrorReport(new OutputStreamWriter(System.err), false);
+        }
+
+        try {
+            if (config.contains("cacheDirectory")) {
+                //extract changed files, then files that depend on changed types, until nothing changes
+                FactCache cache = new FactCache(new File(config.getString("cacheDirectory")), templateCompiler);
+                List<String> extractFileNames = cache.open(inputFileNames);
+                while (!extractFileNames.isEmpty()) {
+                    if (config.getBoolean("verbose")) {
+                        System.err.println("Extracting " + extractFileNames.size() + " changed files");
+                    }
+                    extractFacts(extractFileNames, batch, threads, initialFile, config, templateCompiler, facts, 
+                            cache, errors, runReport);
+                    extractFileNames = cache.getInvalidatedFileNames();
+                }
+                cache.addFactsTo(facts);
+            } else {
+                extractFacts(inputFileNames, batch, threads, initialFile, config, templateCompiler, facts, 
+                        null, errors, runReport);
+            }
+            if ((errors != null) && (errors.getErrorCount() > 0) && config.contains("errorFile")) {
+                System.err.println("Kept going after " + errors.getErrorCount() + " errors, see " 
+                        + config.getString("errorFile"));
             }
-            
-            JdtCompiler jdtCompiler = new JdtCompiler(inputFileName);
 
-            //don't need to specify folder twice, if parsing whole package
-            if(initialFile.isDirectory()){
-                jdtCompiler.addClasspath(initialFile.getAbsolutePath());
+            measurement = (runReport == null) ? null : runReport.start();
+            ExtractionEvents.Event event = ExtractionEvents.INSTANCE.begin(ExtractionEvents.Kind.WRITE);
+
+            if (config.contains("indexFile")) {
+                OutputStream out = new BufferedOutputStream(
+                        new FileOutputStream(config.getString("indexFile")), OUTPUT_BUFFER_SIZE);
+                try {
+                    facts.writeReachabilityIndexTo(out);
+                } finally {
+                    out.close();
+                }
             }
-            
-            for (String classpathName : config.getStringArray("classpath")) {
-                jdtCompiler.addClasspath(classpathName);
+
+            if (config.contains("queryFile")) {
+                //print the output of the query instead of the facts
+                Reader program = new InputStreamReader(new FileInputStream(config.getString("queryFile")), "UTF-8");
+                try {
+                    new QueryEngine(facts).run(program, writer);
+                } finally {
+                    program.close();
+                }
+            } else if (config.contains("factFile")) {
+                OutputStream out = new BufferedOutputStream(
+                        new FileOutputStream(config.getString("factFile")), OUTPUT_BUFFER_SIZE);
+                try {
+                    facts.writeBinaryTo(out);
+                } finally {
+                    out.close();
+                }
+            } else if (config.contains("outputDirectory")) {
+                facts.writeTo(new File(config.getString("outputDirectory")));
+            } else if (config.contains("neo4jDirectory")) {
+                facts.writeNeo4jTo(new File(config.getString("neo4jDirectory")));
+            } else if (config.contains("jdbcUrl")) {
+                writeToDatabase(facts, config.getString("jdbcUrl"));
+            } else {
+                //print output, merged from all threads and sorted runs
+                facts.writeTo(writer);
             }
 
-            if (config.contains("javaVersion")) {
-                JdtCompiler.SourceLevel sourceLevel = JdtCompiler.SourceLevel.fromString(config.getString("javaVersion"));
-                jdtCompiler.setSourceLevel(sourceLevel);
+            if (event != null) {
+                event.finish(getOutputName(config), inputFileNames.size(), -1, -1);
+            }
+            if (runReport != null) {
+                runReport.stop(measurement, RunReport.Phase.WRITE, null);
+                Writer reportWriter = new OutputStreamWriter(new FileOutputStream(config.getString("reportFile")), "UTF-8");
+                try {
+                    runReport.writeTo(reportWriter, REPORTED_FILES);
+                } finally {
+                    reportWriter.close();
+                }
+            }
+        } finally {
+            facts.close();
+            if (errors != null) {
+                errors.close();
+            }
+            if (daemon == null) {
+                classpathIndex.close();
             }
+        }
+    }
 
-            if (config.contains("encoding")) {
-                Charset charset = Charset.forName(config.getString("encoding"));
-                jdtCompiler.setEncoding(charset);
+    /*
+     * Returns where the output is written, or null for the writer.
+     */
+    private static String getOutputName(JSAPResult config) {
+        for (String output : OUTPUT_OPTIONS) {
+            if (config.contains(output)) {
+                return output.equals("queryFile") ? null : config.getString(output);
             }
+        }
+        return null;
+    }
 
-            //create output
-            CompilationUnitDeclaration unit = jdtCompiler.getResolvedUnit();
-            unit.traverse(new DeclarationVisitor(lines), unit.scope);
-        
+    private static boolean isSupportedDatabase(String jdbcUrl) {
+        for (String prefix : JdbcFactWriter.SUPPORTED_URL_PREFIXES) {
+            if (jdbcUrl.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Writes the facts to the database of a JDBC URL.
+     */
+    private static void writeToDatabase(FactStore facts, String jdbcUrl) throws IOException {
+        Connection connection;
+        try {
+            connection = DriverManager.getConnection(jdbcUrl);
+        } catch (SQLException e) {
+            throw new IOException("Failed to connect to " + jdbcUrl + ": " + e.getMessage(), e);
+        }
+        try {
+            facts.writeTo(connection);
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                throw new IOException("Failed to close the connection to " + jdbcUrl, e);
+            }
+        }
+    }
+
+    /*
+     * Returns the relations to extract.
+     */
+    private static Set<Relation> getRelations(JSAPResult config) {
+        Set<Relation> relations = Relation.getExtracted();
+        if (config.contains("relations")) {
+            relations.clear();
+            for (String relationName : config.getStringArray("relations")) {
+                relations.add(getRelation(relationName));
+            }
+        }
+        if (config.getBoolean("closure") || config.contains("indexFile")) {
+            for (Relation relation : Relation.values()) {
+                if (relation.isDerived()) {
+                    relations.add(relation);
+                }
+            }
+        }
+        if (config.contains("excludedRelations")) {
+            for (String relationName : config.getStringArray("excludedRelations")) {
+                relations.remove(getRelation(relationName));
+            }
+        }
+        if (config.getBoolean("declarationsOnly")) {
+            //the bodies are not parsed
+            Set<Relation> bodyRelations = Relation.getFromBodies();
+            if (config.contains("relations")) {
+                for (String relationName : config.getStringArray("relations")) {
+                    Relation relation = getRelation(relationName);
+                    if (bodyRelations.contains(relation)) {
+                        throw new IllegalArgumentException(relation + " cannot be extracted with --declarations-only.");
+                    }
+                }
+            }
+            relations.removeAll(bodyRelations);
+        }
+        return relations;
+    }
+
+    private static Relation getRelation(String relationName) {
+        try {
+            return Relation.valueOf(relationName.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown relation " + relationName + ", must be one of "
+                    + Arrays.toString(Relation.values()));
+        }
+    }
+
+    /*
+     * Extracts the facts of the input files with the given number of threads. 
+     * If cache is not null, the facts of each unit are stored in the cache 
+     * instead of in facts. If errors is not null, compile errors are reported 
+     * to it and the extraction keeps going. If runReport is not null, the 
+     * phases of each file are measured in it.
+     */
+    private static void extractFacts(List<String> inputFileNames, boolean batch, int threads, File initialFile, 
+            JSAPResult config, JdtCompiler templateCompiler, FactStore facts, FactCache cache, ErrorReport errors,
+            RunReport runReport) throws IOException, CompilationException {
+        //with a batch size the scheduled batches are resolved in dependency order,
+        //in batch mode each thread resolves one share of the files in one session,
+        //otherwise idle threads take the next file
+        List<List<String>> shares = new ArrayList<List<String>>();
+        List<BatchScheduler.Batch> scheduledBatches = null;
+        if (config.contains("batchSize")) {
+            scheduledBatches = new BatchScheduler(templateCompiler.encoding, templateCompiler.sourceLevel)
+                    .schedule(inputFileNames, config.getInt("batchSize"));
+            for (BatchScheduler.Batch scheduledBatch : scheduledBatches) {
+                shares.add(scheduledBatch.fileNames);
+            }
+            if (config.getBoolean("verbose")) {
+                System.err.println("Parsing " + inputFileNames.size() + " files in " + shares.size() + " batches");
+            }
+        } else if (batch) {
+            int shareCount = Math.min(threads, inputFileNames.size());
+            for (int i = 0; i < shareCount; i++) {
+                shares.add(inputFileNames.subList(i * inputFileNames.size() / shareCount,
+                        (i + 1) * inputFileNames.size() / shareCount));
+            }
+        } else {
+            shares.add(inputFileNames);
+        }
+
+        //read the files in the order the threads parse them: the scheduled batches 
+        //one after the other, the shares side by side
+        int ioThreads = config.getInt("ioThreads");
+        SourcePrefetcher sourcePrefetcher = null;
+        if (ioThreads > 0) {
+            List<String> readOrder = new ArrayList<String>();
+            if (scheduledBatches != null) {
+                for (List<String> share : shares) {
+                    readOrder.addAll(share);
+                }
+            }
+            for (int i = 0; readOrder.size() < inputFileNames.size(); i++) {
+                for (List<String> share : shares) {
+                    if (i < share.size()) {
+                        readOrder.add(share.get(i));
+                    }
+                }
+            }
+            sourcePrefetcher = new SourcePrefetcher(readOrder, templateCompiler.encoding, ioThreads, PREFETCH_BYTES);
+        }
+
+        ClasspathIndex classpathIndex = templateCompiler.getClasspathIndex();
+        List<ExtractionTask> tasks = new ArrayList<ExtractionTask>();
+        if (scheduledBatches != null) {
+            //the class files of each batch, for the batches after it
+            Map<String, byte[]> compiledTypes = new ConcurrentHashMap<String, byte[]>();
+            for (BatchScheduler.Batch scheduledBatch : scheduledBatches) {
+                ExtractionTask task = new ExtractionTask(scheduledBatch.fileNames, true, initialFile, config, 
+                        classpathIndex, sourcePrefetcher, facts, cache);
+                task.compiledTypes = compiledTypes;
+                task.sharedFileNames = scheduledBatch.sharedFileNames;
+                for (int dependency : scheduledBatch.dependencies) {
+                    task.dependencies.add(tasks.get(dependency));
+                }
+                tasks.add(task);
+            }
+        } else if (batch) {
+            for (List<String> share : shares) {
+                tasks.add(new ExtractionTask(share, true, initialFile, config, classpathIndex, sourcePrefetcher, 
+                        facts, cache));
+            }
+        } else {
+            for (String inputFileName : inputFileNames) {
+                tasks.add(new ExtractionTask(Collections.singletonList(inputFileName), false, initialFile, config, 
+                        classpathIndex, sourcePrefetcher, facts, cache));
+            }
+        }
+
+        for (ExtractionTask task : tasks) {
+            task.errors = errors;
+            task.runReport = runReport;
+        }
+
+        try {
+            runTasks(tasks, threads);
+        } finally {
+            if (sourcePrefetcher != null) {
+                sourcePrefetcher.close();
+            }
+        }
+    }
+
+    /*
+     * Runs the extraction tasks with the given number of threads. A task
+     * that depends on other tasks must come after them.
+     */
+    private static void runTasks(List<ExtractionTask> tasks, int threads) throws IOException, CompilationException {
+        if (threads == 1) {
+            for (ExtractionTask task : tasks) {
+                task.call();
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> results = new ArrayList<Future<Void>>();
+                for (ExtractionTask task : tasks) {
+                    results.add(executor.submit(task));
+                }
+                for (Future<Void> result : results) {
+                    getResult(result);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /*
+     * Waits for the result of an extraction thread. Rethrows its exception, if it failed.
+     */
+    private static void getResult(Future<?> result) throws IOException, CompilationException {
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for extraction threads.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof CompilationException) {
+                throw (CompilationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /*
+     * Creates a compiler for the input files, configured by the command line arguments.
+     */
+    private static JdtCompiler createCompiler(List<String> inputFileNames, File initialFile, JSAPResult config) {
+        JdtCompiler jdtCompiler = new JdtCompiler(inputFileNames);
+
+        //don't need to specify folder twice, if parsing whole package
+        if(initialFile.isDirectory()){
+            jdtCompiler.addClasspath(initialFile.getAbsolutePath());
+        }
+
+        for (String classpathName : config.getStringArray("classpath")) {
+            jdtCompiler.addClasspath(classpathName);
+        }
+
+        if (config.contains("javaVersion")) {
+            JdtCompiler.SourceLevel sourceLevel = JdtCompiler.SourceLevel.fromString(config.getString("javaVersion"));
+            jdtCompiler.setSourceLevel(sourceLevel);
         }
 
-        //print output
-        for (String line : lines) {
-            System.out.println(line);
+        if (config.contains("release")) {
+            jdtCompiler.setRelease(config.getInt("release"));
         }
-        System.out.flush();
+
+        if (config.contains("encoding")) {
+            Charset charset = Charset.forName(config.getString("encoding"));
+            jdtCompiler.setEncoding(charset);
+        }
+
+        jdtCompiler.setDeclarationsOnly(config.getBoolean("declarationsOnly"));
+        jdtCompiler.setKeepGoing(isKeepGoing(config));
+        return jdtCompiler;
+    }
+
+    private static boolean isKeepGoing(JSAPResult config) {
+        return config.getBoolean("keepGoing") || config.contains("errorFile");
     }
 
     /*
      * Convenience method that creates the JSAP Options object.
      */
-    private static JSAP getOptions() {
+    static JSAP getOptions() {
         JSAP jsap = new JSAP();
 
         try {
@@ -141,7 +697,9 @@ public class Main {
             inputOption.setRequired(true);
             inputOption.setHelp("Set the .java file or directory to create Rsf output from. " +
                     "\nFor a directory, all .java files in the directory will be added, but files " +
-                    "in its subdirectories will not be added.");
+                    "in its subdirectories will not be added. \n@listFile reads the .java files and " +
+                    "directories from listFile, one per line, - reads them from standard input. Then the " +
+                    "directories with the packages must be added with -c.");
             jsap.registerParameter(inputOption);
 
             Switch searchSubdirectories = new Switch("searchSubdirectories");
@@ -150,6 +708,34 @@ public class Main {
                     "in its sudirectories.");
             jsap.registerParameter(searchSubdirectories);
 
+            FlaggedOption includeOption = new FlaggedOption("include");
+            includeOption.setLongFlag("include");
+            includeOption.setAllowMultipleDeclarations(true);
+            includeOption.setHelp("Only add .java files that match a pattern like *Impl.java or " +
+                    "src/main/**. A pattern without a slash matches file names, others match the path " +
+                    "relative to the input directory. \nCan be used multiple times");
+            jsap.registerParameter(includeOption);
+
+            FlaggedOption excludeOption = new FlaggedOption("exclude");
+            excludeOption.setLongFlag("exclude");
+            excludeOption.setAllowMultipleDeclarations(true);
+            excludeOption.setHelp("Do not add files and directories that match a pattern like " +
+                    "target, *Test.java or src/generated. \nCan be used multiple times");
+            jsap.registerParameter(excludeOption);
+
+            FlaggedOption excludeFileOption = new FlaggedOption("excludeFile");
+            excludeFileOption.setLongFlag("exclude-from");
+            excludeFileOption.setAllowMultipleDeclarations(true);
+            excludeFileOption.setHelp("Exclude files and directories with the patterns of a file in " +
+                    ".gitignore format. \nCan be used multiple times");
+            jsap.registerParameter(excludeFileOption);
+
+            Switch gitignore = new Switch("gitignore");
+            gitignore.setLongFlag("gitignore");
+            gitignore.setHelp("Exclude files and directories that are ignored by the .gitignore files " +
+                    "in the input directory and its subdirectories.");
+            jsap.registerParameter(gitignore);
+
             FlaggedOption classpathOption = new FlaggedOption("classpath");
             classpathOption.setShortFlag('c');
             classpathOption.setAllowMultipleDeclarations(true);
@@ -163,12 +749,159 @@ public class Main {
                     "1.1, 1.2, 1.3, 1.4, 1.5 or 1.6, defaults to 1.6");
             jsap.registerParameter(javaVersionOption);
 
+            FlaggedOption releaseOption = new FlaggedOption("release");
+            releaseOption.setLongFlag("release");
+            releaseOption.setStringParser(JSAP.INTEGER_PARSER);
+            releaseOption.setHelp("Use the Java API of an earlier Java release, like 8, instead of " +
+                    "the one of the running Java runtime. Requires Java 9 or later.");
+            jsap.registerParameter(releaseOption);
+
             FlaggedOption encodingOption = new FlaggedOption("encoding");
             encodingOption.setShortFlag('e');
             encodingOption.setHelp("Set the encoding of the .java files, defaults to the system " +
                     "default encoding");
             jsap.registerParameter(encodingOption);
             
+            Switch batch = new Switch("batch");
+            batch.setShortFlag('b');
+            batch.setLongFlag("batch");
+            batch.setHelp("Parse all .java files together in a single compiler session. Every file " +
+                    "is resolved only once, but all abstract syntax trees are kept in memory " +
+                    "at the same time.");
+            jsap.registerParameter(batch);
+
+            FlaggedOption batchSizeOption = new FlaggedOption("batchSize");
+            batchSizeOption.setLongFlag("batch-size");
+            batchSizeOption.setStringParser(JSAP.INTEGER_PARSER);
+            batchSizeOption.setHelp("Parse the .java files in batches of at most this many files, in the " +
+                    "order of their dependencies. Files that depend on each other are parsed in the same " +
+                    "batch. Later batches read the types of earlier ones as compiled classes, so files are " +
+                    "not resolved again and only one batch is kept in memory per thread.");
+            jsap.registerParameter(batchSizeOption);
+
+            Switch declarationsOnly = new Switch("declarationsOnly");
+            declarationsOnly.setLongFlag("declarations-only");
+            declarationsOnly.setHelp("Extract only declarations and signatures, without parsing the bodies " +
+                    "of methods and initializers. Much faster, but CALLS, READS, WRITES, USES and local " +
+                    "and anonymous classes are not extracted.");
+            jsap.registerParameter(declarationsOnly);
+
+            Switch keepGoing = new Switch("keepGoing");
+            keepGoing.setLongFlag("keep-going");
+            keepGoing.setHelp("Keep going after compile errors. The facts are extracted from everything " +
+                    "that resolved, names that failed to resolve become <unresolved>. The errors are " +
+                    "reported as tab separated lines: file, line and message, on standard error by default.");
+            jsap.registerParameter(keepGoing);
+
+            FlaggedOption errorReportOption = new FlaggedOption("errorFile");
+            errorReportOption.setLongFlag("error-report");
+            errorReportOption.setHelp("Write the compile errors to a file instead of standard error. " +
+                    "Implies --keep-going.");
+            jsap.registerParameter(errorReportOption);
+            
+            FlaggedOption sortMemoryOption = new FlaggedOption("sortMemory");
+            sortMemoryOption.setShortFlag('m');
+            sortMemoryOption.setLongFlag("sort-memory");
+            sortMemoryOption.setStringParser(JSAP.INTEGER_PARSER);
+            sortMemoryOption.setHelp("Set the number of megabytes of Rsf output to keep in memory, " +
+                    "defaults to a quarter of the maximum heap size. Output beyond that is sorted " +
+                    "in temporary files.");
+            jsap.registerParameter(sortMemoryOption);
+
+            FlaggedOption cacheOption = new FlaggedOption("cacheDirectory");
+            cacheOption.setLongFlag("cache");
+            cacheOption.setHelp("Keep the output of each .java file in a cache directory. Only files that " +
+                    "changed since the last run, or that depend on changed types, are parsed again.");
+            jsap.registerParameter(cacheOption);
+
+            FlaggedOption queryOption = new FlaggedOption("queryFile");
+            queryOption.setLongFlag("query");
+            queryOption.setHelp("Run an RML program like those of CrocoPat on the facts, and print its " +
+                    "output instead of the facts. All facts are kept in memory.");
+            jsap.registerParameter(queryOption);
+
+            FlaggedOption binaryOption = new FlaggedOption("factFile");
+            binaryOption.setLongFlag("binary");
+            binaryOption.setHelp("Write the facts to a file in a compact binary format instead of " +
+                    "printing Rsf. See BinaryFactReader to read the file or to convert it to Rsf.");
+            jsap.registerParameter(binaryOption);
+
+            FlaggedOption relationsOption = new FlaggedOption("relations");
+            relationsOption.setLongFlag("relations");
+            relationsOption.setList(true);
+            relationsOption.setListSeparator(',');
+            relationsOption.setHelp("Set the relations to extract, separated by commas, for example " +
+                    "EXTENDS,IMPLEMENTS,HAS. Defaults to all relations that are not derived. Parts of the method bodies are " +
+                    "not visited if their relations are not extracted.");
+            jsap.registerParameter(relationsOption);
+
+            FlaggedOption excludedRelationsOption = new FlaggedOption("excludedRelations");
+            excludedRelationsOption.setLongFlag("exclude-relations");
+            excludedRelationsOption.setList(true);
+            excludedRelationsOption.setListSeparator(',');
+            excludedRelationsOption.setHelp("Set relations not to extract, separated by commas, for " +
+                    "example USES,READS.");
+            jsap.registerParameter(excludedRelationsOption);
+
+            FlaggedOption splitOption = new FlaggedOption("outputDirectory");
+            splitOption.setLongFlag("split");
+            splitOption.setHelp("Write the facts of each relation to its own file in a directory, " +
+                    "like CALLS.rsf, instead of printing them.");
+            jsap.registerParameter(splitOption);
+
+            FlaggedOption neo4jOption = new FlaggedOption("neo4jDirectory");
+            neo4jOption.setLongFlag("neo4j");
+            neo4jOption.setHelp("Write the facts to nodes.csv and relationships.csv in a directory, for " +
+                    "the bulk import of Neo4j, instead of printing them. For example: neo4j-admin database " +
+                    "import full --nodes=nodes.csv --relationships=relationships.csv");
+            jsap.registerParameter(neo4jOption);
+
+            FlaggedOption jdbcOption = new FlaggedOption("jdbcUrl");
+            jdbcOption.setLongFlag("jdbc");
+            jdbcOption.setHelp("Write the facts to the database of a JDBC URL like jdbc:sqlite:facts.db " +
+                    "instead of printing them, a table per relation. Only SQLite and PostgreSQL are supported. " +
+                    "The JDBC driver must be on the classpath.");
+            jsap.registerParameter(jdbcOption);
+
+            Switch closure = new Switch("closure");
+            closure.setLongFlag("closure");
+            closure.setHelp("Add the derived relations INHERITS_FROM, the transitive closure of EXTENDS " +
+                    "and IMPLEMENTS, and CALLS_TRANSITIVELY, the transitive closure of CALLS.");
+            jsap.registerParameter(closure);
+
+            FlaggedOption indexOption = new FlaggedOption("indexFile");
+            indexOption.setLongFlag("reachability-index");
+            indexOption.setHelp("Write an index of the derived relations to a file, that tells in constant " +
+                    "time if a fact is in a derived relation. See ReachabilityIndex. Implies --closure.");
+            jsap.registerParameter(indexOption);
+
+            FlaggedOption threadsOption = new FlaggedOption("threads");
+            threadsOption.setShortFlag('t');
+            threadsOption.setLongFlag("threads");
+            threadsOption.setStringParser(JSAP.INTEGER_PARSER);
+            threadsOption.setDefault("1");
+            threadsOption.setHelp("Set the number of threads that parse .java files in parallel, " +
+                    "defaults to 1. The output does not depend on the number of threads.");
+            jsap.registerParameter(threadsOption);
+
+            FlaggedOption ioThreadsOption = new FlaggedOption("ioThreads");
+            ioThreadsOption.setLongFlag("io-threads");
+            ioThreadsOption.setStringParser(JSAP.INTEGER_PARSER);
+            ioThreadsOption.setDefault("4");
+            ioThreadsOption.setHelp("Set the number of threads that read .java files ahead of parsing, " +
+                    "defaults to 4. Reading then overlaps with parsing, which helps on slow disks and " +
+                    "network file systems. 0 reads each file when it is parsed. Directories are also " +
+                    "listed with this many threads.");
+            jsap.registerParameter(ioThreadsOption);
+
+            FlaggedOption runReportOption = new FlaggedOption("reportFile");
+            runReportOption.setLongFlag("run-report");
+            runReportOption.setHelp("Write a report in JSON format to a file: the wall time, CPU time and " +
+                    "allocated bytes of walking directories, reading, parsing, resolving, visiting and " +
+                    "writing, the number of facts emitted per relation before duplicates are removed, " +
+                    "and the files that took the most time and memory.");
+            jsap.registerParameter(runReportOption);
+
             Switch verbose = new Switch("verbose");
             verbose.setShortFlag('v');
             verbose.setHelp("Give feedback about which file is parsed at the moment.");
@@ -180,17 +913,219 @@ public class Main {
     }
 
     /*
-     * Adds .java files to the list of files to be processed.
+     * Returns the .java files to be processed: those in the input file or
+     * directory, or those listed in an @listFile or on standard input.
+     */
+    private static List<String> getInputFiles(JSAPResult config) throws IOException {
+        //directories are listed with the threads that read files
+        SourceWalker walker = new SourceWalker(config.getBoolean("searchSubdirectories"))
+                .setThreads(config.getInt("ioThreads"))
+                .setUseGitignore(config.getBoolean("gitignore"));
+        for (String include : config.getStringArray("include")) {
+            walker.addInclude(include);
+        }
+        for (String exclude : config.getStringArray("exclude")) {
+            walker.addExclude(exclude);
+        }
+        for (String excludeFile : config.getStringArray("excludeFile")) {
+            walker.addIgnoreFile(new File(excludeFile));
+        }
+
+        String inputFile = config.getString("inputFile");
+        if (inputFile.equals("-")) {
+            return walker.walkList(new InputStreamReader(System.in));
+        } else if (inputFile.startsWith("@")) {
+            Reader listReader = new InputStreamReader(new FileInputStream(inputFile.substring(1)));
+            try {
+                return walker.walkList(listReader);
+            } finally {
+                listReader.close();
+            }
+        } else {
+            return walker.walk(new File(inputFile));
+        }
+    }
+
+    /*
+     * Creates the Rsf output for a share of the input files. Each task uses 
+     * its own compiler and adds the facts of each unit to the shared fact
+     * store at once. A task with dependencies waits until they are compiled,
+     * and then reads their types from compiledTypes. If errors is not null, a
+     * file that fails to compile is reported and skipped, and a batch that
+     * fails is extracted file by file.
      */
-    private static void getInputFiles(File file, boolean searchSubdirectories, List<String> inputFileNames) {
-        if (file.isDirectory()) {
-            for (File childFile : file.listFiles()) {
-                if (childFile.isFile() || searchSubdirectories) {
-                    getInputFiles(childFile, searchSubdirectories, inputFileNames);
+    private static class ExtractionTask implements Callable<Void> {
+
+        private List<String> inputFileNames;
+        private boolean batch;
+        private File initialFile;
+        private JSAPResult config;
+        private ClasspathIndex classpathIndex;
+        private SourcePrefetcher sourcePrefetcher;
+        private FactStore facts;
+        private FactCache cache;
+        private Map<String, byte[]> compiledTypes = null;
+        private Set<String> sharedFileNames = Collections.emptySet();
+        private List<ExtractionTask> dependencies = new ArrayList<ExtractionTask>();
+        private final CountDownLatch compiled = new CountDownLatch(1);
+        private ErrorReport errors = null;
+        private RunReport runReport = null;
+
+        ExtractionTask(List<String> inputFileNames, boolean batch, File initialFile, JSAPResult config, 
+                ClasspathIndex classpathIndex, SourcePrefetcher sourcePrefetcher, FactStore facts, FactCache cache) {
+            this.inputFileNames = inputFileNames;
+            this.batch = batch;
+            this.initialFile = initialFile;
+            this.config = config;
+            this.classpathIndex = classpathIndex;
+            this.sourcePrefetcher = sourcePrefetcher;
+            this.facts = facts;
+            this.cache = cache;
+        }
+
+        public Void call() throws IOException, CompilationException {
+            try {
+                awaitDependencies();
+                extract();
+            } finally {
+                compiled.countDown();
+            }
+            return null;
+        }
+
+        private void extract() throws IOException, CompilationException {
+            if (batch) {
+                JdtCompiler jdtCompiler = createCompiler(inputFileNames, initialFile, config)
+                        .setClasspathIndex(classpathIndex)
+                        .setSourcePrefetcher(sourcePrefetcher)
+                        .setRecordDependencies(cache != null)
+                        .setCompiledTypes(compiledTypes, sharedFileNames)
+                        .setRunReport(runReport);
+                List<CompilationUnitDeclaration> units;
+                try {
+                    units = jdtCompiler.getResolvedUnits();
+                } catch (CompilationException e) {
+                    if ((errors == null) || (inputFileNames.size() == 1)) {
+                        throw e;
+                    }
+                    //the files are reported one by one, later tasks read the types from source
+                    compiled.countDown();
+                    batch = false;
+                    extract();
+                    return;
+                }
+                //later tasks only need the compiled types
+                compiled.countDown();
+
+                //bindings are shared by all units of the compilation, so are their names
+                NameUtil names = new NameUtil();
+                for (CompilationUnitDeclaration unit : units) {
+                    extractFacts(unit, names);
+                }
+            } else {
+                for (String inputFileName : inputFileNames) {
+                    if (config.getBoolean("verbose")) {
+                        System.err.println(inputFileName);
+                    }
+
+                    JdtCompiler jdtCompiler = createCompiler(Collections.singletonList(inputFileName), initialFile, config)
+                            .setClasspathIndex(classpathIndex)
+                            .setSourcePrefetcher(sourcePrefetcher)
+                            .setRecordDependencies(cache != null)
+                            .setRunReport(runReport);
+                    CompilationUnitDeclaration unit;
+                    try {
+                        unit = jdtCompiler.getResolvedUnit();
+                    } catch (CompilationException e) {
+                        if (errors == null) {
+                            throw e;
+                        }
+                        errors.add(inputFileName, e);
+                        if (cache != null) {
+                            cache.remove(inputFileName);
+                        }
+                        continue;
+                    }
+                    extractFacts(unit, new NameUtil());
                 }
             }
-        } else if (file.isFile() && file.getName().endsWith(".java")) {
-            inputFileNames.add(file.getAbsolutePath());
+        }
+
+        /*
+         * Waits until the tasks this one depends on are compiled, or failed.
+         */
+        private void awaitDependencies() throws InterruptedIOException {
+            try {
+                for (ExtractionTask dependency : dependencies) {
+                    dependency.compiled.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for an earlier batch.");
+            }
+        }
+
+        /*
+         * Creates the output for a unit. The facts of a unit with errors are 
+         * not cached.
+         */
+        private void extractFacts(CompilationUnitDeclaration unit, NameUtil names) throws IOException {
+            boolean hasErrors = false;
+            if (errors != null) {
+                String fileName = new String(unit.getFileName());
+                for (CompilationException error : JdtCompiler.getErrors(unit)) {
+                    errors.add(fileName, error);
+                }
+                hasErrors = unit.compilationResult.hasErrors();
+                if (hasErrors && (cache != null)) {
+                    cache.remove(fileName);
+                }
+            }
+
+            if ((cache == null) || hasErrors) {
+                //collect the facts of the unit without locking, the shared store is locked once per unit
+                FactStore unitFacts = facts.createUnitStore();
+                traverse(unit, unitFacts, names);
+                facts.addAll(unitFacts);
+                facts.spillIfOverBudget();
+            } else {
+                //keep the facts of each unit apart for its cache entry, with all relations
+                FactStore unitFacts = new FactStore(Long.MAX_VALUE, null);
+                traverse(unit, unitFacts, names);
+                cache.put(unit, unitFacts);
+            }
+        }
+
+        /*
+         * Visits a unit. If errors is not null, a visitor that fails on a 
+         * binding the compiler left broken is reported, and the facts found 
+         * until then are kept.
+         */
+        private void traverse(CompilationUnitDeclaration unit, FactSink sink, NameUtil names) throws IOException {
+            String fileName = new String(unit.getFileName());
+            ExtractionEvents.Event event = ExtractionEvents.INSTANCE.begin(ExtractionEvents.Kind.VISIT);
+            RunReport.Measurement measurement = null;
+            if ((runReport != null) || (event != null)) {
+                sink = new CountingFactSink(sink);
+            }
+            if (runReport != null) {
+                measurement = runReport.start();
+            }
+            try {
+                unit.traverse(new DeclarationVisitor(sink, names, config.getBoolean("declarationsOnly")), unit.scope);
+            } catch (RuntimeException e) {
+                if (errors == null) {
+                    throw e;
+                }
+                errors.add(fileName, -1, "Failed to extract facts: " + e);
+            }
+            if (runReport != null) {
+                runReport.stop(measurement, RunReport.Phase.VISIT, fileName);
+                runReport.addEmittedFacts(fileName, ((CountingFactSink) sink).getCounts());
+            }
+            if (event != null) {
+                event.finish(fileName, 1, ExtractionEvents.getSourceChars(unit), ((CountingFactSink) sink).getTotal());
+            }
         }
     }
 }
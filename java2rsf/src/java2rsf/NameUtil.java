@@ -1,6 +1,11 @@
 package java2rsf;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
 import org.eclipse.jdt.internal.compiler.ast.ASTNode;
+import org.eclipse.jdt.internal.compiler.ast.AbstractMethodDeclaration;
+import org.eclipse.jdt.internal.compiler.ast.AllocationExpression;
+import org.eclipse.jdt.internal.compiler.ast.Argument;
 import org.eclipse.jdt.internal.compiler.ast.ArrayReference;
 import org.eclipse.jdt.internal.compiler.ast.FieldDeclaration;
 import org.eclipse.jdt.internal.compiler.ast.FieldReference;
@@ -8,8 +13,10 @@ import org.eclipse.jdt.internal.compiler.ast.MessageSend;
 import org.eclipse.jdt.internal.compiler.ast.NameReference;
 import org.eclipse.jdt.internal.compiler.ast.QualifiedNameReference;
 import org.eclipse.jdt.internal.compiler.ast.Statement;
+import org.eclipse.jdt.internal.compiler.ast.TypeDeclaration;
 import org.eclipse.jdt.internal.compiler.lookup.ArrayBinding;
 import org.eclipse.jdt.internal.compiler.lookup.Binding;
+import org.eclipse.jdt.internal.compiler.lookup.LocalTypeBinding;
 import org.eclipse.jdt.internal.compiler.lookup.MethodBinding;
 import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
 
@@ -17,14 +24,26 @@ import org.eclipse.jdt.internal.compiler.lookup.TypeBinding;
  * A helper class for the visitors. Used to create unique names for
  * types, methods and fields.
  * 
+ * <p>The names of types and methods are cached by binding. Bindings are only 
+ * unique within a compilation, so use one instance per compilation. Instances 
+ * are not thread-safe.</p>
+ * 
+ * <p>Bindings that failed to resolve are named {@link #UNRESOLVED}. They only 
+ * occur if the compiler keeps going after errors.</p>
+ * 
  */
 class NameUtil {
 
-    /*
-     * Do not instantiate.
+    /**
+     * The name of types and methods whose bindings failed to resolve.
      */
-    private NameUtil() {
-    }
+    static final String UNRESOLVED = "<unresolved>";
+
+    private Map<TypeBinding, String> typeNames = new IdentityHashMap<TypeBinding, String>();
+    private Map<MethodBinding, String> methodNames = new IdentityHashMap<MethodBinding, String>();
+    private Map<TypeBinding, Map<MethodBinding, String>> receiverMethodNames = 
+            new IdentityHashMap<TypeBinding, Map<MethodBinding, String>>();
+    private StringBuilder nameBuilder = new StringBuilder();
 
     /**
      * Returns a unique name for a type.
@@ -32,20 +51,28 @@ class NameUtil {
      * <p>For anonymous and local types the returned name may not be the 
      * same as the name of the <code>.class</code> files of these classes.</p>
      * 
-     * @param typeBinding the binding to be named
+     * @param typeBinding the binding to be named, may be <code>null</code> if it failed to resolve
      * @return a unique name for <code>typeBinding</code>
      */
-    static String getTypeName(TypeBinding typeBinding) {
-        //int, boolean, etc.
-        if (typeBinding.isBaseType()) {
-            return new String(typeBinding.readableName());
+    String getTypeName(TypeBinding typeBinding) {
+        if ((typeBinding == null) || !typeBinding.isValidBinding()) {
+            return UNRESOLVED;
         }
-
-        if (typeBinding.isArrayType()) {
-            return getTypeName(((ArrayBinding) typeBinding).elementsType()) + "[]";
+        String typeName = typeNames.get(typeBinding);
+        if (typeName == null) {
+            //int, boolean, etc.
+            if (typeBinding.isBaseType()) {
+                typeName = new String(typeBinding.readableName());
+            } else if (typeBinding.isArrayType()) {
+                typeName = getTypeName(((ArrayBinding) typeBinding).elementsType()) + "[]";
+            } else if (isUnnamedLocalType(typeBinding)) {
+                typeName = UNRESOLVED;
+            } else {
+                typeName = new String(typeBinding.constantPoolName()).replace('/', '.');
+            }
+            typeNames.put(typeBinding, typeName);
         }
-
-        return new String(typeBinding.constantPoolName()).replace('/', '.');
+        return typeName;
     }
 
     /**
@@ -56,35 +83,57 @@ class NameUtil {
      * @param statement the expression to test for a field access
      * @return a unique name for the field or <code>null</code> if no field access is found
      */
-    static String findFieldName(Statement statement) {
+    String findFieldName(Statement statement) {
         if (statement instanceof FieldDeclaration) {
             FieldDeclaration fieldDeclaration = (FieldDeclaration) statement;
-            String shortName = new String(fieldDeclaration.name);
-            return getTypeName(fieldDeclaration.binding.declaringClass) + "#" + shortName;
+            if (fieldDeclaration.binding == null) {
+                return null;
+            }
+            return getFieldName(fieldDeclaration.binding.declaringClass, fieldDeclaration.name);
         } else if (statement instanceof ArrayReference) {
             return findFieldName(((ArrayReference) statement).receiver);
         } else if (statement instanceof FieldReference) {
             FieldReference fieldReference = (FieldReference) statement;
-            String shortName = new String(fieldReference.token);
-            return getTypeName(fieldReference.receiverType) + "#" + shortName;
+            return getFieldName(fieldReference.receiverType, fieldReference.token);
         } else if (statement instanceof NameReference) {
             NameReference nameReference = (NameReference) statement;
-            if (nameReference.binding.kind() == Binding.FIELD) {
-                String shortName = new String(nameReference.binding.readableName());
-                return getTypeName(nameReference.actualReceiverType) + "#" + shortName;
+            if ((nameReference.binding != null) && (nameReference.binding.kind() == Binding.FIELD)) {
+                return getFieldName(nameReference.actualReceiverType, nameReference.binding.readableName());
             }
         }
         return null;
     }
 
+    /**
+     * Returns a unique name for a field, assuming that it is declared in 
+     * the type <code>typeBinding</code>.
+     * 
+     * @param typeBinding the declaring type of the field
+     * @param shortName the name of the field
+     * @return a unique name for the field
+     */
+    String getFieldName(TypeBinding typeBinding, char[] shortName) {
+        nameBuilder.setLength(0);
+        nameBuilder.append(getTypeName(typeBinding)).append('#').append(shortName);
+        return nameBuilder.toString();
+    }
+
     /**
      * Returns a unique name for this method.
      * 
-     * @param methodBinding the method
+     * @param methodBinding the method, may be <code>null</code> if it failed to resolve
      * @return a unique name for the method
      */
-    static String getMethodName(MethodBinding methodBinding) {
-        return getMethodName(methodBinding, methodBinding.declaringClass);
+    String getMethodName(MethodBinding methodBinding) {
+        if ((methodBinding == null) || !methodBinding.isValidBinding()) {
+            return UNRESOLVED;
+        }
+        String methodName = methodNames.get(methodBinding);
+        if (methodName == null) {
+            methodName = createMethodName(methodBinding, methodBinding.declaringClass);
+            methodNames.put(methodBinding, methodName);
+        }
+        return methodName;
     }
 
     /**
@@ -95,41 +144,119 @@ class NameUtil {
      * @param typeBinding the declaring type of the method
      * @return a unique name for <code>methodBinding</code>
      */
-    static String getMethodName(MethodBinding methodBinding, TypeBinding typeBinding) {
-        String typeName = getTypeName(typeBinding);
-        String methodName = typeName + "#";
+    String getMethodName(MethodBinding methodBinding, TypeBinding typeBinding) {
+        if ((methodBinding == null) || !methodBinding.isValidBinding()) {
+            return UNRESOLVED;
+        }
+        if (typeBinding == methodBinding.declaringClass) {
+            return getMethodName(methodBinding);
+        }
+
+        Map<MethodBinding, String> names = receiverMethodNames.get(typeBinding);
+        if (names == null) {
+            names = new IdentityHashMap<MethodBinding, String>();
+            receiverMethodNames.put(typeBinding, names);
+        }
+        String methodName = names.get(methodBinding);
+        if (methodName == null) {
+            methodName = createMethodName(methodBinding, typeBinding);
+            names.put(methodBinding, methodName);
+        }
+        return methodName;
+    }
+
+    /**
+     * Returns a unique name for a declared method whose binding failed to 
+     * resolve, because the type of a parameter, the return type or a thrown
+     * type did. Parameter types that failed to resolve are named 
+     * {@link #UNRESOLVED}.
+     * 
+     * @param methodDeclaration the declaration of the method
+     * @param typeBinding the declaring type of the method
+     * @return a unique name for the method
+     */
+    String getMethodName(AbstractMethodDeclaration methodDeclaration, TypeBinding typeBinding) {
+        nameBuilder.setLength(0);
+        nameBuilder.append(getTypeName(typeBinding)).append('#');
+        if (methodDeclaration.isConstructor()) {
+            nameBuilder.append("<init>");
+        } else {
+            nameBuilder.append(methodDeclaration.selector);
+        }
+        nameBuilder.append('(');
+        if (methodDeclaration.arguments != null) {
+            boolean isFirstArgument = true;
+            for (Argument argument : methodDeclaration.arguments) {
+                if (!isFirstArgument) {
+                    nameBuilder.append(',');
+                }
+                isFirstArgument = false;
+                nameBuilder.append(getTypeName(argument.type.resolvedType));
+            }
+        }
+        nameBuilder.append(')');
+        return nameBuilder.toString();
+    }
+
+    /*
+     * Creates the name of a method declared in typeBinding.
+     */
+    private String createMethodName(MethodBinding methodBinding, TypeBinding typeBinding) {
+        nameBuilder.setLength(0);
+        nameBuilder.append(getTypeName(typeBinding)).append('#');
         if (methodBinding.isConstructor()) {
-            methodName += "<init>(";
+            nameBuilder.append("<init>");
         } else {
-            methodName += new String(methodBinding.selector) + "(";
+            nameBuilder.append(methodBinding.selector);
         }
+        nameBuilder.append('(');
         if (methodBinding.parameters != null) {
             boolean isFirstArgument = true;
             for (TypeBinding parameterBinding : methodBinding.parameters) {
                 if (!isFirstArgument) {
-                    methodName += ",";
+                    nameBuilder.append(',');
                 }
                 isFirstArgument = false;
-                methodName += getTypeName(parameterBinding);
+                nameBuilder.append(getTypeName(parameterBinding));
             }
         }
-        methodName += ")";
-
-        return methodName;
+        nameBuilder.append(')');
+        return nameBuilder.toString();
     }
 
     /**
      * Returns <code>true</code>, if a node in the parse tree is unreachable.
+     *
+     * <p>Local types are only named in reachable code, so local types in 
+     * unreachable code and their allocations count as unreachable, too. So do
+     * types that failed to resolve.</p>
      * 
      * @param astNode a node in the parse tree
-     * @return whether <code>astNode</code> isun reachable
+     * @return whether <code>astNode</code> is unreachable
      */
     static boolean isUnreachable(ASTNode astNode) {
-        //an unresolved message invocation, only happens in unreachable code
+        //an unresolved message invocation, only happens in unreachable code or after errors
         if ((astNode instanceof MessageSend) && (((MessageSend) astNode).codegenBinding == null)) {
             return true;
         }
+        if (astNode instanceof TypeDeclaration) {
+            TypeDeclaration typeDeclaration = (TypeDeclaration) astNode;
+            if ((typeDeclaration.binding == null) || isUnnamedLocalType(typeDeclaration.binding)) {
+                return true;
+            }
+        }
+        if ((astNode instanceof AllocationExpression) && (((AllocationExpression) astNode).binding != null)
+                && isUnnamedLocalType(((AllocationExpression) astNode).binding.declaringClass)) {
+            return true;
+        }
 
         return (astNode.bits & ASTNode.IsReachable) == 0;
     }
+
+    /*
+     * Flow analysis names local types, but not those in unreachable code.
+     */
+    private static boolean isUnnamedLocalType(TypeBinding typeBinding) {
+        return (typeBinding instanceof LocalTypeBinding) && (typeBinding.constantPoolName() == null);
+    }
 }
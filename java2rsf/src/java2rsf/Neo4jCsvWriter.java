@@ -0,0 +1,128 @@
+package java2rsf;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes sorted Rsf lines as the CSV files of the Neo4j bulk import,
+ * <code>nodes.csv</code> and <code>relationships.csv</code>.
+ *
+ * <p>Every entity becomes a node with the label <code>Entity</code>, its name
+ * is the id of the node. Facts with one argument, like <code>CLASS a.B</code>,
+ * become more labels of their node. Facts with two arguments become
+ * relationships with the relation as type. The relationships are written
+ * as the lines arrive, the nodes at the end. So the names of the entities and
+ * their labels are kept in memory.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+final class Neo4jCsvWriter implements ExternalSorter.LineWriter {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String NODE_LABEL = "Entity";
+    private static final String NODES_FILE_NAME = "nodes.csv";
+    private static final String RELATIONSHIPS_FILE_NAME = "relationships.csv";
+
+    private File directory;
+    private Writer relationshipsWriter;
+    //labels by name, as bits of the relation ordinals
+    private Map<String, Integer> nodeLabels = new HashMap<String, Integer>();
+    private Relation[] relations = Relation.values();
+
+    /*
+     * Creates the relationships file in directory.
+     */
+    Neo4jCsvWriter(File directory) throws IOException {
+        this.directory = directory;
+        relationshipsWriter = open(RELATIONSHIPS_FILE_NAME);
+        relationshipsWriter.write(":START_ID,:END_ID,:TYPE\n");
+    }
+
+    public void writeLine(String line) throws IOException {
+        int firstTab = line.indexOf('\t');
+        int secondTab = line.indexOf('\t', firstTab + 1);
+        String relation = line.substring(0, firstTab);
+        if (secondTab == -1) {
+            String name = line.substring(firstTab + 1);
+            Integer labels = nodeLabels.get(name);
+            int relationBit = 1 << Relation.valueOf(relation).ordinal();
+            nodeLabels.put(name, (labels == null) ? relationBit : (labels | relationBit));
+            return;
+        }
+
+        String name1 = line.substring(firstTab + 1, secondTab);
+        String name2 = line.substring(secondTab + 1);
+        addNode(name1);
+        addNode(name2);
+        writeField(relationshipsWriter, name1);
+        relationshipsWriter.write(',');
+        writeField(relationshipsWriter, name2);
+        relationshipsWriter.write(',');
+        relationshipsWriter.write(relation);
+        relationshipsWriter.write('\n');
+    }
+
+    /*
+     * Writes the nodes, sorted by name, and closes the files.
+     */
+    void finish() throws IOException {
+        relationshipsWriter.close();
+
+        String[] names = nodeLabels.keySet().toArray(new String[nodeLabels.size()]);
+        Arrays.sort(names);
+        Writer nodesWriter = open(NODES_FILE_NAME);
+        try {
+            nodesWriter.write("name:ID,:LABEL\n");
+            for (String name : names) {
+                writeField(nodesWriter, name);
+                nodesWriter.write(',');
+                nodesWriter.write(NODE_LABEL);
+                int labels = nodeLabels.get(name);
+                for (Relation relation : relations) {
+                    if ((labels & (1 << relation.ordinal())) != 0) {
+                        nodesWriter.write(';');
+                        nodesWriter.write(relation.name());
+                    }
+                }
+                nodesWriter.write('\n');
+            }
+        } finally {
+            nodesWriter.close();
+        }
+        nodeLabels = null;
+    }
+
+    /*
+     * Closes the files after a failure.
+     */
+    void close() throws IOException {
+        relationshipsWriter.close();
+    }
+
+    private void addNode(String name) {
+        if (!nodeLabels.containsKey(name)) {
+            nodeLabels.put(name, 0);
+        }
+    }
+
+    private Writer open(String fileName) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(directory, fileName)), BinaryFactWriter.UTF_8), BUFFER_SIZE);
+    }
+
+    /*
+     * Writes a quoted field, quotes in the field are doubled.
+     */
+    private static void writeField(Writer writer, String field) throws IOException {
+        writer.write('"');
+        writer.write(field.indexOf('"') == -1 ? field : field.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,287 @@
+package java2rsf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The packages and types of the module image of a Java 9 or later runtime,
+ * as found in the <code>jrt:/</code> file system.
+ *
+ * <p>Listing the module image takes much longer than a typical compilation,
+ * so the index is stored in a file and mapped into memory on later runs.
+ * The file starts with a table of all packages and their modules. The types
+ * of a package are stored in a block of their own, which is only decoded
+ * when the package is first requested.</p>
+ *
+ * <p>The file is stored per runtime in <code>user.home/.java2rsf</code>. If it
+ * cannot be written, the index is kept in memory only.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+final class PlatformIndex {
+
+    private static final int MAGIC = 0x4A325246;
+    private static final int FORMAT = 1;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final ByteBuffer buffer;
+    //module per package, offset of the type block per package that has types
+    private final Map<String, String> modules = new HashMap<String, String>();
+    private final Map<String, Integer> typeOffsets = new HashMap<String, Integer>();
+    private final ConcurrentMap<String, Set<String>> types = new ConcurrentHashMap<String, Set<String>>();
+
+    private PlatformIndex(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /*
+     * Opens the stored index of the running Java runtime, or creates it from
+     * the module image if there is no up to date index.
+     */
+    static PlatformIndex open(FileSystem jrt) throws IOException {
+        String key = System.getProperty("java.home") + File.pathSeparator + System.getProperty("java.version");
+        File directory = new File(System.getProperty("user.home"), ".java2rsf");
+        File file = new File(directory, "platform-" + Integer.toHexString(key.hashCode()) + ".idx");
+
+        if (file.isFile()) {
+            PlatformIndex index = new PlatformIndex(map(file));
+            if (index.readHeader(key)) {
+                return index;
+            }
+        }
+
+        byte[] bytes = write(key, scan(jrt));
+        PlatformIndex index = new PlatformIndex(ByteBuffer.wrap(bytes));
+        index.readHeader(key);
+        store(bytes, directory, file);
+        return index;
+    }
+
+    /*
+     * Returns whether a package like "java/lang" exists, also if it only
+     * contains other packages.
+     */
+    boolean isPackage(String qualifiedPackageName) {
+        return modules.containsKey(qualifiedPackageName);
+    }
+
+    /*
+     * Returns the module of a package, or null if the package has no types.
+     */
+    String getModule(String qualifiedPackageName) {
+        return (typeOffsets.get(qualifiedPackageName) == null) ? null : modules.get(qualifiedPackageName);
+    }
+
+    /*
+     * Returns whether a package contains a class file for a type like "Map$Entry".
+     */
+    boolean containsType(String qualifiedPackageName, String typeName) {
+        Set<String> packageTypes = types.get(qualifiedPackageName);
+        if (packageTypes == null) {
+            Integer offset = typeOffsets.get(qualifiedPackageName);
+            if (offset == null) {
+                return false;
+            }
+            packageTypes = readTypes(offset);
+            types.putIfAbsent(qualifiedPackageName, packageTypes);
+        }
+        return packageTypes.contains(typeName);
+    }
+
+    /*
+     * Reads the package table. Returns false if the index belongs to another
+     * runtime or format.
+     */
+    private boolean readHeader(String key) {
+        ByteBuffer in = buffer.duplicate();
+        try {
+            if ((in.getInt() != MAGIC) || (in.getInt() != FORMAT) || !key.equals(readString(in))) {
+                return false;
+            }
+            int packageCount = in.getInt();
+            for (int i = 0; i < packageCount; i++) {
+                String packageName = readString(in);
+                modules.put(packageName, readString(in));
+                int offset = in.getInt();
+                if (offset != -1) {
+                    typeOffsets.put(packageName, offset);
+                }
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            //a truncated file
+            modules.clear();
+            typeOffsets.clear();
+            return false;
+        }
+    }
+
+    private Set<String> readTypes(int offset) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(offset);
+        int typeCount = in.getInt();
+        Set<String> packageTypes = new HashSet<String>();
+        for (int i = 0; i < typeCount; i++) {
+            packageTypes.add(readString(in));
+        }
+        return packageTypes;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /*
+     * Lists the types of all modules, mapped by module and package.
+     */
+    private static SortedMap<String, SortedMap<String, Set<String>>> scan(FileSystem jrt) throws IOException {
+        final SortedMap<String, SortedMap<String, Set<String>>> typesByModule = new TreeMap<String, SortedMap<String, Set<String>>>();
+        DirectoryStream<Path> moduleDirectories = Files.newDirectoryStream(jrt.getPath("/modules"));
+        try {
+            for (final Path moduleDirectory : moduleDirectories) {
+                final SortedMap<String, Set<String>> typesByPackage = new TreeMap<String, Set<String>>();
+                typesByModule.put(moduleDirectory.getFileName().toString(), typesByPackage);
+                Files.walkFileTree(moduleDirectory, new SimpleFileVisitor<Path>() {
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        String fileName = file.getFileName().toString();
+                        //module-info.class is not a type
+                        if (fileName.endsWith(CLASS_SUFFIX) && (fileName.indexOf('-') == -1)) {
+                            String packageName = moduleDirectory.relativize(file.getParent()).toString();
+                            Set<String> packageTypes = typesByPackage.get(packageName);
+                            if (packageTypes == null) {
+                                packageTypes = new TreeSet<String>();
+                                typesByPackage.put(packageName, packageTypes);
+                            }
+                            packageTypes.add(fileName.substring(0, fileName.length() - CLASS_SUFFIX.length()));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } finally {
+            moduleDirectories.close();
+        }
+        return typesByModule;
+    }
+
+    /*
+     * Encodes the index. Parent packages without types of their own are
+     * added to the package table with offset -1.
+     */
+    private static byte[] write(String key, SortedMap<String, SortedMap<String, Set<String>>> typesByModule) throws IOException {
+        Map<String, String> modulesByPackage = new TreeMap<String, String>();
+        for (Map.Entry<String, SortedMap<String, Set<String>>> module : typesByModule.entrySet()) {
+            for (String packageName : module.getValue().keySet()) {
+                modulesByPackage.put(packageName, module.getKey());
+                for (int slash = packageName.indexOf('/'); slash != -1; slash = packageName.indexOf('/', slash + 1)) {
+                    if (!modulesByPackage.containsKey(packageName.substring(0, slash))) {
+                        modulesByPackage.put(packageName.substring(0, slash), "");
+                    }
+                }
+            }
+        }
+
+        //the type blocks follow the package table, their offsets are known after it is written
+        ByteArrayOutputStream typeBytes = new ByteArrayOutputStream();
+        DataOutputStream typeOut = new DataOutputStream(typeBytes);
+        Map<String, Integer> relativeOffsets = new HashMap<String, Integer>();
+        for (SortedMap<String, Set<String>> typesByPackage : typesByModule.values()) {
+            for (Map.Entry<String, Set<String>> packageTypes : typesByPackage.entrySet()) {
+                relativeOffsets.put(packageTypes.getKey(), typeOut.size());
+                typeOut.writeInt(packageTypes.getValue().size());
+                for (String typeName : packageTypes.getValue()) {
+                    writeString(typeOut, typeName);
+                }
+            }
+        }
+
+        ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+        DataOutputStream tableOut = new DataOutputStream(tableBytes);
+        tableOut.writeInt(MAGIC);
+        tableOut.writeInt(FORMAT);
+        writeString(tableOut, key);
+        tableOut.writeInt(modulesByPackage.size());
+        //each package takes two strings with their length and an offset
+        int tableSize = tableOut.size();
+        for (Map.Entry<String, String> packageModule : modulesByPackage.entrySet()) {
+            tableSize += 8 + packageModule.getKey().getBytes(UTF_8).length + packageModule.getValue().getBytes(UTF_8).length;
+        }
+        for (Map.Entry<String, String> packageModule : modulesByPackage.entrySet()) {
+            writeString(tableOut, packageModule.getKey());
+            writeString(tableOut, packageModule.getValue());
+            Integer relativeOffset = relativeOffsets.get(packageModule.getKey());
+            tableOut.writeInt((relativeOffset == null) ? -1 : tableSize + relativeOffset);
+        }
+        typeBytes.writeTo(tableOut);
+        return tableBytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /*
+     * Stores the index file, replaces an outdated one. Failures are ignored,
+     * the index is then created again on the next run.
+     */
+    private static void store(byte[] bytes, File directory, File file) {
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        try {
+            directory.mkdirs();
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            //the mapping stays valid after the file is closed
+            randomAccessFile.close();
+        }
+    }
+}
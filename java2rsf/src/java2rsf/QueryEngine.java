@@ -0,0 +1,600 @@
+package java2rsf;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java2rsf.RmlParser.And;
+import java2rsf.RmlParser.Assignment;
+import java2rsf.RmlParser.Atom;
+import java2rsf.RmlParser.Condition;
+import java2rsf.RmlParser.Equality;
+import java2rsf.RmlParser.Exists;
+import java2rsf.RmlParser.Fact;
+import java2rsf.RmlParser.Formula;
+import java2rsf.RmlParser.If;
+import java2rsf.RmlParser.Not;
+import java2rsf.RmlParser.Or;
+import java2rsf.RmlParser.Print;
+import java2rsf.RmlParser.PrintItem;
+import java2rsf.RmlParser.Statement;
+import java2rsf.RmlParser.Term;
+import java2rsf.RmlParser.TransitiveClosure;
+import java2rsf.RmlParser.While;
+
+/**
+ * Runs relational programs like those of CrocoPat directly on the facts of a
+ * {@link FactStore}, without writing and reading Rsf. See {@link RmlParser}
+ * for the supported language, and <code>examples/rml programs</code> for
+ * example programs.
+ *
+ * <p>Relations are tables of symbol ids. A formula is evaluated in the
+ * context of the variables that are already bound: a conjunction evaluates
+ * the operands that share bound variables first, so that relations are
+ * joined with hash indices and negations become filters. Only variables
+ * that are not bound otherwise range over the universe of all symbols.</p>
+ *
+ * <p>The output has the format of CrocoPat: each row of a printed relation
+ * is one line, with the prefix and every value followed by a tab. The rows
+ * are sorted by their values.</p>
+ */
+public class QueryEngine {
+
+    private static final String TRUE = "TRUE";
+    private static final String FALSE = "FALSE";
+
+    private final SymbolTable symbols;
+    private final Map<String, Table> relations = new HashMap<String, Table>();
+    private Table universe = null;
+    private int freshVariableCount = 0;
+
+    /**
+     * Creates a new engine for the facts in a store. The facts must all be
+     * in memory, so the store must not have written sorted runs.
+     *
+     * @param facts the facts to run programs on
+     */
+    public QueryEngine(FactStore facts) {
+        if (facts == null) {
+            throw new NullPointerException("Parameter facts may not be null.");
+        }
+        this.symbols = facts.getSymbols();
+        relations.putAll(facts.toTables());
+    }
+
+    /**
+     * Runs a program and writes its output.
+     *
+     * @param program the text of the program
+     * @param writer the writer for the output
+     * @throws IOException in case reading the program or writing the output fails
+     * @throws QueryException in case the program is invalid
+     */
+    public void run(Reader program, Writer writer) throws IOException, QueryException {
+        Set<String> constants = new LinkedHashSet<String>();
+        List<Statement> statements = RmlParser.parse(program, constants);
+        //constants are part of the universe
+        for (String constant : constants) {
+            symbols.getId(constant);
+        }
+        universe = null;
+        execute(statements, writer);
+        writer.flush();
+    }
+
+    private void execute(List<Statement> statements, Writer writer) throws IOException, QueryException {
+        for (Statement statement : statements) {
+            if (statement instanceof Assignment) {
+                Assignment assignment = (Assignment) statement;
+                Table table = evaluate(assignment.formula, Table.unit());
+                relations.put(assignment.relation, project(pad(table, assignment.parameters), assignment.parameters));
+            } else if (statement instanceof Fact) {
+                Fact fact = (Fact) statement;
+                Table table = relations.get(fact.relation);
+                if (table == null) {
+                    table = new Table(positionalColumns(fact.values.length));
+                    relations.put(fact.relation, table);
+                } else if (table.getArity() != fact.values.length) {
+                    throw new QueryException("Wrong number of values for " + fact.relation + ".", fact.line);
+                }
+                int[] row = new int[fact.values.length];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = symbols.getId(fact.values[i]);
+                }
+                table.add(row);
+            } else if (statement instanceof Print) {
+                for (PrintItem item : ((Print) statement).items) {
+                    if (item.text != null) {
+                        writer.write(item.text);
+                    } else {
+                        print(item, writer);
+                    }
+                }
+            } else if (statement instanceof While) {
+                While loop = (While) statement;
+                while (isTrue(loop.condition)) {
+                    execute(loop.body, writer);
+                }
+            } else {
+                If branch = (If) statement;
+                execute(isTrue(branch.condition) ? branch.thenBlock : branch.elseBlock, writer);
+            }
+        }
+    }
+
+    /*
+     * Returns whether two relations are equal or different, or whether a
+     * single relation is not empty.
+     */
+    private boolean isTrue(Condition condition) throws QueryException {
+        Table left = evaluate(condition.left, Table.unit());
+        if (condition.right == null) {
+            return !left.isEmpty();
+        }
+        Table right = evaluate(condition.right, Table.unit());
+        Set<String> leftColumns = new LinkedHashSet<String>(Arrays.asList(left.getColumns()));
+        if (!leftColumns.equals(new LinkedHashSet<String>(Arrays.asList(right.getColumns())))) {
+            throw new QueryException("Compared relations must have the same free variables.", -1);
+        }
+        right = project(right, left.getColumns());
+        boolean equal = left.size() == right.size();
+        int[] row = new int[left.getArity()];
+        for (int i = 0; equal && (i < left.size()); i++) {
+            left.getRow(i, row);
+            equal = right.contains(row);
+        }
+        return equal == condition.equal;
+    }
+
+    /*
+     * Prints the rows of a formula, sorted by their values.
+     */
+    private void print(PrintItem item, Writer writer) throws IOException, QueryException {
+        final Table table = evaluate(item.formula, Table.unit());
+        final int[] ranks = symbols.getRanks();
+        Integer[] rows = new Integer[table.size()];
+        for (int row = 0; row < rows.length; row++) {
+            rows[row] = row;
+        }
+        Arrays.sort(rows, new Comparator<Integer>() {
+
+            public int compare(Integer row1, Integer row2) {
+                for (int column = 0; column < table.getArity(); column++) {
+                    int difference = ranks[table.get(row1, column)] - ranks[table.get(row2, column)];
+                    if (difference != 0) {
+                        return difference;
+                    }
+                }
+                return 0;
+            }
+        });
+
+        String lineSeparator = System.getProperty("line.separator");
+        for (int row : rows) {
+            if (item.prefix != null) {
+                writer.write(item.prefix);
+                writer.write('\t');
+            }
+            for (int column = 0; column < table.getArity(); column++) {
+                writer.write(symbols.getName(table.get(row, column)));
+                writer.write('\t');
+            }
+            writer.write(lineSeparator);
+        }
+    }
+
+    /*
+     * Evaluates a formula in a context. Returns the rows of the context
+     * extended by the values of the free variables of the formula that make
+     * it true. The columns are those of the context, followed by the new
+     * free variables.
+     */
+    private Table evaluate(Formula formula, Table context) throws QueryException {
+        if (formula instanceof Atom) {
+            return evaluateAtom((Atom) formula, context);
+        }
+        if (formula instanceof Equality) {
+            return evaluateEquality((Equality) formula, context);
+        }
+        if (formula instanceof And) {
+            return evaluateAnd((And) formula, context);
+        }
+        if (formula instanceof Or) {
+            Or or = (Or) formula;
+            String[] columns = union(context.getColumns(), formula.freeVariables);
+            Table result = project(pad(evaluate(or.left, context), columns), columns);
+            Table right = project(pad(evaluate(or.right, context), columns), columns);
+            int[] row = new int[columns.length];
+            for (int i = 0; i < right.size(); i++) {
+                right.getRow(i, row);
+                result.add(row);
+            }
+            return result;
+        }
+        if (formula instanceof Not) {
+            //unbound variables of a negation range over the universe
+            Table padded = pad(context, union(context.getColumns(), formula.freeVariables));
+            Table matches = evaluate(((Not) formula).operand, padded);
+            Table result = new Table(padded.getColumns());
+            int[] row = new int[padded.getArity()];
+            for (int i = 0; i < padded.size(); i++) {
+                padded.getRow(i, row);
+                if (!matches.contains(row)) {
+                    result.add(row);
+                }
+            }
+            return result;
+        }
+        if (formula instanceof Exists) {
+            Exists exists = (Exists) formula;
+            Formula body = exists.body;
+            for (String variable : exists.variables) {
+                //variables of the context are hidden inside
+                if (context.getColumn(variable) != -1) {
+                    body = rename(body, variable, "#" + (freshVariableCount++));
+                }
+            }
+            return project(evaluate(body, context), union(context.getColumns(), formula.freeVariables));
+        }
+        return evaluateTransitiveClosure((TransitiveClosure) formula, context);
+    }
+
+    /*
+     * Joins the context with a relation. Constants and bound variables are
+     * looked up in an index of the relation.
+     */
+    private Table evaluateAtom(Atom atom, Table context) throws QueryException {
+        Term[] arguments = atom.arguments;
+        if (atom.relation.equals(TRUE) || atom.relation.equals(FALSE)) {
+            if (atom.relation.equals(FALSE)) {
+                return new Table(union(context.getColumns(), atom.freeVariables));
+            }
+            Table result = pad(context, union(context.getColumns(), atom.freeVariables));
+            for (Term argument : arguments) {
+                if (argument.constant != null) {
+                    return new Table(result.getColumns());
+                }
+            }
+            return result;
+        }
+
+        Table relation = relations.get(atom.relation);
+        if (relation == null) {
+            //like an empty input relation
+            relation = new Table(positionalColumns(arguments.length));
+        } else if (relation.getArity() != arguments.length) {
+            throw new QueryException("Wrong number of arguments for " + atom.relation + ".", -1);
+        }
+
+        //the key consists of constants and bound variables, the other arguments are new columns
+        String[] columns = union(context.getColumns(), atom.freeVariables);
+        List<Integer> keyPositions = new ArrayList<Integer>();
+        int[] outputColumns = new int[arguments.length];
+        for (int position = 0; position < arguments.length; position++) {
+            Term argument = arguments[position];
+            outputColumns[position] = (argument.variable == null) ? -1 : Arrays.asList(columns).indexOf(argument.variable);
+            if ((argument.constant != null) || (context.getColumn(argument.variable) != -1)) {
+                keyPositions.add(position);
+            }
+        }
+        int[] keyColumns = new int[keyPositions.size()];
+        for (int i = 0; i < keyColumns.length; i++) {
+            keyColumns[i] = keyPositions.get(i);
+        }
+        Table.Index index = relation.getIndex(keyColumns);
+
+        Table result = new Table(columns);
+        int[] key = new int[keyColumns.length];
+        int[] row = new int[columns.length];
+        for (int contextRow = 0; contextRow < context.size(); contextRow++) {
+            context.getRow(contextRow, row);
+            for (int i = 0; i < keyColumns.length; i++) {
+                Term argument = arguments[keyColumns[i]];
+                key[i] = (argument.constant != null) ? symbols.getId(argument.constant)
+                                                     : row[context.getColumn(argument.variable)];
+            }
+            matches:
+            for (int match = index.first(key); match >= 0; match = index.next(match, key)) {
+                for (int position = 0; position < arguments.length; position++) {
+                    int column = outputColumns[position];
+                    if (column >= context.getArity()) {
+                        //a variable may appear twice in an atom
+                        int value = relation.get(match, position);
+                        for (int earlier = 0; earlier < position; earlier++) {
+                            if ((outputColumns[earlier] == column) && (relation.get(match, earlier) != value)) {
+                                continue matches;
+                            }
+                        }
+                        row[column] = value;
+                    }
+                }
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private Table evaluateEquality(Equality equality, Table context) {
+        String[] columns = union(context.getColumns(), equality.freeVariables);
+        Term left = equality.left;
+        Term right = equality.right;
+        //bind the left side first, if neither is bound or constant
+        Table table = context;
+        if ((left.variable != null) && (context.getColumn(left.variable) == -1)
+                && ((right.variable == null) ? false : (context.getColumn(right.variable) == -1))) {
+            table = pad(context, union(context.getColumns(), new String[] {left.variable}));
+        }
+
+        Table result = new Table(columns);
+        int[] row = new int[columns.length];
+        for (int i = 0; i < table.size(); i++) {
+            table.getRow(i, row);
+            int leftValue = getValue(left, table, row);
+            int rightValue = getValue(right, table, row);
+            if ((leftValue != -1) && (rightValue != -1)) {
+                if (leftValue == rightValue) {
+                    result.add(row);
+                }
+            } else {
+                //one side is a new variable
+                int newColumn = (leftValue == -1) ? result.getColumn(left.variable) : result.getColumn(right.variable);
+                row[newColumn] = (leftValue == -1) ? rightValue : leftValue;
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    /*
+     * Returns the value of a constant or bound variable, or -1.
+     */
+    private int getValue(Term term, Table table, int[] row) {
+        if (term.constant != null) {
+            return symbols.getId(term.constant);
+        }
+        int column = table.getColumn(term.variable);
+        return (column == -1) ? -1 : row[column];
+    }
+
+    /*
+     * Evaluates the operands of a conjunction in the order of their cost.
+     */
+    private Table evaluateAnd(And and, Table context) throws QueryException {
+        List<Formula> remaining = new ArrayList<Formula>(and.operands);
+        Table table = context;
+        while (!remaining.isEmpty()) {
+            if (table.isEmpty()) {
+                return new Table(union(context.getColumns(), and.freeVariables));
+            }
+            Formula next = remaining.get(0);
+            long nextCost = Long.MAX_VALUE;
+            for (Formula operand : remaining) {
+                long cost = getCost(operand, table);
+                if (cost < nextCost) {
+                    next = operand;
+                    nextCost = cost;
+                }
+            }
+            remaining.remove(next);
+            table = evaluate(next, table);
+        }
+        return project(table, union(context.getColumns(), and.freeVariables));
+    }
+
+    /*
+     * Estimates the cost of evaluating a formula in a context. Filters on
+     * bound variables come first, then relations that share bound variables,
+     * then the smallest relations. Negations and TRUE with unbound
+     * variables come last, they range over the universe.
+     */
+    private long getCost(Formula formula, Table context) {
+        int unboundCount = 0;
+        for (String variable : formula.freeVariables) {
+            if (context.getColumn(variable) == -1) {
+                unboundCount++;
+            }
+        }
+        boolean sharesVariables = unboundCount < formula.freeVariables.length;
+        long size = Integer.MAX_VALUE;
+        if (formula instanceof Atom) {
+            Atom atom = (Atom) formula;
+            Table relation = relations.get(atom.relation);
+            size = atom.relation.equals(TRUE) ? Long.MAX_VALUE / 4
+                 : atom.relation.equals(FALSE) || (relation == null) ? 0 : relation.size();
+        } else if ((formula instanceof Equality) && sharesVariables) {
+            size = 1;
+        }
+
+        if (unboundCount == 0) {
+            return (formula instanceof Atom) || (formula instanceof Equality) ? 0 : 1;
+        }
+        if ((formula instanceof Not) || (size == Long.MAX_VALUE / 4)) {
+            return Long.MAX_VALUE / 2 + unboundCount;
+        }
+        return (sharesVariables ? 2 : Long.MAX_VALUE / 8) + size;
+    }
+
+    /*
+     * Joins the context with the transitive closure of a relation with two
+     * free variables.
+     */
+    private Table evaluateTransitiveClosure(TransitiveClosure closure, Table context) throws QueryException {
+        String[] variables = closure.freeVariables;
+        Table base = project(evaluate(closure.body, Table.unit()), variables);
+
+        //successors per node
+        Map<Integer, List<Integer>> successors = new HashMap<Integer, List<Integer>>();
+        for (int row = 0; row < base.size(); row++) {
+            List<Integer> nodeSuccessors = successors.get(base.get(row, 0));
+            if (nodeSuccessors == null) {
+                nodeSuccessors = new ArrayList<Integer>();
+                successors.put(base.get(row, 0), nodeSuccessors);
+            }
+            nodeSuccessors.add(base.get(row, 1));
+        }
+
+        //a depth first search from every node
+        Table closed = new Table(positionalColumns(2));
+        int[] pair = new int[2];
+        for (Integer start : successors.keySet()) {
+            pair[0] = start;
+            List<Integer> stack = new ArrayList<Integer>(successors.get(start));
+            while (!stack.isEmpty()) {
+                pair[1] = stack.remove(stack.size() - 1);
+                if (closed.add(pair)) {
+                    List<Integer> next = successors.get(pair[1]);
+                    if (next != null) {
+                        stack.addAll(next);
+                    }
+                }
+            }
+        }
+
+        String name = "#closure" + (freshVariableCount++);
+        relations.put(name, closed);
+        try {
+            return evaluateAtom(new Atom(name, new Term[] {new Term(variables[0], null), new Term(variables[1], null)}), context);
+        } finally {
+            relations.remove(name);
+        }
+    }
+
+    /*
+     * Adds columns for unbound variables, which range over the universe.
+     */
+    private Table pad(Table table, String[] columns) {
+        List<String> missing = new ArrayList<String>();
+        for (String column : columns) {
+            if (table.getColumn(column) == -1) {
+                missing.add(column);
+            }
+        }
+        if (missing.isEmpty()) {
+            return table;
+        }
+
+        Table universe = getUniverse();
+        String[] paddedColumns = union(table.getColumns(), missing.toArray(new String[missing.size()]));
+        Table result = new Table(paddedColumns);
+        int[] row = new int[paddedColumns.length];
+        for (int i = 0; i < table.size(); i++) {
+            table.getRow(i, row);
+            padRows(result, row, table.getArity(), universe);
+        }
+        return result;
+    }
+
+    private static void padRows(Table result, int[] row, int column, Table universe) {
+        if (column == row.length) {
+            result.add(row);
+            return;
+        }
+        for (int i = 0; i < universe.size(); i++) {
+            row[column] = universe.get(i, 0);
+            padRows(result, row, column + 1, universe);
+        }
+    }
+
+    /*
+     * Returns all symbols, as a table with one column.
+     */
+    private Table getUniverse() {
+        if ((universe == null) || (universe.size() != symbols.size())) {
+            universe = new Table(positionalColumns(1));
+            int[] row = new int[1];
+            for (int id = 0; id < symbols.size(); id++) {
+                row[0] = id;
+                universe.add(row);
+            }
+        }
+        return universe;
+    }
+
+    /*
+     * Returns a table with the given columns, removing all other columns
+     * and duplicate rows.
+     */
+    private static Table project(Table table, String[] columns) {
+        if (Arrays.equals(table.getColumns(), columns)) {
+            return table;
+        }
+        int[] sourceColumns = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            sourceColumns[i] = table.getColumn(columns[i]);
+        }
+        Table result = new Table(columns);
+        int[] row = new int[columns.length];
+        for (int i = 0; i < table.size(); i++) {
+            for (int column = 0; column < columns.length; column++) {
+                row[column] = table.get(i, sourceColumns[column]);
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    private static String[] union(String[] columns, String[] variables) {
+        Set<String> union = new LinkedHashSet<String>(Arrays.asList(columns));
+        Collections.addAll(union, variables);
+        return union.toArray(new String[union.size()]);
+    }
+
+    private static String[] positionalColumns(int arity) {
+        String[] columns = new String[arity];
+        for (int i = 0; i < arity; i++) {
+            columns[i] = "#" + i;
+        }
+        return columns;
+    }
+
+    /*
+     * Renames a free variable of a formula.
+     */
+    private static Formula rename(Formula formula, String from, String to) {
+        if (formula instanceof Atom) {
+            Atom atom = (Atom) formula;
+            Term[] arguments = new Term[atom.arguments.length];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = rename(atom.arguments[i], from, to);
+            }
+            return new Atom(atom.relation, arguments);
+        }
+        if (formula instanceof Equality) {
+            Equality equality = (Equality) formula;
+            return new Equality(rename(equality.left, from, to), rename(equality.right, from, to));
+        }
+        if (formula instanceof Not) {
+            return new Not(rename(((Not) formula).operand, from, to));
+        }
+        if (formula instanceof And) {
+            List<Formula> operands = new ArrayList<Formula>();
+            for (Formula operand : ((And) formula).operands) {
+                operands.add(rename(operand, from, to));
+            }
+            return new And(operands);
+        }
+        if (formula instanceof Or) {
+            return new Or(rename(((Or) formula).left, from, to), rename(((Or) formula).right, from, to));
+        }
+        if (formula instanceof Exists) {
+            Exists exists = (Exists) formula;
+            if (Arrays.asList(exists.variables).contains(from)) {
+                return formula;
+            }
+            return new Exists(exists.variables, rename(exists.body, from, to));
+        }
+        return new TransitiveClosure(rename(((TransitiveClosure) formula).body, from, to));
+    }
+
+    private static Term rename(Term term, String from, String to) {
+        return from.equals(term.variable) ? new Term(to, null) : term;
+    }
+}
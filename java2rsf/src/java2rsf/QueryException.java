@@ -0,0 +1,44 @@
+package java2rsf;
+
+/**
+ * An exception that is thrown when a query program is invalid.
+ *
+ * @see QueryEngine
+ */
+public class QueryException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+    private int lineNumber;
+
+    /*
+     * Create a new QueryException for an error in a line of the program.
+     */
+    QueryException(String message, int lineNumber) {
+        super(message);
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Returns the line number in the program that caused the error. Or
+     * <code>-1</code> if the line number is not known.
+     *
+     * @return line number of the error
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Returns a readable description of this QueryException.
+     *
+     * @return readable description of this QueryException.
+     */
+    @Override
+    public String toString() {
+        String output = super.toString();
+        if (this.lineNumber != -1) {
+            output += "\nLine: " + this.lineNumber;
+        }
+        return output;
+    }
+}
@@ -0,0 +1,272 @@
+package java2rsf;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The transitive closure of a directed graph, computed from its strongly
+ * connected components.
+ *
+ * <p>All nodes of a component reach the same nodes, so reachability is only
+ * stored once per component: as a bit set of the components it reaches. The
+ * components are found with Tarjan's algorithm, which completes each
+ * component after all components it reaches. So the bit sets can be
+ * computed in that order, each as the union of those of its successors.</p>
+ *
+ * <p>Each bit set takes one bit per component in the worst case. The memory
+ * grows with the square of the number of components, not with the number of
+ * reachable pairs.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+final class Reachability {
+
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final SymbolTable nodes = new SymbolTable();
+    private int[] edgeSources = new int[INITIAL_CAPACITY];
+    private int[] edgeTargets = new int[INITIAL_CAPACITY];
+    private int edgeCount = 0;
+
+    //computed when first requested, discarded when an edge is added
+    private int[] components = null;
+    private int componentCount;
+    private int[] memberStarts;
+    private int[] members;
+    private int[] edgeStarts;
+    private int[] successors;
+    private BitSet[] reachable = null;
+
+    /*
+     * Adds a node without edges, unless it exists. Returns the node.
+     */
+    int addNode(String name) {
+        int nodeCount = nodes.size();
+        int node = nodes.getId(name);
+        if (nodes.size() != nodeCount) {
+            components = null;
+            reachable = null;
+        }
+        return node;
+    }
+
+    /*
+     * Adds an edge. The nodes are created when they are first used.
+     */
+    void addEdge(String source, String target) {
+        if (edgeCount == edgeSources.length) {
+            edgeSources = Arrays.copyOf(edgeSources, 2 * edgeCount);
+            edgeTargets = Arrays.copyOf(edgeTargets, 2 * edgeCount);
+        }
+        edgeSources[edgeCount] = nodes.getId(source);
+        edgeTargets[edgeCount] = nodes.getId(target);
+        edgeCount++;
+        components = null;
+        reachable = null;
+    }
+
+    int getNodeCount() {
+        return nodes.size();
+    }
+
+    String getName(int node) {
+        return nodes.getName(node);
+    }
+
+    /*
+     * Returns the component of a node.
+     */
+    int getComponent(int node) {
+        compute();
+        return components[node];
+    }
+
+    int getComponentCount() {
+        compute();
+        return componentCount;
+    }
+
+    int getMemberCount(int component) {
+        compute();
+        return memberStarts[component + 1] - memberStarts[component];
+    }
+
+    /*
+     * Returns a node of a component, index is from 0 to getMemberCount - 1.
+     */
+    int getMember(int component, int index) {
+        compute();
+        return members[memberStarts[component] + index];
+    }
+
+    int getSuccessorCount(int node) {
+        compute();
+        return edgeStarts[node + 1] - edgeStarts[node];
+    }
+
+    /*
+     * Returns a node that a node has an edge to, index is from 0 to
+     * getSuccessorCount - 1.
+     */
+    int getSuccessor(int node, int index) {
+        compute();
+        return successors[edgeStarts[node] + index];
+    }
+
+    /*
+     * Returns the components that a component reaches with at least one
+     * edge, or null if it reaches none. A component reaches itself if it has
+     * more than one node or an edge to itself. Must not be modified.
+     */
+    BitSet getReachableComponents(int component) {
+        computeReachable();
+        return reachable[component];
+    }
+
+    /*
+     * Returns whether there is a path of at least one edge from a node to
+     * another.
+     */
+    boolean reaches(int source, int target) {
+        computeReachable();
+        BitSet sourceReachable = reachable[components[source]];
+        return (sourceReachable != null) && sourceReachable.get(components[target]);
+    }
+
+    private void compute() {
+        if (components != null) {
+            return;
+        }
+
+        int nodeCount = nodes.size();
+        //adjacency lists in one array
+        edgeStarts = new int[nodeCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            edgeStarts[edgeSources[i] + 1]++;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            edgeStarts[node + 1] += edgeStarts[node];
+        }
+        successors = new int[edgeCount];
+        int[] fill = Arrays.copyOf(edgeStarts, nodeCount);
+        for (int i = 0; i < edgeCount; i++) {
+            successors[fill[edgeSources[i]]++] = edgeTargets[i];
+        }
+
+        findComponents();
+
+        //nodes grouped by component
+        memberStarts = new int[componentCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            memberStarts[components[node] + 1]++;
+        }
+        for (int component = 0; component < componentCount; component++) {
+            memberStarts[component + 1] += memberStarts[component];
+        }
+        members = new int[nodeCount];
+        fill = Arrays.copyOf(memberStarts, componentCount);
+        for (int node = 0; node < nodeCount; node++) {
+            members[fill[components[node]]++] = node;
+        }
+        reachable = null;
+    }
+
+    /*
+     * Computes the reachable components, only when they are requested. The
+     * components alone are cheaper.
+     */
+    private void computeReachable() {
+        compute();
+        if (reachable != null) {
+            return;
+        }
+
+        //every component reaches only components that were completed before it
+        reachable = new BitSet[componentCount];
+        for (int component = 0; component < componentCount; component++) {
+            BitSet componentReachable = null;
+            for (int i = memberStarts[component]; i < memberStarts[component + 1]; i++) {
+                int node = members[i];
+                for (int edge = edgeStarts[node]; edge < edgeStarts[node + 1]; edge++) {
+                    int successorComponent = components[successors[edge]];
+                    if (componentReachable == null) {
+                        componentReachable = new BitSet(component + 1);
+                    }
+                    componentReachable.set(successorComponent);
+                    if ((successorComponent != component) && (reachable[successorComponent] != null)) {
+                        componentReachable.or(reachable[successorComponent]);
+                    }
+                }
+            }
+            reachable[component] = componentReachable;
+        }
+    }
+
+    /*
+     * Tarjan's algorithm, with an explicit stack instead of recursion. Each
+     * component gets the next number when it is completed.
+     */
+    private void findComponents() {
+        int nodeCount = edgeStarts.length - 1;
+        components = new int[nodeCount];
+        componentCount = 0;
+        int[] order = new int[nodeCount];
+        Arrays.fill(order, -1);
+        int[] lowLinks = new int[nodeCount];
+        boolean[] onStack = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int stackSize = 0;
+        //the path of the depth first search, with the next edge of each node
+        int[] path = new int[nodeCount];
+        int[] nextEdges = new int[nodeCount];
+        int nextOrder = 0;
+
+        for (int root = 0; root < nodeCount; root++) {
+            if (order[root] != -1) {
+                continue;
+            }
+
+            int pathSize = 0;
+            path[pathSize++] = root;
+            nextEdges[root] = edgeStarts[root];
+            order[root] = nextOrder;
+            lowLinks[root] = nextOrder++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+
+            while (pathSize > 0) {
+                int node = path[pathSize - 1];
+                if (nextEdges[node] < edgeStarts[node + 1]) {
+                    int successor = successors[nextEdges[node]++];
+                    if (order[successor] == -1) {
+                        path[pathSize++] = successor;
+                        nextEdges[successor] = edgeStarts[successor];
+                        order[successor] = nextOrder;
+                        lowLinks[successor] = nextOrder++;
+                        stack[stackSize++] = successor;
+                        onStack[successor] = true;
+                    } else if (onStack[successor]) {
+                        lowLinks[node] = Math.min(lowLinks[node], order[successor]);
+                    }
+                    continue;
+                }
+
+                //all successors are done
+                pathSize--;
+                if (pathSize > 0) {
+                    int parent = path[pathSize - 1];
+                    lowLinks[parent] = Math.min(lowLinks[parent], lowLinks[node]);
+                }
+                if (lowLinks[node] == order[node]) {
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        components[member] = componentCount;
+                    } while (member != node);
+                    componentCount++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package java2rsf;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Answers in constant time whether an entity reaches another in a derived
+ * relation, like {@link Relation#INHERITS_FROM}. The index is written with
+ * the option <code>--reachability-index</code>.
+ *
+ * <p>For each relation, the file stores the names of the entities, the
+ * strongly connected component of each entity, and for each component a bit
+ * set of the components it reaches. The names are read into a hash table
+ * when the file is opened, the rest of the file is mapped into memory.</p>
+ *
+ * <p>The file must be smaller than 2 GB. Instances are thread-safe.</p>
+ */
+public final class ReachabilityIndex implements Closeable {
+
+    private static final int MAGIC = 0x4A325249;
+    private static final int FORMAT = 1;
+
+    private Map<String, Graph> graphs = new TreeMap<String, Graph>();
+
+    /**
+     * Opens an index file.
+     *
+     * @param file the file to read
+     * @throws IOException in case the file cannot be read or is not an index file
+     */
+    public ReachabilityIndex(File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("Parameter file may not be null.");
+        }
+
+        ByteBuffer buffer;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Index file too large to map: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            //the mapping stays valid after the file is closed
+            randomAccessFile.close();
+        }
+
+        if ((buffer.remaining() < 12) || (buffer.getInt() != MAGIC)) {
+            throw new IOException("Not an index file: " + file);
+        }
+        if (buffer.getInt() != FORMAT) {
+            throw new IOException("Unsupported format of index file: " + file);
+        }
+        int graphCount = buffer.getInt();
+        for (int i = 0; i < graphCount; i++) {
+            String relation = readString(buffer);
+            Graph graph = new Graph();
+            int nodeCount = buffer.getInt();
+            graph.ids = new HashMap<String, Integer>(2 * nodeCount);
+            for (int node = 0; node < nodeCount; node++) {
+                graph.ids.put(readString(buffer), node);
+            }
+            graph.components = slice(buffer, 4 * nodeCount).asIntBuffer();
+            int componentCount = buffer.getInt();
+            graph.rowOffsets = slice(buffer, 8 * componentCount).asLongBuffer();
+            long rowsSize = buffer.getLong();
+            graph.rows = slice(buffer, (int) rowsSize);
+            graphs.put(relation, graph);
+        }
+    }
+
+    /**
+     * Returns the names of the relations in the index.
+     *
+     * @return names of the relations
+     */
+    public Set<String> getRelationNames() {
+        return Collections.unmodifiableSet(graphs.keySet());
+    }
+
+    /**
+     * Returns whether a relation contains the fact <code>relation source
+     * target</code>. That is, whether target can be reached from source in
+     * one or more steps.
+     *
+     * @param relation the name of a derived relation, like <code>INHERITS_FROM</code>
+     * @param source the first argument of the fact
+     * @param target the second argument of the fact
+     * @return whether the fact is in the relation, false if the index has no
+     *         such relation or entities
+     */
+    public boolean reaches(String relation, String source, String target) {
+        Graph graph = graphs.get(relation);
+        if (graph == null) {
+            return false;
+        }
+        Integer sourceId = graph.ids.get(source);
+        Integer targetId = graph.ids.get(target);
+        if ((sourceId == null) || (targetId == null)) {
+            return false;
+        }
+
+        long rowOffset = graph.rowOffsets.get(graph.components.get(sourceId));
+        if (rowOffset < 0) {
+            return false;
+        }
+        int targetComponent = graph.components.get(targetId);
+        int wordCount = graph.rows.getInt((int) rowOffset);
+        if (targetComponent / 64 >= wordCount) {
+            return false;
+        }
+        long word = graph.rows.getLong((int) rowOffset + 4 + 8 * (targetComponent / 64));
+        return (word & (1L << targetComponent)) != 0;
+    }
+
+    /**
+     * Releases the file. The memory mapping is released by the garbage
+     * collector.
+     */
+    public void close() {
+        graphs.clear();
+    }
+
+    /*
+     * Writes an index of the transitive closures of relations.
+     */
+    static void write(Map<Relation, Reachability> closures, OutputStream out) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeInt(FORMAT);
+        dataOut.writeInt(closures.size());
+        for (Map.Entry<Relation, Reachability> closure : closures.entrySet()) {
+            Reachability reachability = closure.getValue();
+            writeString(dataOut, closure.getKey().name());
+            dataOut.writeInt(reachability.getNodeCount());
+            for (int node = 0; node < reachability.getNodeCount(); node++) {
+                writeString(dataOut, reachability.getName(node));
+            }
+            for (int node = 0; node < reachability.getNodeCount(); node++) {
+                dataOut.writeInt(reachability.getComponent(node));
+            }
+
+            //each row is its number of words followed by the words
+            int componentCount = reachability.getComponentCount();
+            dataOut.writeInt(componentCount);
+            long rowsSize = 0;
+            for (int component = 0; component < componentCount; component++) {
+                BitSet reachable = reachability.getReachableComponents(component);
+                if ((reachable == null) || reachable.isEmpty()) {
+                    dataOut.writeLong(-1);
+                } else {
+                    dataOut.writeLong(rowsSize);
+                    rowsSize += 4 + 8 * ((reachable.length() + 63) / 64);
+                }
+            }
+            dataOut.writeLong(rowsSize);
+            for (int component = 0; component < componentCount; component++) {
+                BitSet reachable = reachability.getReachableComponents(component);
+                if ((reachable != null) && !reachable.isEmpty()) {
+                    long[] words = reachable.toLongArray();
+                    dataOut.writeInt(words.length);
+                    for (long word : words) {
+                        dataOut.writeLong(word);
+                    }
+                }
+            }
+        }
+        dataOut.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(BinaryFactWriter.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, BinaryFactWriter.UTF_8);
+    }
+
+    /*
+     * Returns the next size bytes of buffer as a buffer of their own, and
+     * skips them.
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int size) {
+        ByteBuffer slice = buffer.slice();
+        slice.limit(size);
+        buffer.position(buffer.position() + size);
+        return slice;
+    }
+
+    /*
+     * The mapped index of a relation.
+     */
+    private static class Graph {
+
+        private Map<String, Integer> ids;
+        private IntBuffer components;
+        private LongBuffer rowOffsets;
+        private ByteBuffer rows;
+    }
+}
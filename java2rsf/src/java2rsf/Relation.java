@@ -0,0 +1,107 @@
+package java2rsf;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The relations of the Rsf output. The name of each constant is the name of 
+ * the relation in the output.
+ * 
+ * <p>Derived relations are not extracted from the source code, but computed 
+ * from the facts of other relations. They are only written if requested.</p>
+ * 
+ */
+public enum Relation {
+
+    //declarations
+    PACKAGE,
+    CLASS,
+    ANONYMOUS_CLASS,
+    LOCAL_CLASS,
+    MEMBER_CLASS,
+    INTERFACE,
+    ENUM,
+    ANNOTATION_TYPE,
+    FIELD,
+    ENUM_CONSTANT,
+    METHOD,
+    CONSTRUCTOR,
+    ANNOTATION_METHOD,
+    STATIC_INITIALIZER,
+    INSTANCE_INITIALIZER,
+
+    //structure and signatures
+    CONTAINS,
+    HAS,
+    EXTENDS,
+    IMPLEMENTS,
+    IS_OF_TYPE,
+    THROWS,
+    IS,
+    HAS_ANNOTATION,
+
+    //bodies
+    CALLS,
+    READS,
+    WRITES,
+    USES,
+
+    //derived: the transitive closures of EXTENDS and IMPLEMENTS, and of CALLS
+    INHERITS_FROM(EXTENDS, IMPLEMENTS),
+    CALLS_TRANSITIVELY(CALLS);
+
+    private List<Relation> sources;
+
+    private Relation(Relation... sources) {
+        //no EnumSet, the constants don't exist yet
+        this.sources = Collections.unmodifiableList(Arrays.asList(sources));
+    }
+
+    /**
+     * Returns whether this relation is computed from other relations.
+     * 
+     * @return whether this relation is derived
+     */
+    public boolean isDerived() {
+        return !sources.isEmpty();
+    }
+
+    /**
+     * Returns the relations whose facts a derived relation is computed from.
+     * 
+     * @return the source relations, empty if this relation is not derived
+     */
+    public List<Relation> getSources() {
+        return sources;
+    }
+
+    /**
+     * Returns the relations whose facts are found in the bodies of methods 
+     * and initializers: the accesses, the types used, and the local and 
+     * anonymous classes. Also those derived from them.
+     * 
+     * @return the relations that need the bodies
+     */
+    public static Set<Relation> getFromBodies() {
+        return EnumSet.of(ANONYMOUS_CLASS, LOCAL_CLASS, CALLS, READS, WRITES, USES, CALLS_TRANSITIVELY);
+    }
+
+    /**
+     * Returns all relations that are extracted from the source code, i.e. 
+     * that are not derived.
+     * 
+     * @return the relations that are not derived
+     */
+    public static Set<Relation> getExtracted() {
+        Set<Relation> extracted = EnumSet.noneOf(Relation.class);
+        for (Relation relation : values()) {
+            if (!relation.isDerived()) {
+                extracted.add(relation);
+            }
+        }
+        return extracted;
+    }
+}
@@ -0,0 +1,644 @@
+package java2rsf;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parses programs in the relational manipulation language (RML) of
+ * CrocoPat, as far as the {@link QueryEngine} supports it.
+ *
+ * <p>Supported are assignments <code>R(x, y) := formula;</code>, facts
+ * <code>R("a", "b");</code>, <code>PRINT</code> with strings,
+ * <code>ENDL</code> and relations with an optional prefix,
+ * <code>WHILE</code> and <code>IF</code>/<code>ELSE</code> with
+ * conditions that compare relations. Formulas consist of relations,
+ * <code>=</code>, <code>!=</code>, <code>!</code>, <code>&amp;</code>,
+ * <code>|</code>, <code>-&gt;</code>, <code>&lt;-&gt;</code>,
+ * <code>EX</code>, <code>FA</code>, <code>TC</code>, <code>TRUE</code> and
+ * <code>FALSE</code>.</p>
+ */
+class RmlParser {
+
+    private final String text;
+    private int position = 0;
+    private int line = 1;
+    private final Set<String> constants = new LinkedHashSet<String>();
+
+    //the current token
+    private TokenType type;
+    private String token;
+    private int tokenLine;
+
+    private RmlParser(String text) throws QueryException {
+        this.text = text;
+        nextToken();
+    }
+
+    /*
+     * Parses a program. All string constants of the program are added to
+     * constants.
+     */
+    static List<Statement> parse(Reader program, Set<String> constants) throws IOException, QueryException {
+        StringBuilder text = new StringBuilder();
+        char[] buffer = new char[1 << 12];
+        for (int length = program.read(buffer); length != -1; length = program.read(buffer)) {
+            text.append(buffer, 0, length);
+        }
+
+        RmlParser parser = new RmlParser(text.toString());
+        List<Statement> statements = new ArrayList<Statement>();
+        while (parser.type != TokenType.END) {
+            statements.add(parser.parseStatement());
+        }
+        constants.addAll(parser.constants);
+        return statements;
+    }
+
+    private Statement parseStatement() throws QueryException {
+        int statementLine = tokenLine;
+        if (isKeyword("WHILE")) {
+            nextToken();
+            expect("(");
+            Condition condition = parseCondition();
+            expect(")");
+            return new While(statementLine, condition, parseBlock());
+        }
+        if (isKeyword("IF")) {
+            nextToken();
+            expect("(");
+            Condition condition = parseCondition();
+            expect(")");
+            List<Statement> thenBlock = parseBlock();
+            List<Statement> elseBlock = new ArrayList<Statement>();
+            if (isKeyword("ELSE")) {
+                nextToken();
+                elseBlock = parseBlock();
+            }
+            return new If(statementLine, condition, thenBlock, elseBlock);
+        }
+        if (isKeyword("PRINT")) {
+            nextToken();
+            List<PrintItem> items = new ArrayList<PrintItem>();
+            items.add(parsePrintItem());
+            while (isSymbol(",")) {
+                nextToken();
+                items.add(parsePrintItem());
+            }
+            expect(";");
+            return new Print(statementLine, items);
+        }
+
+        String relation = expectIdentifier();
+        expect("(");
+        List<Term> arguments = parseTerms();
+        expect(")");
+        if (isSymbol(";")) {
+            //a fact
+            String[] values = new String[arguments.size()];
+            for (int i = 0; i < values.length; i++) {
+                if (arguments.get(i).constant == null) {
+                    throw error("Facts may only contain strings.");
+                }
+                values[i] = arguments.get(i).constant;
+            }
+            nextToken();
+            return new Fact(statementLine, relation, values);
+        }
+
+        expect(":=");
+        String[] parameters = new String[arguments.size()];
+        for (int i = 0; i < parameters.length; i++) {
+            parameters[i] = arguments.get(i).variable;
+            if ((parameters[i] == null) || Arrays.asList(parameters).subList(0, i).contains(parameters[i])) {
+                throw error("The parameters of " + relation + " must be distinct variables.");
+            }
+        }
+        Formula formula = parseFormula();
+        expect(";");
+        for (String variable : formula.freeVariables) {
+            if (!Arrays.asList(parameters).contains(variable)) {
+                throw new QueryException("Variable " + variable + " is not a parameter of " + relation + ".",
+                        statementLine);
+            }
+        }
+        return new Assignment(statementLine, relation, parameters, formula);
+    }
+
+    private List<Statement> parseBlock() throws QueryException {
+        List<Statement> statements = new ArrayList<Statement>();
+        if (!isSymbol("{")) {
+            statements.add(parseStatement());
+            return statements;
+        }
+        nextToken();
+        while (!isSymbol("}")) {
+            if (type == TokenType.END) {
+                throw error("Missing }.");
+            }
+            statements.add(parseStatement());
+        }
+        nextToken();
+        return statements;
+    }
+
+    private Condition parseCondition() throws QueryException {
+        Formula left = parseFormula();
+        if (isSymbol("=") || isSymbol("!=")) {
+            boolean equal = isSymbol("=");
+            nextToken();
+            return new Condition(left, equal, parseFormula());
+        }
+        return new Condition(left, false, null);
+    }
+
+    private PrintItem parsePrintItem() throws QueryException {
+        if (type == TokenType.STRING) {
+            String string = token;
+            nextToken();
+            return new PrintItem(string, null, null);
+        }
+        if (isKeyword("ENDL")) {
+            nextToken();
+            return new PrintItem(System.getProperty("line.separator"), null, null);
+        }
+        String prefix = null;
+        if (isSymbol("[")) {
+            nextToken();
+            if (type != TokenType.STRING) {
+                throw error("Expected a string.");
+            }
+            prefix = token;
+            nextToken();
+            expect("]");
+        }
+        return new PrintItem(null, prefix, parseFormula());
+    }
+
+    private Formula parseFormula() throws QueryException {
+        Formula left = parseDisjunction();
+        if (isSymbol("->")) {
+            nextToken();
+            return new Or(new Not(left), parseFormula());
+        }
+        if (isSymbol("<->")) {
+            nextToken();
+            Formula right = parseFormula();
+            return new Or(new And(Arrays.asList(left, right)), new And(Arrays.<Formula>asList(new Not(left), new Not(right))));
+        }
+        return left;
+    }
+
+    private Formula parseDisjunction() throws QueryException {
+        Formula formula = parseConjunction();
+        while (isSymbol("|")) {
+            nextToken();
+            formula = new Or(formula, parseConjunction());
+        }
+        return formula;
+    }
+
+    private Formula parseConjunction() throws QueryException {
+        List<Formula> operands = new ArrayList<Formula>();
+        operands.add(parseUnary());
+        while (isSymbol("&")) {
+            nextToken();
+            operands.add(parseUnary());
+        }
+        return (operands.size() == 1) ? operands.get(0) : new And(operands);
+    }
+
+    private Formula parseUnary() throws QueryException {
+        if (isSymbol("!")) {
+            nextToken();
+            return new Not(parseUnary());
+        }
+        return parsePrimary();
+    }
+
+    private Formula parsePrimary() throws QueryException {
+        if (isSymbol("(")) {
+            nextToken();
+            Formula formula = parseFormula();
+            expect(")");
+            return formula;
+        }
+        if (isKeyword("EX") || isKeyword("FA")) {
+            boolean exists = isKeyword("EX");
+            nextToken();
+            expect("(");
+            List<String> variables = new ArrayList<String>();
+            do {
+                variables.add(expectIdentifier());
+                expect(",");
+            } while ((type == TokenType.IDENTIFIER) && text.startsWith(",", skipWhitespace(position)));
+            Formula body = parseFormula();
+            expect(")");
+            String[] variableArray = variables.toArray(new String[variables.size()]);
+            //FA(x, f) is !EX(x, !f)
+            return exists ? new Exists(variableArray, body) : new Not(new Exists(variableArray, new Not(body)));
+        }
+        if (isKeyword("TC")) {
+            nextToken();
+            expect("(");
+            Formula body = parseFormula();
+            expect(")");
+            if (body.freeVariables.length != 2) {
+                throw error("TC needs a formula with two free variables.");
+            }
+            return new TransitiveClosure(body);
+        }
+
+        if ((type == TokenType.IDENTIFIER) && text.startsWith("(", skipWhitespace(position))) {
+            String relation = token;
+            nextToken();
+            expect("(");
+            List<Term> arguments = parseTerms();
+            expect(")");
+            return new Atom(relation, arguments.toArray(new Term[arguments.size()]));
+        }
+
+        Term left = parseTerm();
+        boolean equal = isSymbol("=");
+        if (!equal && !isSymbol("!=")) {
+            throw error("Expected = or !=.");
+        }
+        nextToken();
+        Formula comparison = new Equality(left, parseTerm());
+        return equal ? comparison : new Not(comparison);
+    }
+
+    private List<Term> parseTerms() throws QueryException {
+        List<Term> terms = new ArrayList<Term>();
+        if (isSymbol(")")) {
+            return terms;
+        }
+        terms.add(parseTerm());
+        while (isSymbol(",")) {
+            nextToken();
+            terms.add(parseTerm());
+        }
+        return terms;
+    }
+
+    private Term parseTerm() throws QueryException {
+        if (type == TokenType.STRING) {
+            String constant = token;
+            constants.add(constant);
+            nextToken();
+            return new Term(null, constant);
+        }
+        return new Term(expectIdentifier(), null);
+    }
+
+    private boolean isKeyword(String keyword) {
+        return (type == TokenType.IDENTIFIER) && token.equals(keyword);
+    }
+
+    private boolean isSymbol(String symbol) {
+        return (type == TokenType.SYMBOL) && token.equals(symbol);
+    }
+
+    private void expect(String symbol) throws QueryException {
+        if (!isSymbol(symbol)) {
+            throw error("Expected " + symbol + ".");
+        }
+        nextToken();
+    }
+
+    private String expectIdentifier() throws QueryException {
+        if (type != TokenType.IDENTIFIER) {
+            throw error("Expected a name.");
+        }
+        String identifier = token;
+        nextToken();
+        return identifier;
+    }
+
+    private QueryException error(String message) {
+        String found = (type == TokenType.END) ? "end of program" : token;
+        return new QueryException(message + " Found " + found + ".", tokenLine);
+    }
+
+    /*
+     * Returns the position of the next character that is not whitespace or
+     * part of a comment.
+     */
+    private int skipWhitespace(int from) {
+        int i = from;
+        while (i < text.length()) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                i++;
+            } else if (text.startsWith("//", i)) {
+                while ((i < text.length()) && (text.charAt(i) != '\n')) {
+                    i++;
+                }
+            } else if (text.startsWith("/*", i)) {
+                int end = text.indexOf("*/", i + 2);
+                i = (end == -1) ? text.length() : end + 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private void nextToken() throws QueryException {
+        int start = skipWhitespace(position);
+        for (int i = position; i < start; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        position = start;
+        tokenLine = line;
+
+        if (position == text.length()) {
+            type = TokenType.END;
+            token = null;
+            return;
+        }
+
+        char c = text.charAt(position);
+        if (Character.isLetter(c) || (c == '_')) {
+            int end = position + 1;
+            while ((end < text.length()) && (Character.isLetterOrDigit(text.charAt(end)) || (text.charAt(end) == '_'))) {
+                end++;
+            }
+            type = TokenType.IDENTIFIER;
+            token = text.substring(position, end);
+            position = end;
+        } else if (c == '"') {
+            StringBuilder string = new StringBuilder();
+            int i = position + 1;
+            for (; (i < text.length()) && (text.charAt(i) != '"'); i++) {
+                char stringChar = text.charAt(i);
+                if ((stringChar == '\\') && (i + 1 < text.length())) {
+                    char escaped = text.charAt(++i);
+                    stringChar = (escaped == 't') ? '\t' : (escaped == 'n') ? '\n' : escaped;
+                } else if (stringChar == '\n') {
+                    line++;
+                }
+                string.append(stringChar);
+            }
+            if (i == text.length()) {
+                throw new QueryException("Unterminated string.", tokenLine);
+            }
+            type = TokenType.STRING;
+            token = string.toString();
+            position = i + 1;
+        } else {
+            type = TokenType.SYMBOL;
+            for (String symbol : new String[] {"<->", ":=", "!=", "->", "(", ")", ",", ";", "|", "&", "!", "=", "{", "}", "[", "]"}) {
+                if (text.startsWith(symbol, position)) {
+                    token = symbol;
+                    position += symbol.length();
+                    return;
+                }
+            }
+            throw new QueryException("Unexpected character " + c + ".", tokenLine);
+        }
+    }
+
+    private enum TokenType {
+
+        IDENTIFIER, STRING, SYMBOL, END
+    }
+
+    /*
+     * A variable or a string constant.
+     */
+    static final class Term {
+
+        final String variable;
+        final String constant;
+
+        Term(String variable, String constant) {
+            this.variable = variable;
+            this.constant = constant;
+        }
+    }
+
+    /*
+     * A formula with its free variables, in the order of their first use.
+     */
+    abstract static class Formula {
+
+        final String[] freeVariables;
+
+        Formula(Set<String> freeVariables) {
+            this.freeVariables = freeVariables.toArray(new String[freeVariables.size()]);
+        }
+
+        static Set<String> variables(Formula... formulas) {
+            Set<String> variables = new LinkedHashSet<String>();
+            for (Formula formula : formulas) {
+                variables.addAll(Arrays.asList(formula.freeVariables));
+            }
+            return variables;
+        }
+
+        static Set<String> variables(Term... terms) {
+            Set<String> variables = new LinkedHashSet<String>();
+            for (Term term : terms) {
+                if (term.variable != null) {
+                    variables.add(term.variable);
+                }
+            }
+            return variables;
+        }
+    }
+
+    /*
+     * A relation applied to terms, also TRUE and FALSE.
+     */
+    static final class Atom extends Formula {
+
+        final String relation;
+        final Term[] arguments;
+
+        Atom(String relation, Term[] arguments) {
+            super(variables(arguments));
+            this.relation = relation;
+            this.arguments = arguments;
+        }
+    }
+
+    static final class Equality extends Formula {
+
+        final Term left;
+        final Term right;
+
+        Equality(Term left, Term right) {
+            super(variables(left, right));
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Not extends Formula {
+
+        final Formula operand;
+
+        Not(Formula operand) {
+            super(variables(operand));
+            this.operand = operand;
+        }
+    }
+
+    static final class And extends Formula {
+
+        final List<Formula> operands;
+
+        And(List<Formula> operands) {
+            super(variables(operands.toArray(new Formula[operands.size()])));
+            this.operands = operands;
+        }
+    }
+
+    static final class Or extends Formula {
+
+        final Formula left;
+        final Formula right;
+
+        Or(Formula left, Formula right) {
+            super(variables(left, right));
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Exists extends Formula {
+
+        final String[] variables;
+        final Formula body;
+
+        Exists(String[] variables, Formula body) {
+            super(without(variables(body), variables));
+            this.variables = variables;
+            this.body = body;
+        }
+
+        private static Set<String> without(Set<String> freeVariables, String[] variables) {
+            freeVariables.removeAll(Arrays.asList(variables));
+            return freeVariables;
+        }
+    }
+
+    static final class TransitiveClosure extends Formula {
+
+        final Formula body;
+
+        TransitiveClosure(Formula body) {
+            super(variables(body));
+            this.body = body;
+        }
+    }
+
+    /*
+     * Compares two relations, or tests a single relation for being non-empty.
+     */
+    static final class Condition {
+
+        final Formula left;
+        final boolean equal;
+        final Formula right;
+
+        Condition(Formula left, boolean equal, Formula right) {
+            this.left = left;
+            this.equal = equal;
+            this.right = right;
+        }
+    }
+
+    /*
+     * A string, or the rows of a formula with an optional prefix.
+     */
+    static final class PrintItem {
+
+        final String text;
+        final String prefix;
+        final Formula formula;
+
+        PrintItem(String text, String prefix, Formula formula) {
+            this.text = text;
+            this.prefix = prefix;
+            this.formula = formula;
+        }
+    }
+
+    abstract static class Statement {
+
+        final int line;
+
+        Statement(int line) {
+            this.line = line;
+        }
+    }
+
+    static final class Assignment extends Statement {
+
+        final String relation;
+        final String[] parameters;
+        final Formula formula;
+
+        Assignment(int line, String relation, String[] parameters, Formula formula) {
+            super(line);
+            this.relation = relation;
+            this.parameters = parameters;
+            this.formula = formula;
+        }
+    }
+
+    static final class Fact extends Statement {
+
+        final String relation;
+        final String[] values;
+
+        Fact(int line, String relation, String[] values) {
+            super(line);
+            this.relation = relation;
+            this.values = values;
+        }
+    }
+
+    static final class Print extends Statement {
+
+        final List<PrintItem> items;
+
+        Print(int line, List<PrintItem> items) {
+            super(line);
+            this.items = items;
+        }
+    }
+
+    static final class While extends Statement {
+
+        final Condition condition;
+        final List<Statement> body;
+
+        While(int line, Condition condition, List<Statement> body) {
+            super(line);
+            this.condition = condition;
+            this.body = body;
+        }
+    }
+
+    static final class If extends Statement {
+
+        final Condition condition;
+        final List<Statement> thenBlock;
+        final List<Statement> elseBlock;
+
+        If(int line, Condition condition, List<Statement> thenBlock, List<Statement> elseBlock) {
+            super(line);
+            this.condition = condition;
+            this.thenBlock = thenBlock;
+            this.elseBlock = elseBlock;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package java2rsf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures where a run spends its time and memory, and writes a report as
+ * JSON. For each phase of the extraction, the wall time, the CPU time and the
+ * bytes allocated by the measuring thread are added up, in total and for each
+ * file. The facts the visitors emit are counted by relation, before
+ * duplicates are removed. So they can be more than the facts of the output, a
+ * package for example is emitted once for each of its files.
+ *
+ * <p>The phases are measured in the threads that run them, so with several
+ * threads the totals of a phase can exceed the wall time of the run. Reading
+ * is the time the parsing threads spend getting the contents of files,
+ * reading ahead happens in other threads. Parsing includes building the
+ * types of all files of a batch, which is not counted for any file unless
+ * the batch has a single file.</p>
+ *
+ * <p>CPU time and allocated bytes are <code>-1</code> if the Java runtime
+ * can't measure them.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+final class RunReport {
+
+    private static final String FORMAT = "java2rsf run report 2";
+
+    /*
+     * The phases of a run, in their order.
+     */
+    enum Phase {
+
+        WALK, READ, PARSE, RESOLVE, VISIT, WRITE;
+
+        String getKey() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean measuresCpu;
+    private final boolean measuresAllocation;
+    private final long startNanos = System.nanoTime();
+    private final Stats total = new Stats();
+    private final Map<String, Stats> files = new HashMap<String, Stats>();
+    private final long[] emittedFacts = new long[Relation.values().length];
+
+    RunReport() {
+        measuresCpu = threads.isCurrentThreadCpuTimeSupported();
+        if (measuresCpu && !threads.isThreadCpuTimeEnabled()) {
+            threads.setThreadCpuTimeEnabled(true);
+        }
+        boolean allocation = false;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            allocation = sunThreads.isThreadAllocatedMemorySupported();
+            if (allocation && !sunThreads.isThreadAllocatedMemoryEnabled()) {
+                sunThreads.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        measuresAllocation = allocation;
+    }
+
+    /*
+     * Starts measuring a phase in the current thread. The measurement must be
+     * stopped in the same thread.
+     */
+    Measurement start() {
+        return new Measurement(System.nanoTime(), getCpuNanos(), getAllocatedBytes());
+    }
+
+    /*
+     * Adds the time and memory since measurement started to a phase, and to
+     * the file if fileName is not null.
+     */
+    void stop(Measurement measurement, Phase phase, String fileName) {
+        long wallNanos = System.nanoTime() - measurement.wallNanos;
+        long cpuNanos = measuresCpu ? getCpuNanos() - measurement.cpuNanos : -1;
+        long allocatedBytes = measuresAllocation ? getAllocatedBytes() - measurement.allocatedBytes : -1;
+        synchronized (this) {
+            total.add(phase, wallNanos, cpuNanos, allocatedBytes);
+            if (fileName != null) {
+                getFile(fileName).add(phase, wallNanos, cpuNanos, allocatedBytes);
+            }
+        }
+    }
+
+    /*
+     * Adds the facts emitted for a file, counted by relation ordinal.
+     */
+    synchronized void addEmittedFacts(String fileName, int[] relationCounts) {
+        Stats file = getFile(fileName);
+        for (int i = 0; i < relationCounts.length; i++) {
+            emittedFacts[i] += relationCounts[i];
+            file.emittedFacts += relationCounts[i];
+        }
+    }
+
+    /*
+     * Writes the report as JSON, with the topFiles files that took the most
+     * wall time and the most allocated bytes.
+     */
+    synchronized void writeTo(Writer writer, int topFiles) throws IOException {
+        writer.write("{\n  \"format\": ");
+        writeString(writer, FORMAT);
+        writer.write(",\n  \"wallNanos\": " + (System.nanoTime() - startNanos));
+        writer.write(",\n  \"files\": " + files.size());
+        writer.write(",\n  \"phases\": ");
+        total.writePhases(writer, "  ");
+        writer.write(",\n  \"emittedFacts\": {");
+        Relation[] relations = Relation.values();
+        boolean isFirst = true;
+        for (Relation relation : relations) {
+            if (emittedFacts[relation.ordinal()] > 0) {
+                writer.write(isFirst ? "\n    " : ",\n    ");
+                writeString(writer, relation.name());
+                writer.write(": " + emittedFacts[relation.ordinal()]);
+                isFirst = false;
+            }
+        }
+        writer.write(isFirst ? "}" : "\n  }");
+
+        writer.write(",\n  \"slowestFiles\": ");
+        writeFiles(writer, new Comparator<Stats>() {
+
+            public int compare(Stats stats1, Stats stats2) {
+                return compareDescending(stats1.getTotal(Stats.WALL), stats2.getTotal(Stats.WALL));
+            }
+        }, topFiles);
+        writer.write(",\n  \"mostAllocatingFiles\": ");
+        writeFiles(writer, new Comparator<Stats>() {
+
+            public int compare(Stats stats1, Stats stats2) {
+                return compareDescending(stats1.getTotal(Stats.ALLOCATED), stats2.getTotal(Stats.ALLOCATED));
+            }
+        }, topFiles);
+        writer.write("\n}\n");
+    }
+
+    private void writeFiles(Writer writer, Comparator<Stats> order, int topFiles) throws IOException {
+        List<Stats> sortedFiles = new ArrayList<Stats>(files.values());
+        Collections.sort(sortedFiles, order);
+        writer.write('[');
+        for (int i = 0; i < Math.min(topFiles, sortedFiles.size()); i++) {
+            Stats file = sortedFiles.get(i);
+            writer.write((i == 0) ? "\n    {\"file\": " : ",\n    {\"file\": ");
+            writeString(writer, file.fileName);
+            writer.write(", \"wallNanos\": " + file.getTotal(Stats.WALL));
+            writer.write(", \"cpuNanos\": " + (measuresCpu ? file.getTotal(Stats.CPU) : -1));
+            writer.write(", \"allocatedBytes\": " + (measuresAllocation ? file.getTotal(Stats.ALLOCATED) : -1));
+            writer.write(", \"emittedFacts\": " + file.emittedFacts);
+            writer.write(",\n     \"phases\": ");
+            file.writePhases(writer, "     ");
+            writer.write('}');
+        }
+        writer.write(sortedFiles.isEmpty() ? "]" : "\n  ]");
+    }
+
+    private static int compareDescending(long value1, long value2) {
+        return (value1 > value2) ? -1 : ((value1 < value2) ? 1 : 0);
+    }
+
+    private Stats getFile(String fileName) {
+        Stats file = files.get(fileName);
+        if (file == null) {
+            file = new Stats();
+            file.fileName = fileName;
+            files.put(fileName, file);
+        }
+        return file;
+    }
+
+    private long getCpuNanos() {
+        return measuresCpu ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private long getAllocatedBytes() {
+        return measuresAllocation
+                ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId())
+                : -1;
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c == '"') || (c == '\\')) {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < ' ') {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
+    /*
+     * The counters of the current thread when a measurement started.
+     */
+    static final class Measurement {
+
+        private final long wallNanos;
+        private final long cpuNanos;
+        private final long allocatedBytes;
+
+        private Measurement(long wallNanos, long cpuNanos, long allocatedBytes) {
+            this.wallNanos = wallNanos;
+            this.cpuNanos = cpuNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    /*
+     * The measured values of each phase, in total or for a file.
+     */
+    private final class Stats {
+
+        private static final int WALL = 0;
+        private static final int CPU = 1;
+        private static final int ALLOCATED = 2;
+
+        private String fileName;
+        //by phase ordinal and value
+        private final long[][] values = new long[Phase.values().length][3];
+        private final boolean[] measured = new boolean[Phase.values().length];
+        private long emittedFacts = 0;
+
+        void add(Phase phase, long wallNanos, long cpuNanos, long allocatedBytes) {
+            long[] phaseValues = values[phase.ordinal()];
+            phaseValues[WALL] += wallNanos;
+            phaseValues[CPU] += cpuNanos;
+            phaseValues[ALLOCATED] += allocatedBytes;
+            measured[phase.ordinal()] = true;
+        }
+
+        long getTotal(int value) {
+            long sum = 0;
+            for (long[] phaseValues : values) {
+                sum += phaseValues[value];
+            }
+            return sum;
+        }
+
+        /*
+         * Writes the measured phases as a JSON object, continued lines are
+         * indented by indent.
+         */
+        void writePhases(Writer writer, String indent) throws IOException {
+            writer.write('{');
+            boolean isFirst = true;
+            for (Phase phase : Phase.values()) {
+                if (!measured[phase.ordinal()]) {
+                    continue;
+                }
+                long[] phaseValues = values[phase.ordinal()];
+                writer.write(isFirst ? "\n" : ",\n");
+                writer.write(indent + "  ");
+                writeString(writer, phase.getKey());
+                writer.write(": {\"wallNanos\": " + phaseValues[WALL]);
+                writer.write(", \"cpuNanos\": " + (measuresCpu ? phaseValues[CPU] : -1));
+                writer.write(", \"allocatedBytes\": " + (measuresAllocation ? phaseValues[ALLOCATED] : -1) + "}");
+                isFirst = false;
+            }
+            writer.write(isFirst ? "}" : "\n" + indent + "}");
+        }
+    }
+}
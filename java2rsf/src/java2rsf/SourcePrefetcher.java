@@ -0,0 +1,137 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import org.eclipse.jdt.internal.compiler.util.Util;
+
+/**
+ * Reads and decodes source files in background threads, ahead of the
+ * compilers that parse them. So reading files from slow disks or network
+ * file systems overlaps with resolving other files.
+ *
+ * <p>The files are read in the order they are given, which should be the
+ * order in which they are requested. The bytes of files that were read but
+ * not yet requested are limited, reading waits when the limit is reached.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+final class SourcePrefetcher {
+
+    private final Semaphore bytesInFlight;
+    private final int maxBytesInFlight;
+    private final ExecutorService executor;
+    private final Map<String, Future<Source>> sources = new ConcurrentHashMap<String, Future<Source>>();
+
+    /*
+     * Starts reading files with threads background threads. At most about
+     * maxBytesInFlight bytes of files are read ahead.
+     */
+    SourcePrefetcher(List<String> fileNames, final String encoding, int threads, int maxBytesInFlight) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1.");
+        }
+
+        this.maxBytesInFlight = maxBytesInFlight;
+        //fair, so that files are read in order
+        this.bytesInFlight = new Semaphore(maxBytesInFlight, true);
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "java2rsf source reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (final String fileName : fileNames) {
+            if (sources.containsKey(fileName)) {
+                continue;
+            }
+            sources.put(fileName, executor.submit(new Callable<Source>() {
+
+                public Source call() throws IOException, InterruptedException {
+                    return read(fileName, encoding);
+                }
+            }));
+        }
+    }
+
+    /*
+     * Returns the contents of a file. Waits until the file is read, or reads
+     * it directly if it isn't one of the files to read ahead. Each file can
+     * only be requested once.
+     */
+    char[] getContents(String fileName, String encoding) throws IOException {
+        Future<Source> source = sources.remove(fileName);
+        if (source == null) {
+            return Util.getFileCharContent(new File(fileName), encoding);
+        }
+
+        try {
+            Source readSource = source.get();
+            bytesInFlight.release(readSource.permits);
+            return readSource.contents;
+        } catch (InterruptedException e) {
+            source.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + fileName);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to read " + fileName, e.getCause());
+        }
+    }
+
+    /*
+     * Stops reading files. Files that were read but not requested are
+     * discarded.
+     */
+    void close() {
+        executor.shutdownNow();
+        sources.clear();
+    }
+
+    /*
+     * Reads a file once its bytes fit into the limit. Larger files than the
+     * limit wait until nothing else is read ahead.
+     */
+    private Source read(String fileName, String encoding) throws IOException, InterruptedException {
+        File file = new File(fileName);
+        int permits = (int) Math.min(file.length(), maxBytesInFlight);
+        bytesInFlight.acquire(permits);
+        try {
+            return new Source(Util.getFileCharContent(file, encoding), permits);
+        } catch (IOException e) {
+            bytesInFlight.release(permits);
+            throw e;
+        } catch (RuntimeException e) {
+            bytesInFlight.release(permits);
+            throw e;
+        }
+    }
+
+    /*
+     * The contents of a file, and the bytes it counts against the limit.
+     */
+    private static class Source {
+
+        private char[] contents;
+        private int permits;
+
+        Source(char[] contents, int permits) {
+            this.contents = contents;
+            this.permits = permits;
+        }
+    }
+}
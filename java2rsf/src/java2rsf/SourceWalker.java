@@ -0,0 +1,375 @@
+package java2rsf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the .java files in a directory tree. Subdirectories are listed in
+ * parallel.
+ *
+ * <p>Files and directories can be excluded with patterns like those of
+ * <code>.gitignore</code> files. A pattern without a slash matches the name of
+ * a file or directory at any depth, like <code>target</code> or
+ * <code>*Test.java</code>. Other patterns match the path relative to the
+ * directory of the pattern, like <code>src/generated</code> or
+ * <code>**&#47;test/**</code>. A pattern that ends with a slash only matches
+ * directories. The patterns are globs of {@link FileSystem#getPathMatcher}.</p>
+ *
+ * <p>Excluded directories are not listed. In ignore files, later patterns
+ * take precedence over earlier ones, patterns of <code>.gitignore</code>
+ * files in subdirectories over those of their parents, and a pattern that
+ * starts with <code>!</code> includes files again.</p>
+ *
+ * <p>Not thread-safe.</p>
+ */
+final class SourceWalker {
+
+    private static final String GITIGNORE_FILE_NAME = ".gitignore";
+    private static final String GIT_DIRECTORY_NAME = ".git";
+    private static final Path EMPTY_PATH = new File("").toPath();
+
+    private boolean searchSubdirectories;
+    private int threads = 1;
+    private boolean useGitignore = false;
+    private List<Rule> includes = new ArrayList<Rule>();
+    private List<Rule> excludes = new ArrayList<Rule>();
+    private List<Rule> ignoreRules = new ArrayList<Rule>();
+
+    /*
+     * Creates a walker that also walks subdirectories if searchSubdirectories
+     * is true. Otherwise only the .java files directly in a directory are
+     * found.
+     */
+    SourceWalker(boolean searchSubdirectories) {
+        this.searchSubdirectories = searchSubdirectories;
+    }
+
+    /*
+     * Sets the number of threads that list directories.
+     */
+    SourceWalker setThreads(int threads) {
+        this.threads = Math.max(threads, 1);
+        return this;
+    }
+
+    /*
+     * Only finds files that match one of the include patterns, if any are
+     * given.
+     */
+    SourceWalker addInclude(String pattern) {
+        includes.add(Rule.parse(pattern, EMPTY_PATH));
+        return this;
+    }
+
+    /*
+     * Excludes files and directories that match the pattern.
+     */
+    SourceWalker addExclude(String pattern) {
+        excludes.add(Rule.parse(pattern, EMPTY_PATH));
+        return this;
+    }
+
+    /*
+     * Excludes files and directories with the patterns of a file in
+     * .gitignore format, relative to the walked directory.
+     */
+    SourceWalker addIgnoreFile(File ignoreFile) throws IOException {
+        ignoreRules.addAll(readIgnoreFile(ignoreFile.toPath(), EMPTY_PATH));
+        return this;
+    }
+
+    /*
+     * Sets whether .gitignore files in the walked directories are used.
+     * .git directories are then skipped as well.
+     */
+    SourceWalker setUseGitignore(boolean useGitignore) {
+        this.useGitignore = useGitignore;
+        return this;
+    }
+
+    /*
+     * Returns the absolute paths of the .java files in a directory, sorted.
+     * If file is a .java file, only its path is returned.
+     */
+    List<String> walk(File file) throws IOException {
+        Path root = file.toPath().toAbsolutePath();
+        Queue<String> fileNames = new ConcurrentLinkedQueue<String>();
+        if (Files.isDirectory(root)) {
+            WalkTask rootTask = new WalkTask(root, EMPTY_PATH, ignoreRules, fileNames);
+            if (threads == 1) {
+                rootTask.walk();
+            } else {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    pool.invoke(rootTask);
+                } catch (WalkException e) {
+                    throw e.getCause();
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        } else if (Files.isRegularFile(root) && isJavaFile(root)) {
+            fileNames.add(root.toString());
+        }
+
+        List<String> sortedFileNames = new ArrayList<String>(fileNames);
+        Collections.sort(sortedFileNames);
+        return sortedFileNames;
+    }
+
+    /*
+     * Reads a list of files, one per line. Lines with directories are walked,
+     * other lines are returned as absolute paths if they end with .java. The
+     * files in the list are not checked.
+     */
+    List<String> walkList(Reader reader) throws IOException {
+        List<String> fileNames = new ArrayList<String>();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        for (String line = bufferedReader.readLine(); line != null; line = bufferedReader.readLine()) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            File file = new File(line);
+            if (line.endsWith(".java")) {
+                fileNames.add(file.getAbsolutePath());
+            } else if (file.isDirectory()) {
+                fileNames.addAll(walk(file));
+            }
+        }
+        return fileNames;
+    }
+
+    private static boolean isJavaFile(Path path) {
+        return path.getFileName().toString().endsWith(".java");
+    }
+
+    /*
+     * Reads the rules of an ignore file, for paths relative to base.
+     */
+    private static List<Rule> readIgnoreFile(Path ignoreFile, Path base) throws IOException {
+        List<Rule> rules = new ArrayList<Rule>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(ignoreFile.toFile()), BinaryFactWriter.UTF_8));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    rules.add(Rule.parse(line, base));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return rules;
+    }
+
+    /*
+     * Returns whether a path is excluded by the command line patterns.
+     */
+    private boolean isExcluded(Path relativePath, boolean isDirectory) {
+        for (Rule exclude : excludes) {
+            if (exclude.matches(relativePath, isDirectory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Returns whether a path is ignored by the rules of ignore files. The
+     * last matching rule decides.
+     */
+    private static boolean isIgnored(List<Rule> rules, Path relativePath, boolean isDirectory) {
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule rule = rules.get(i);
+            if (rule.matches(relativePath, isDirectory)) {
+                return !rule.negated;
+            }
+        }
+        return false;
+    }
+
+    private boolean isIncluded(Path relativePath) {
+        if (includes.isEmpty()) {
+            return true;
+        }
+        for (Rule include : includes) {
+            if (include.matches(relativePath, false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Lists a directory, and its subdirectories in tasks of their own.
+     */
+    private class WalkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private Path directory;
+        private Path relativeDirectory;
+        private List<Rule> rules;
+        private Queue<String> fileNames;
+
+        WalkTask(Path directory, Path relativeDirectory, List<Rule> rules, Queue<String> fileNames) {
+            this.directory = directory;
+            this.relativeDirectory = relativeDirectory;
+            this.rules = rules;
+            this.fileNames = fileNames;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                invokeAll(walk());
+            } catch (IOException e) {
+                throw new WalkException(e);
+            }
+        }
+
+        /*
+         * Adds the .java files of the directory. Returns the tasks for the
+         * subdirectories, or walks them directly with a single thread.
+         */
+        List<WalkTask> walk() throws IOException {
+            List<Path> entries = new ArrayList<Path>();
+            DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+            try {
+                for (Path entry : stream) {
+                    entries.add(entry);
+                }
+            } finally {
+                stream.close();
+            }
+
+            List<Rule> directoryRules = rules;
+            if (useGitignore && entries.contains(directory.resolve(GITIGNORE_FILE_NAME))) {
+                directoryRules = new ArrayList<Rule>(rules);
+                directoryRules.addAll(readIgnoreFile(directory.resolve(GITIGNORE_FILE_NAME), relativeDirectory));
+            }
+
+            List<WalkTask> subtasks = new ArrayList<WalkTask>();
+            for (Path entry : entries) {
+                //one stat per entry, links are followed
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    //like a broken link
+                    continue;
+                }
+                boolean isDirectory = attributes.isDirectory();
+                if ((isDirectory && !searchSubdirectories) || (!isDirectory && !attributes.isRegularFile())
+                        || (!isDirectory && !isJavaFile(entry))) {
+                    continue;
+                }
+                if (isDirectory && useGitignore && entry.getFileName().toString().equals(GIT_DIRECTORY_NAME)) {
+                    continue;
+                }
+
+                Path relativePath = relativeDirectory.resolve(entry.getFileName());
+                if (isExcluded(relativePath, isDirectory) || isIgnored(directoryRules, relativePath, isDirectory)) {
+                    continue;
+                }
+                if (isDirectory) {
+                    WalkTask subtask = new WalkTask(entry, relativePath, directoryRules, fileNames);
+                    if (threads == 1) {
+                        subtask.walk();
+                    } else {
+                        subtasks.add(subtask);
+                    }
+                } else if (isIncluded(relativePath)) {
+                    fileNames.add(entry.toString());
+                }
+            }
+            return subtasks;
+        }
+    }
+
+    /*
+     * A pattern for files and directories.
+     */
+    private static class Rule {
+
+        private PathMatcher matcher;
+        //the directory of the ignore file, the pattern is relative to it, null for the walked directory
+        private Path base;
+        private boolean matchesName;
+        private boolean directoriesOnly;
+        private boolean negated;
+
+        static Rule parse(String pattern, Path base) {
+            Rule rule = new Rule();
+            //empty paths neither start other paths nor relativize them
+            rule.base = base.toString().isEmpty() ? null : base;
+            if (pattern.startsWith("!")) {
+                rule.negated = true;
+                pattern = pattern.substring(1);
+            }
+            if (pattern.endsWith("/")) {
+                rule.directoriesOnly = true;
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            rule.matchesName = !pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            //a leading **/ also matches no directory at all
+            if (pattern.startsWith("**/")) {
+                pattern = "{" + pattern + "," + pattern.substring(3) + "}";
+            }
+            rule.matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            return rule;
+        }
+
+        boolean matches(Path relativePath, boolean isDirectory) {
+            if (directoriesOnly && !isDirectory) {
+                return false;
+            }
+            if (matchesName) {
+                return matcher.matches(relativePath.getFileName());
+            }
+            if (base == null) {
+                return matcher.matches(relativePath);
+            }
+            return relativePath.startsWith(base) && matcher.matches(base.relativize(relativePath));
+        }
+    }
+
+    /*
+     * Carries an IOException out of a fork join task.
+     */
+    private static class WalkException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        WalkException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
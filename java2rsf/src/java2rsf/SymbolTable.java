@@ -0,0 +1,70 @@
+package java2rsf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps entity names to consecutive int ids, so that each name is stored only 
+ * once. Not thread-safe.
+ * 
+ */
+class SymbolTable {
+
+    //approximate heap size of a symbol, without its characters
+    private static final int SYMBOL_OVERHEAD = 100;
+
+    private Map<String, Integer> ids = new HashMap<String, Integer>();
+    private List<String> names = new ArrayList<String>();
+    private long usedMemory = 0;
+
+    /*
+     * Returns the id of a name, assigns the next free id to new names.
+     */
+    int getId(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+            usedMemory += SYMBOL_OVERHEAD + 2 * name.length();
+        }
+        return id;
+    }
+
+    /*
+     * Returns the name for an id.
+     */
+    String getName(int id) {
+        return names.get(id);
+    }
+
+    /*
+     * Returns the number of symbols.
+     */
+    int size() {
+        return names.size();
+    }
+
+    /*
+     * Returns the approximate heap size of all symbols in bytes.
+     */
+    long getUsedMemory() {
+        return usedMemory;
+    }
+
+    /*
+     * Returns the rank of each id when the names are sorted, indexed by id.
+     */
+    int[] getRanks() {
+        String[] sortedNames = names.toArray(new String[names.size()]);
+        Arrays.sort(sortedNames);
+        int[] ranks = new int[sortedNames.length];
+        for (int rank = 0; rank < sortedNames.length; rank++) {
+            ranks[ids.get(sortedNames[rank])] = rank;
+        }
+        return ranks;
+    }
+}
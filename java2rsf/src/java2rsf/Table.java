@@ -0,0 +1,226 @@
+package java2rsf;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A set of rows of symbol ids, used by the {@link QueryEngine}. The columns
+ * are named after the variables they bind.
+ *
+ * <p>The rows are stored in a single array. Duplicates are rejected with an
+ * open addressing hash table of row numbers, so a row takes only a few
+ * bytes more than its values.</p>
+ */
+final class Table {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final String[] columns;
+    private int[] values;
+    private int size = 0;
+    //row number + 1 per slot, 0 for empty slots
+    private int[] slots = new int[INITIAL_CAPACITY];
+    //indices by their columns, built when first requested
+    private Map<String, Index> indices = null;
+
+    Table(String[] columns) {
+        this.columns = columns;
+        this.values = new int[INITIAL_CAPACITY * Math.max(columns.length, 1)];
+    }
+
+    /*
+     * Creates a table without columns that contains the empty row. It is the
+     * neutral element of joins.
+     */
+    static Table unit() {
+        Table unit = new Table(new String[0]);
+        unit.add(new int[0]);
+        return unit;
+    }
+
+    String[] getColumns() {
+        return columns;
+    }
+
+    int getArity() {
+        return columns.length;
+    }
+
+    /*
+     * Returns the index of the column for a variable, or -1.
+     */
+    int getColumn(String variable) {
+        for (int column = 0; column < columns.length; column++) {
+            if (columns[column].equals(variable)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int get(int row, int column) {
+        return values[row * columns.length + column];
+    }
+
+    /*
+     * Copies a row into buffer.
+     */
+    void getRow(int row, int[] buffer) {
+        System.arraycopy(values, row * columns.length, buffer, 0, columns.length);
+    }
+
+    /*
+     * Adds a row, returns false if the table contains it already.
+     */
+    boolean add(int[] row) {
+        if (findSlot(row) >= 0) {
+            return false;
+        }
+        if (2 * (size + 1) > slots.length) {
+            rehash(2 * slots.length);
+        }
+        if ((size + 1) * columns.length > values.length) {
+            values = Arrays.copyOf(values, 2 * values.length);
+        }
+        System.arraycopy(row, 0, values, size * columns.length, columns.length);
+        slots[-findSlot(row) - 1] = ++size;
+        indices = null;
+        return true;
+    }
+
+    boolean contains(int[] row) {
+        return findSlot(row) >= 0;
+    }
+
+    /*
+     * Returns the slot of a row, or -(empty slot + 1) if the table doesn't
+     * contain the row.
+     */
+    private int findSlot(int[] row) {
+        int mask = slots.length - 1;
+        for (int slot = hash(row, 0, row.length) & mask;; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return -slot - 1;
+            }
+            if (rowEquals(entry - 1, row)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean rowEquals(int row, int[] other) {
+        int offset = row * columns.length;
+        for (int column = 0; column < columns.length; column++) {
+            if (values[offset + column] != other[column]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash(int slotCount) {
+        slots = new int[slotCount];
+        int mask = slotCount - 1;
+        for (int row = 0; row < size; row++) {
+            int slot = hash(values, row * columns.length, columns.length) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = row + 1;
+        }
+    }
+
+    private static int hash(int[] array, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + array[i];
+        }
+        //spread the bits, the lower ones select the slot
+        hash ^= (hash >>> 16);
+        hash *= 0x85EBCA6B;
+        return hash ^ (hash >>> 13);
+    }
+
+    /*
+     * Returns an index of the rows by the values in some columns. The index
+     * is kept until the table changes.
+     */
+    Index getIndex(int[] keyColumns) {
+        String key = Arrays.toString(keyColumns);
+        if (indices == null) {
+            indices = new HashMap<String, Index>();
+        }
+        Index index = indices.get(key);
+        if (index == null) {
+            index = new Index(keyColumns);
+            indices.put(key, index);
+        }
+        return index;
+    }
+
+    /*
+     * Rows with the same key are chained. Iterate them like this:
+     * for (int row = index.first(key); row >= 0; row = index.next(row, key))
+     */
+    final class Index {
+
+        private final int[] keyColumns;
+        private final int[] heads;
+        private final int[] next;
+        private final int mask;
+
+        private Index(int[] keyColumns) {
+            this.keyColumns = keyColumns;
+            int headCount = Integer.highestOneBit(Math.max(size, 1)) * 2;
+            heads = new int[headCount];
+            next = new int[size];
+            mask = headCount - 1;
+            int[] key = new int[keyColumns.length];
+            for (int row = size - 1; row >= 0; row--) {
+                for (int i = 0; i < keyColumns.length; i++) {
+                    key[i] = get(row, keyColumns[i]);
+                }
+                int head = hash(key, 0, key.length) & mask;
+                next[row] = heads[head];
+                heads[head] = row + 1;
+            }
+        }
+
+        /*
+         * Returns the first row with the key, or -1.
+         */
+        int first(int[] key) {
+            return find(heads[hash(key, 0, key.length) & mask] - 1, key);
+        }
+
+        /*
+         * Returns the next row after row with the key, or -1.
+         */
+        int next(int row, int[] key) {
+            return find(next[row] - 1, key);
+        }
+
+        private int find(int row, int[] key) {
+            for (; row >= 0; row = next[row] - 1) {
+                boolean matches = true;
+                for (int i = 0; matches && (i < keyColumns.length); i++) {
+                    matches = get(row, keyColumns[i]) == key[i];
+                }
+                if (matches) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Writes facts in the binary format, from memory and from sorted runs, and
+ * reads them back.
+ */
+public class BinaryFactReaderTest extends TestCase {
+
+    private List<File> files = new ArrayList<File>();
+
+    @Override
+    protected void tearDown() {
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    public void testRoundTrip() throws Exception {
+        //more names than a block of the name table, with shared prefixes and non-ASCII characters
+        List<String[]> facts = new ArrayList<String[]>();
+        for (int i = 0; i < 50; i++) {
+            facts.add(new String[] {"CLASS", "p.C" + i});
+            facts.add(new String[] {"EXTENDS", "p.C" + i, "p.C" + (i / 2)});
+            facts.add(new String[] {"CALLS", "p.C" + i + "#m()", "p.C" + (i * 7 % 50) + "#m()"});
+            facts.add(new String[] {"CALLS", "p.C" + i + "#m()", "p.Café#mä()"});
+        }
+        //duplicates and a fact with the same arguments
+        facts.add(new String[] {"CLASS", "p.C1"});
+        facts.add(new String[] {"EXTENDS", "p.C1", "p.C0"});
+        facts.add(new String[] {"CALLS", "p.C3#m()", "p.C3#m()"});
+
+        File memoryFile = writeBinary(new FactStore(Long.MAX_VALUE, null), facts, false);
+        File runsFile = writeBinary(new FactStore(1, null), facts, true);
+        assertTrue(Arrays.equals(Files.readAllBytes(memoryFile.toPath()), Files.readAllBytes(runsFile.toPath())));
+
+        BinaryFactReader reader = new BinaryFactReader(runsFile);
+        try {
+            assertEquals(toRsf(facts), toRsf(reader));
+            assertEquals(Arrays.asList("CALLS", "CLASS", "EXTENDS"), new ArrayList<String>(reader.getRelationNames()));
+            assertEquals(1, reader.getArity("CLASS"));
+            assertEquals(2, reader.getArity("CALLS"));
+            assertEquals(50, reader.getFactCount("CLASS"));
+            assertEquals(101, reader.getFactCount("CALLS"));
+            for (int id = 0; id < reader.getSymbolCount(); id++) {
+                assertEquals(id, reader.getSymbolId(reader.getSymbol(id)));
+                if (id > 0) {
+                    assertTrue(reader.getSymbol(id - 1).compareTo(reader.getSymbol(id)) < 0);
+                }
+            }
+            assertEquals(-1, reader.getSymbolId("p.C"));
+            assertEquals(-1, reader.getSymbolId("p.C10#"));
+            assertEquals(-1, reader.getSymbolId("a"));
+            assertEquals(-1, reader.getSymbolId("z"));
+
+            BinaryFactReader.Cursor cursor = reader.getFacts("EXTENDS");
+            assertTrue(cursor.next());
+            assertEquals("p.C0", reader.getSymbol(cursor.getArgument1()));
+            assertEquals("p.C0", reader.getSymbol(cursor.getArgument2()));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testEmptyRelation() throws Exception {
+        List<String[]> facts = new ArrayList<String[]>();
+        facts.add(new String[] {"CLASS", "p.A"});
+        for (boolean spill : new boolean[] {false, true}) {
+            BinaryFactReader reader = new BinaryFactReader(writeBinary(new FactStore(spill ? 1 : Long.MAX_VALUE, null), 
+                    facts, spill));
+            try {
+                assertEquals(0, reader.getArity("CALLS"));
+                assertEquals(0, reader.getFactCount("CALLS"));
+                assertFalse(reader.getFacts("CALLS").next());
+                assertFalse(reader.getRelationNames().contains("CALLS"));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    public void testNoFacts() throws Exception {
+        List<String[]> facts = new ArrayList<String[]>();
+        for (boolean spill : new boolean[] {false, true}) {
+            BinaryFactReader reader = new BinaryFactReader(writeBinary(new FactStore(spill ? 1 : Long.MAX_VALUE, null),
+                    facts, spill));
+            try {
+                assertEquals(0, reader.getSymbolCount());
+                assertTrue(reader.getRelationNames().isEmpty());
+                assertEquals(-1, reader.getSymbolId("p.A"));
+                assertEquals("", toRsf(reader));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    public void testSingleSymbol() throws Exception {
+        List<String[]> facts = new ArrayList<String[]>();
+        facts.add(new String[] {"PACKAGE", "p"});
+        facts.add(new String[] {"CONTAINS", "p", "p"});
+        for (boolean spill : new boolean[] {false, true}) {
+            BinaryFactReader reader = new BinaryFactReader(writeBinary(new FactStore(spill ? 1 : Long.MAX_VALUE, null),
+                    facts, spill));
+            try {
+                assertEquals(1, reader.getSymbolCount());
+                assertEquals("p", reader.getSymbol(0));
+                assertEquals(0, reader.getSymbolId("p"));
+                assertEquals(-1, reader.getSymbolId(""));
+                assertEquals(-1, reader.getSymbolId("q"));
+                assertEquals(toRsf(facts), toRsf(reader));
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    public void testNotAFactFile() throws Exception {
+        File file = createTempFile();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[32]);
+        } finally {
+            out.close();
+        }
+        try {
+            new BinaryFactReader(file);
+            fail();
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    /*
+     * Adds facts to a store and writes it to a new binary file. If spill
+     * is true, a sorted run is written after each fact.
+     */
+    private File writeBinary(FactStore store, List<String[]> facts, boolean spill) throws IOException {
+        for (String[] fact : facts) {
+            if (fact.length == 2) {
+                store.add(Relation.valueOf(fact[0]), fact[1]);
+            } else {
+                store.add(Relation.valueOf(fact[0]), fact[1], fact[2]);
+            }
+            if (spill) {
+                store.spillIfOverBudget();
+            }
+        }
+
+        File file = createTempFile();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            store.writeBinaryTo(out);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /*
+     * Returns the Rsf of facts, as written by a store.
+     */
+    private static String toRsf(List<String[]> facts) throws IOException {
+        FactStore store = new FactStore(Long.MAX_VALUE, null);
+        for (String[] fact : facts) {
+            if (fact.length == 2) {
+                store.add(Relation.valueOf(fact[0]), fact[1]);
+            } else {
+                store.add(Relation.valueOf(fact[0]), fact[1], fact[2]);
+            }
+        }
+        StringWriter writer = new StringWriter();
+        store.writeTo(writer);
+        return writer.toString();
+    }
+
+    private static String toRsf(BinaryFactReader reader) throws IOException {
+        StringWriter writer = new StringWriter();
+        reader.writeRsf(writer);
+        return writer.toString();
+    }
+
+    private File createTempFile() throws IOException {
+        File file = File.createTempFile("java2rsf", ".facts");
+        files.add(file);
+        return file;
+    }
+}
@@ -0,0 +1,73 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import junit.framework.TestCase;
+import org.eclipse.jdt.internal.compiler.ast.CompilationUnitDeclaration;
+
+/**
+ * Extracts a file that calls and inherits default methods of the Java API,
+ * which {@link ClassFileDowngrader} turns into abstract methods.
+ */
+public class ClassFileDowngraderTest extends TestCase {
+
+    private static final String SOURCE =
+            "import java.util.*;\n"
+            + "public class DefaultMethods implements Comparator<String> {\n"
+            + "    public int compare(String s1, String s2) {\n"
+            + "        return s1.compareTo(s2);\n"
+            + "    }\n"
+            + "    void f(List<String> list, Map<String, Integer> map) {\n"
+            + "        list.sort(this);\n"
+            + "        map.getOrDefault(\"a\", 1);\n"
+            + "        reversed();\n"
+            + "    }\n"
+            + "}\n";
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("java2rsf", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testDefaultMethods() throws Exception {
+        File file = new File(directory, "DefaultMethods.java");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(SOURCE);
+        } finally {
+            writer.close();
+        }
+
+        CompilationUnitDeclaration unit = new JdtCompiler(file.getPath()).getResolvedUnit();
+        FactStore facts = new FactStore(Long.MAX_VALUE, null);
+        try {
+            unit.traverse(new DeclarationVisitor(facts), unit.scope);
+            StringWriter output = new StringWriter();
+            facts.writeTo(output);
+            String lines = output.toString();
+            assertTrue(lines, lines.contains("CALLS\tDefaultMethods#f(java.util.List,java.util.Map)\t"
+                    + "java.util.List#sort(java.util.Comparator)"));
+            assertTrue(lines, lines.contains("CALLS\tDefaultMethods#f(java.util.List,java.util.Map)\t"
+                    + "java.util.Map#getOrDefault(java.lang.Object,java.lang.Object)"));
+            assertTrue(lines, lines.contains("CALLS\tDefaultMethods#f(java.util.List,java.util.Map)\t"
+                    + "DefaultMethods#reversed()"));
+        } finally {
+            facts.close();
+        }
+    }
+}
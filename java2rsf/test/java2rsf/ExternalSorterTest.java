@@ -0,0 +1,70 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import junit.framework.TestCase;
+
+/**
+ * Merges more runs than {@link ExternalSorter#MAX_MERGED_RUNS}, so that
+ * they are merged in several passes, and compares the output with a
+ * {@link TreeSet}.
+ */
+public class ExternalSorterTest extends TestCase {
+
+    private File tempDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        tempDirectory = File.createTempFile("java2rsf", "");
+        tempDirectory.delete();
+        tempDirectory.mkdir();
+    }
+
+    @Override
+    protected void tearDown() {
+        for (File file : tempDirectory.listFiles()) {
+            file.delete();
+        }
+        tempDirectory.delete();
+    }
+
+    public void testMergePasses() throws Exception {
+        for (int runCount : new int[] {0, 1, ExternalSorter.MAX_MERGED_RUNS - 1, ExternalSorter.MAX_MERGED_RUNS,
+                3 * ExternalSorter.MAX_MERGED_RUNS * ExternalSorter.MAX_MERGED_RUNS / 2}) {
+            Random random = new Random(runCount);
+            ExternalSorter sorter = new ExternalSorter(tempDirectory, 0);
+            SortedSet<String> expected = new TreeSet<String>();
+            for (int run = 0; run < runCount; run++) {
+                sorter.addRun(createRun(random, expected).iterator());
+            }
+            assertEquals(runCount, tempDirectory.list().length);
+
+            final List<String> lines = new ArrayList<String>();
+            sorter.writeTo(new ExternalSorter.LineWriter() {
+
+                public void writeLine(String line) throws IOException {
+                    lines.add(line);
+                }
+            }, createRun(random, expected).iterator());
+            assertEquals(String.valueOf(runCount), new ArrayList<String>(expected), lines);
+            assertEquals(0, tempDirectory.list().length);
+        }
+    }
+
+    /*
+     * Returns random lines from a small range, so that runs share lines.
+     */
+    private static SortedSet<String> createRun(Random random, SortedSet<String> expected) {
+        SortedSet<String> lines = new TreeSet<String>();
+        for (int i = random.nextInt(5); i > 0; i--) {
+            lines.add("line " + random.nextInt(10000));
+        }
+        expected.addAll(lines);
+        return lines;
+    }
+}
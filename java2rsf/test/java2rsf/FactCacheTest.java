@@ -0,0 +1,80 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import junit.framework.TestCase;
+
+/**
+ * Runs the extraction with a {@link FactCache} twice, and compares the
+ * output of the second run with that of a run without a cache.
+ */
+public class FactCacheTest extends TestCase {
+
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("java2rsf", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @Override
+    protected void tearDown() {
+        delete(directory);
+    }
+
+    /*
+     * Deleting r/A.java makes r.B call p.A, which it imports on demand,
+     * although no other file changed.
+     */
+    public void testDeletedFile() throws Exception {
+        File sourceDirectory = new File(directory, "src");
+        writeFile(new File(sourceDirectory, "p/A.java"), "package p;\npublic class A { public static void m(long x) {} }\n");
+        File shadowingFile = new File(sourceDirectory, "r/A.java");
+        writeFile(shadowingFile, "package r;\npublic class A { public static void m(int x) {} }\n");
+        writeFile(new File(sourceDirectory, "r/B.java"), "package r;\nimport p.*;\npublic class B { void f() { A.m(1); } }\n");
+        File cacheDirectory = new File(directory, "cache");
+
+        String output = run(sourceDirectory, cacheDirectory);
+        assertTrue(output, output.contains("CALLS\tr.B#f()\tr.A#m(int)"));
+
+        shadowingFile.delete();
+        output = run(sourceDirectory, cacheDirectory);
+        assertTrue(output, output.contains("CALLS\tr.B#f()\tp.A#m(long)"));
+        assertEquals(run(sourceDirectory, null), output);
+    }
+
+    private static String run(File sourceDirectory, File cacheDirectory) throws Exception {
+        String arguments = "-r " + sourceDirectory.getPath();
+        if (cacheDirectory != null) {
+            arguments += " --cache " + cacheDirectory.getPath();
+        }
+        StringWriter writer = new StringWriter();
+        Main.run(Main.getOptions().parse(arguments), writer, null);
+        return writer.toString();
+    }
+
+    private static void writeFile(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,153 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import junit.framework.TestCase;
+
+/**
+ * Runs the example programs and some small programs on a fixed set of facts.
+ */
+public class QueryEngineTest extends TestCase {
+
+    private static final File PROGRAMS_DIRECTORY = new File("../examples/rml programs");
+    private static final String ENDL = System.getProperty("line.separator");
+
+    private FactStore facts;
+
+    @Override
+    protected void setUp() {
+        facts = new FactStore(Long.MAX_VALUE, null);
+
+        //a decorator
+        facts.add(Relation.INTERFACE, "p.Component");
+        facts.add(Relation.CLASS, "p.Border");
+        facts.add(Relation.IMPLEMENTS, "p.Border", "p.Component");
+        facts.add(Relation.FIELD, "p.Border#inner");
+        facts.add(Relation.HAS, "p.Border", "p.Border#inner");
+        facts.add(Relation.IS_OF_TYPE, "p.Border#inner", "p.Component");
+        facts.add(Relation.CLASS, "p.Plain");
+        facts.add(Relation.IMPLEMENTS, "p.Plain", "p.Component");
+
+        //a builder
+        facts.add(Relation.CLASS, "p.Product");
+        facts.add(Relation.CONSTRUCTOR, "p.Product#<init>()");
+        facts.add(Relation.HAS, "p.Product", "p.Product#<init>()");
+        facts.add(Relation.INTERFACE, "p.Builder");
+        facts.add(Relation.METHOD, "p.Builder#build()");
+        facts.add(Relation.HAS, "p.Builder", "p.Builder#build()");
+        facts.add(Relation.IS, "p.Builder#build()", "public");
+        facts.add(Relation.IS, "p.Builder#build()", "abstract");
+        facts.add(Relation.IS_OF_TYPE, "p.Builder#build()", "p.Product");
+        facts.add(Relation.CLASS, "p.ProductBuilder");
+        facts.add(Relation.IMPLEMENTS, "p.ProductBuilder", "p.Builder");
+        facts.add(Relation.FIELD, "p.ProductBuilder#name");
+        facts.add(Relation.HAS, "p.ProductBuilder", "p.ProductBuilder#name");
+        facts.add(Relation.METHOD, "p.ProductBuilder#build()");
+        facts.add(Relation.HAS, "p.ProductBuilder", "p.ProductBuilder#build()");
+        facts.add(Relation.IS, "p.ProductBuilder#build()", "public");
+        facts.add(Relation.IS_OF_TYPE, "p.ProductBuilder#build()", "p.Product");
+        facts.add(Relation.CALLS, "p.ProductBuilder#build()", "p.Product#<init>()");
+
+        //immutable classes, p.Wrapper only because p.Point is immutable
+        facts.add(Relation.CLASS, "p.Point");
+        facts.add(Relation.IS, "p.Point", "final");
+        facts.add(Relation.FIELD, "p.Point#x");
+        facts.add(Relation.HAS, "p.Point", "p.Point#x");
+        facts.add(Relation.IS, "p.Point#x", "final");
+        facts.add(Relation.IS_OF_TYPE, "p.Point#x", "int");
+        facts.add(Relation.CLASS, "p.Wrapper");
+        facts.add(Relation.IS, "p.Wrapper", "final");
+        facts.add(Relation.FIELD, "p.Wrapper#point");
+        facts.add(Relation.HAS, "p.Wrapper", "p.Wrapper#point");
+        facts.add(Relation.IS, "p.Wrapper#point", "private");
+        facts.add(Relation.IS_OF_TYPE, "p.Wrapper#point", "p.Point");
+        facts.add(Relation.CONSTRUCTOR, "p.Wrapper#<init>(p.Point)");
+        facts.add(Relation.HAS, "p.Wrapper", "p.Wrapper#<init>(p.Point)");
+        facts.add(Relation.WRITES, "p.Wrapper#<init>(p.Point)", "p.Wrapper#point");
+        facts.add(Relation.CLASS, "p.Counter");
+        facts.add(Relation.IS, "p.Counter", "final");
+        facts.add(Relation.FIELD, "p.Counter#count");
+        facts.add(Relation.HAS, "p.Counter", "p.Counter#count");
+        facts.add(Relation.IS, "p.Counter#count", "private");
+        facts.add(Relation.IS_OF_TYPE, "p.Counter#count", "int");
+        facts.add(Relation.METHOD, "p.Counter#increment()");
+        facts.add(Relation.HAS, "p.Counter", "p.Counter#increment()");
+        facts.add(Relation.WRITES, "p.Counter#increment()", "p.Counter#count");
+    }
+
+    public void testDecoratorPattern() throws Exception {
+        assertEquals("#DECORATES\tdecoratorClass\tbaseClass" + ENDL
+                + "DECORATES\tp.Border\tp.Component\t" + ENDL,
+                runProgram("decorator_pattern.rml"));
+    }
+
+    public void testBuilderPattern() throws Exception {
+        assertEquals("#BUILDER_PATTERN\tabstractBuilder\tconcreteBuilder\tproduct" + ENDL
+                + "BUILDER_PATTERN\tp.Builder\tp.ProductBuilder\tp.Product\t" + ENDL,
+                runProgram("builder_pattern.rml"));
+    }
+
+    public void testImmutablePattern() throws Exception {
+        assertEquals("IMMUTABLE\tp.Point\t" + ENDL
+                + "IMMUTABLE\tp.Wrapper\t" + ENDL,
+                runProgram("immutable_pattern.rml"));
+    }
+
+    public void testTransitiveClosure() throws Exception {
+        facts.add(Relation.EXTENDS, "p.A", "p.B");
+        facts.add(Relation.EXTENDS, "p.B", "p.C");
+        facts.add(Relation.EXTENDS, "p.C", "p.A");
+        assertEquals("p.A\tp.A\t" + ENDL,
+                run("R(x, y) := TC(EXTENDS(x, y)) & x = y & x = \"p.A\"; PRINT R(x, y);"));
+    }
+
+    public void testFactsAndConditions() throws Exception {
+        assertEquals("yes" + ENDL + "b\t" + ENDL,
+                run("R(\"a\"); R(\"b\"); S(x) := R(x) & x != \"a\";\n"
+                + "IF (S(x) != R(x)) { PRINT \"yes\", ENDL; } ELSE { PRINT \"no\", ENDL; }\n"
+                + "PRINT S(x);"));
+    }
+
+    public void testWrongNumberOfValues() throws Exception {
+        try {
+            run("R(\"a\");\nR(\"a\", \"b\");");
+            fail();
+        } catch (QueryException e) {
+            assertEquals("Wrong number of values for R.", e.getMessage());
+            assertEquals(2, e.getLineNumber());
+        }
+    }
+
+    public void testWrongNumberOfArguments() throws Exception {
+        try {
+            run("R(x) := HAS(x);");
+            fail();
+        } catch (QueryException e) {
+            assertEquals("Wrong number of arguments for HAS.", e.getMessage());
+        }
+    }
+
+    private String runProgram(String fileName) throws IOException, QueryException {
+        Reader program = new InputStreamReader(new FileInputStream(new File(PROGRAMS_DIRECTORY, fileName)), "UTF-8");
+        try {
+            return run(program);
+        } finally {
+            program.close();
+        }
+    }
+
+    private String run(String program) throws IOException, QueryException {
+        return run(new StringReader(program));
+    }
+
+    private String run(Reader program) throws IOException, QueryException {
+        StringWriter output = new StringWriter();
+        new QueryEngine(facts).run(program, output);
+        return output.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import junit.framework.TestCase;
+
+/**
+ * Compares the transitive closures of {@link Reachability}, the derived
+ * relations of {@link FactStore} and {@link ReachabilityIndex} with a naive
+ * closure, on random graphs with cycles and self-loops.
+ */
+public class ReachabilityTest extends TestCase {
+
+    //more than 64 components, so that the bit sets have several words
+    private static final int NODE_COUNT = 150;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private File indexFile;
+
+    @Override
+    protected void tearDown() {
+        if (indexFile != null) {
+            indexFile.delete();
+        }
+    }
+
+    public void testReachability() {
+        for (long seed = 0; seed < 5; seed++) {
+            List<int[]> edges = createGraph(new Random(seed));
+            boolean[][] closure = getNaiveClosure(edges);
+
+            Reachability reachability = new Reachability();
+            reachability.addNode(getName(NODE_COUNT - 1));
+            for (int[] edge : edges) {
+                reachability.addEdge(getName(edge[0]), getName(edge[1]));
+            }
+            for (int source = 0; source < NODE_COUNT; source++) {
+                int sourceNode = reachability.addNode(getName(source));
+                for (int target = 0; target < NODE_COUNT; target++) {
+                    int targetNode = reachability.addNode(getName(target));
+                    assertEquals(source + " " + target, closure[source][target],
+                            reachability.reaches(sourceNode, targetNode));
+                }
+            }
+        }
+    }
+
+    public void testDerivedRelationsAndIndex() throws Exception {
+        Random random = new Random(42);
+        List<int[]> inheritanceEdges = createGraph(random);
+        List<int[]> callEdges = createGraph(random);
+        FactStore facts = new FactStore(Long.MAX_VALUE, null)
+                .setRelations(EnumSet.of(Relation.INHERITS_FROM, Relation.CALLS_TRANSITIVELY));
+        for (int[] edge : inheritanceEdges) {
+            facts.add((edge[0] % 2 == 0) ? Relation.EXTENDS : Relation.IMPLEMENTS, getName(edge[0]), getName(edge[1]));
+        }
+        for (int[] edge : callEdges) {
+            facts.add(Relation.CALLS, getName(edge[0]), getName(edge[1]));
+        }
+
+        indexFile = File.createTempFile("java2rsf", ".index");
+        OutputStream out = new FileOutputStream(indexFile);
+        try {
+            facts.writeReachabilityIndexTo(out);
+        } finally {
+            out.close();
+        }
+        StringWriter writer = new StringWriter();
+        facts.writeTo(writer);
+
+        boolean[][] inheritanceClosure = getNaiveClosure(inheritanceEdges);
+        boolean[][] callClosure = getNaiveClosure(callEdges);
+        Set<String> expectedLines = new TreeSet<String>();
+        addLines(expectedLines, "INHERITS_FROM", inheritanceClosure);
+        addLines(expectedLines, "CALLS_TRANSITIVELY", callClosure);
+        StringBuilder expected = new StringBuilder();
+        for (String line : expectedLines) {
+            expected.append(line).append(LINE_SEPARATOR);
+        }
+        assertEquals(expected.toString(), writer.toString());
+
+        ReachabilityIndex index = new ReachabilityIndex(indexFile);
+        try {
+            assertEquals("[CALLS_TRANSITIVELY, INHERITS_FROM]", index.getRelationNames().toString());
+            for (int source = 0; source < NODE_COUNT; source++) {
+                for (int target = 0; target < NODE_COUNT; target++) {
+                    assertEquals(inheritanceClosure[source][target],
+                            index.reaches("INHERITS_FROM", getName(source), getName(target)));
+                    assertEquals(callClosure[source][target],
+                            index.reaches("CALLS_TRANSITIVELY", getName(source), getName(target)));
+                }
+            }
+            assertFalse(index.reaches("INHERITS_FROM", "unknown", getName(0)));
+            assertFalse(index.reaches("INHERITS_FROM", getName(0), "unknown"));
+            assertFalse(index.reaches("INHERITS_FROM", "unknown", "unknown"));
+            assertFalse(index.reaches("CALLS", getName(0), getName(0)));
+        } finally {
+            index.close();
+        }
+    }
+
+    /*
+     * Returns random edges between NODE_COUNT nodes, with a long cycle, a
+     * short one and some self-loops. Edges may be repeated.
+     */
+    private static List<int[]> createGraph(Random random) {
+        List<int[]> edges = new ArrayList<int[]>();
+        for (int i = 0; i < NODE_COUNT; i++) {
+            edges.add(new int[] {random.nextInt(NODE_COUNT), random.nextInt(NODE_COUNT)});
+        }
+        for (int i = 0; i < 20; i++) {
+            edges.add(new int[] {i, (i + 1) % 20});
+        }
+        edges.add(new int[] {30, 31});
+        edges.add(new int[] {31, 30});
+        for (int i = 0; i < 5; i++) {
+            int node = random.nextInt(NODE_COUNT);
+            edges.add(new int[] {node, node});
+        }
+        edges.add(new int[] {40, 40});
+        edges.add(new int[] {40, 40});
+        return edges;
+    }
+
+    /*
+     * Returns whether there is a path of at least one edge between two
+     * nodes, by a search from each node.
+     */
+    private static boolean[][] getNaiveClosure(List<int[]> edges) {
+        boolean[][] closure = new boolean[NODE_COUNT][NODE_COUNT];
+        for (int source = 0; source < NODE_COUNT; source++) {
+            Deque<Integer> queue = new ArrayDeque<Integer>();
+            queue.add(source);
+            while (!queue.isEmpty()) {
+                int node = queue.remove();
+                for (int[] edge : edges) {
+                    if ((edge[0] == node) && !closure[source][edge[1]]) {
+                        closure[source][edge[1]] = true;
+                        queue.add(edge[1]);
+                    }
+                }
+            }
+        }
+        return closure;
+    }
+
+    private static void addLines(Set<String> lines, String relation, boolean[][] closure) {
+        for (int source = 0; source < NODE_COUNT; source++) {
+            for (int target = 0; target < NODE_COUNT; target++) {
+                if (closure[source][target]) {
+                    lines.add(relation + "\t" + getName(source) + "\t" + getName(target));
+                }
+            }
+        }
+    }
+
+    private static String getName(int node) {
+        return "p.N" + node;
+    }
+}
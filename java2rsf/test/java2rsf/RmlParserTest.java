@@ -0,0 +1,70 @@
+package java2rsf;
+
+import java.io.StringReader;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Parses valid programs and checks the errors of invalid ones.
+ */
+public class RmlParserTest extends TestCase {
+
+    public void testStatements() throws Exception {
+        Set<String> constants = new LinkedHashSet<String>();
+        List<RmlParser.Statement> statements = parse("// a comment\nR(x) := HAS(x, \"a\") | EX(y, CALLS(x, y));\n"
+                + "R(\"b\");\n/* another\ncomment */ PRINT [\"R\"] R(x), ENDL;\n"
+                + "WHILE (R(x) != S(x)) { S(x) := R(x); }\nIF (R(x)) PRINT \"c\"; ELSE PRINT \"d\";", constants);
+
+        assertEquals(5, statements.size());
+        assertTrue(statements.get(0) instanceof RmlParser.Assignment);
+        assertTrue(statements.get(1) instanceof RmlParser.Fact);
+        assertTrue(statements.get(2) instanceof RmlParser.Print);
+        assertTrue(statements.get(3) instanceof RmlParser.While);
+        assertTrue(statements.get(4) instanceof RmlParser.If);
+        assertEquals("[a, b]", constants.toString());
+    }
+
+    public void testMissingSemicolon() throws Exception {
+        assertError("R(x) := HAS(x, y)\n", "Expected ;. Found end of program.", 2);
+    }
+
+    public void testMissingParenthesis() throws Exception {
+        assertError("R(x) :=\nHAS(x, x;", "Expected ). Found ;.", 2);
+    }
+
+    public void testUnterminatedString() throws Exception {
+        assertError("R(\"a\");\nPRINT \"b;", "Unterminated string.", 2);
+    }
+
+    public void testUnexpectedCharacter() throws Exception {
+        assertError("R(x) := HAS(x, x) # CALLS(x, x);", "Unexpected character #.", 1);
+    }
+
+    public void testVariableInFact() throws Exception {
+        assertError("R(\"a\", x);", "Facts may only contain strings. Found ;.", 1);
+    }
+
+    public void testDuplicateParameter() throws Exception {
+        assertError("R(x, x) := HAS(x, x);", "The parameters of R must be distinct variables. Found HAS.", 1);
+    }
+
+    public void testFreeVariable() throws Exception {
+        assertError("\nR(x) := HAS(x, y);", "Variable y is not a parameter of R.", 2);
+    }
+
+    private static List<RmlParser.Statement> parse(String program, Set<String> constants) throws Exception {
+        return RmlParser.parse(new StringReader(program), constants);
+    }
+
+    private static void assertError(String program, String message, int lineNumber) throws Exception {
+        try {
+            parse(program, new LinkedHashSet<String>());
+            fail("No error in " + program);
+        } catch (QueryException e) {
+            assertEquals(message, e.getMessage());
+            assertEquals(lineNumber, e.getLineNumber());
+        }
+    }
+}
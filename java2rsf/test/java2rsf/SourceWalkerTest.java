@@ -0,0 +1,138 @@
+package java2rsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Walks small directory trees with <code>.gitignore</code> files.
+ */
+public class SourceWalkerTest extends TestCase {
+
+    private Path root;
+
+    @Override
+    protected void setUp() throws IOException {
+        root = Files.createTempDirectory("java2rsf");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                Files.delete(directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    public void testWithoutGitignore() throws IOException {
+        createFiles(".gitignore", "A.java", "ATest.java", "sub/B.java", "sub/notes.txt");
+        writeFile(".gitignore", "*Test.java");
+
+        assertEquals(Arrays.asList("A.java", "ATest.java", "sub/B.java"), walk(new SourceWalker(true)));
+        assertEquals(Arrays.asList("A.java", "ATest.java"), walk(new SourceWalker(false)));
+    }
+
+    public void testNegation() throws IOException {
+        createFiles("A.java", "ATest.java", "KeepTest.java", "sub/BTest.java", "sub/KeepTest.java");
+        writeFile(".gitignore", "*Test.java", "!KeepTest.java");
+
+        assertWalk("A.java", "KeepTest.java", "sub/KeepTest.java");
+    }
+
+    public void testLaterPatternsTakePrecedence() throws IOException {
+        createFiles("A.java", "ATest.java");
+        writeFile(".gitignore", "!ATest.java", "*Test.java");
+
+        assertWalk("A.java");
+    }
+
+    public void testDirectoriesOnly() throws IOException {
+        createFiles("src/ModelA.java", "src/Model/B.java", "src/Other/C.java");
+        writeFile(".gitignore", "Model*/");
+
+        assertWalk("src/ModelA.java", "src/Other/C.java");
+    }
+
+    public void testPaths() throws IOException {
+        createFiles("Top.java", "sub/Top.java", "src/gen/A.java", "gen/B.java");
+        writeFile(".gitignore", "/Top.java", "src/gen");
+
+        assertWalk("gen/B.java", "sub/Top.java");
+    }
+
+    public void testLeadingDoubleStar() throws IOException {
+        createFiles("gen/A.java", "a/b/gen/B.java", "a/gen2/C.java", "a/gen/sub/D.java");
+        writeFile(".gitignore", "**/gen/*.java");
+
+        assertWalk("a/gen/sub/D.java", "a/gen2/C.java");
+    }
+
+    public void testNestedGitignore() throws IOException {
+        createFiles("FooTest.java", "Old.java", "sub/FooTest.java", "sub/BarTest.java", "sub/Old.java",
+                "sub/deeper/FooTest.java", "other/FooTest.java");
+        writeFile(".gitignore", "*Test.java");
+        //the rules of a subdirectory take precedence, and only apply below it
+        writeFile("sub/.gitignore", "!FooTest.java", "Old.java");
+
+        assertWalk("Old.java", "sub/FooTest.java", "sub/deeper/FooTest.java");
+    }
+
+    public void testExcludedDirectoryNotListed() throws IOException {
+        createFiles("A.java", "gen/B.java", "gen/C.java", ".git/D.java");
+        //a file in an excluded directory cannot be included again, its .gitignore is not read
+        writeFile(".gitignore", "gen/", "!gen/B.java");
+        writeFile("gen/.gitignore", "!*.java");
+
+        assertWalk("A.java");
+    }
+
+    /*
+     * Checks the files found with .gitignore files, with one and several
+     * threads.
+     */
+    private void assertWalk(String... expected) throws IOException {
+        assertEquals(Arrays.asList(expected), walk(new SourceWalker(true).setUseGitignore(true)));
+        assertEquals(Arrays.asList(expected), walk(new SourceWalker(true).setUseGitignore(true).setThreads(4)));
+    }
+
+    /*
+     * Returns the paths of the files found, relative to root with slashes.
+     */
+    private List<String> walk(SourceWalker walker) throws IOException {
+        List<String> relativeNames = new ArrayList<String>();
+        for (String fileName : walker.walk(root.toFile())) {
+            relativeNames.add(root.relativize(new File(fileName).toPath()).toString().replace(File.separatorChar, '/'));
+        }
+        return relativeNames;
+    }
+
+    private void createFiles(String... relativeNames) throws IOException {
+        for (String relativeName : relativeNames) {
+            Path file = root.resolve(relativeName);
+            Files.createDirectories(file.getParent());
+            Files.createFile(file);
+        }
+    }
+
+    private void writeFile(String relativeName, String... lines) throws IOException {
+        Files.write(root.resolve(relativeName), Arrays.asList(lines), BinaryFactWriter.UTF_8);
+    }
+}